@@ -20,12 +20,13 @@ import {
     Delete as DeleteIcon,
     Add as AddIcon,
 } from '@mui/icons-material';
-import { Document } from '../types';
+import { DocumentSummary } from '../types';
 import { documentService } from '../services/api';
 import { useNavigate } from 'react-router-dom';
 
 export const DocumentList: React.FC = () => {
-    const [documents, setDocuments] = useState<Document[]>([]);
+    const [documents, setDocuments] = useState<DocumentSummary[]>([]);
+    const [nextCursor, setNextCursor] = useState<string | null>(null);
     const [loading, setLoading] = useState(true);
     const [error, setError] = useState<string | null>(null);
     const [openDialog, setOpenDialog] = useState(false);
@@ -40,8 +41,9 @@ export const DocumentList: React.FC = () => {
 
     const loadDocuments = async () => {
         try {
-            const docs = await documentService.getDocuments();
-            setDocuments(docs);
+            const page = await documentService.getDocuments();
+            setDocuments(page.documents);
+            setNextCursor(page.nextCursor);
             setLoading(false);
         } catch (err) {
             setError('Failed to load documents');
@@ -49,10 +51,29 @@ export const DocumentList: React.FC = () => {
         }
     };
 
+    const loadMoreDocuments = async () => {
+        if (!nextCursor) {
+            return;
+        }
+        try {
+            const page = await documentService.getDocuments(nextCursor);
+            setDocuments([...documents, ...page.documents]);
+            setNextCursor(page.nextCursor);
+        } catch (err) {
+            setError('Failed to load documents');
+        }
+    };
+
     const handleCreateDocument = async () => {
         try {
             const newDoc = await documentService.createDocument(newDocTitle, newDocDescription);
-            setDocuments([...documents, newDoc]);
+            setDocuments([{
+                id: newDoc.id,
+                title: newDoc.title,
+                ownerUsername: newDoc.owner.username,
+                lastModified: newDoc.lastModified,
+                version: newDoc.version,
+            }, ...documents]);
             setOpenDialog(false);
             setNewDocTitle('');
             setNewDocDescription('');
@@ -110,7 +131,7 @@ export const DocumentList: React.FC = () => {
                                         </Typography>
                                         <br />
                                         <Typography component="span" variant="body2" color="textSecondary">
-                                            Collaborators: {doc.collaborators.length}
+                                            Owner: {doc.ownerUsername}
                                         </Typography>
                                     </>
                                 }
@@ -140,6 +161,11 @@ export const DocumentList: React.FC = () => {
                         </ListItem>
                     ))}
                 </List>
+                {nextCursor && (
+                    <Box display="flex" justifyContent="center" pb={2}>
+                        <Button onClick={loadMoreDocuments}>Load more</Button>
+                    </Box>
+                )}
             </Paper>
 
             <Dialog open={openDialog} onClose={() => setOpenDialog(false)}>
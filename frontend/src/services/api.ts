@@ -1,5 +1,5 @@
 import axios from 'axios';
-import { AuthResponse, LoginRequest, RegisterRequest, Document, DocumentEdit } from '../types';
+import { AuthResponse, LoginRequest, RegisterRequest, ContentRange, Document, DocumentEdit, DocumentPage, SearchHit, VersionContent, VersionDiff, VersionSummary } from '../types';
 
 const API_URL = process.env.REACT_APP_API_URL || 'http://localhost:8080/api';
 
@@ -36,8 +36,13 @@ export const authService = {
 };
 
 export const documentService = {
-    getDocuments: async (): Promise<Document[]> => {
-        const response = await api.get('/documents');
+    getDocuments: async (cursor?: string): Promise<DocumentPage> => {
+        const response = await api.get('/documents', { params: cursor ? { cursor } : {} });
+        return response.data;
+    },
+
+    searchDocuments: async (query: string, limit = 20): Promise<SearchHit[]> => {
+        const response = await api.get('/documents/search', { params: { q: query, limit } });
         return response.data;
     },
 
@@ -46,6 +51,16 @@ export const documentService = {
         return response.data;
     },
 
+    getContentRange: async (id: number, offset: number, length = 65536): Promise<ContentRange> => {
+        const response = await api.get(`/documents/${id}/content`, { params: { offset, length } });
+        return response.data;
+    },
+
+    getLines: async (id: number, from: number, count = 200): Promise<ContentRange> => {
+        const response = await api.get(`/documents/${id}/lines`, { params: { from, count } });
+        return response.data;
+    },
+
     createDocument: async (title: string, description?: string): Promise<Document> => {
         const response = await api.post('/documents', { title, description });
         return response.data;
@@ -68,6 +83,21 @@ export const documentService = {
         await api.delete(`/documents/${documentId}/collaborators/${userId}`);
     },
 
+    getVersions: async (documentId: number, before?: number): Promise<VersionSummary[]> => {
+        const response = await api.get(`/documents/${documentId}/versions`, { params: before ? { before } : {} });
+        return response.data;
+    },
+
+    getVersion: async (documentId: number, version: number): Promise<VersionContent> => {
+        const response = await api.get(`/documents/${documentId}/versions/${version}`);
+        return response.data;
+    },
+
+    diffVersions: async (documentId: number, from: number, to: number): Promise<VersionDiff> => {
+        const response = await api.get(`/documents/${documentId}/diff`, { params: { from, to } });
+        return response.data;
+    },
+
     revertVersion: async (documentId: number, version: number): Promise<Document> => {
         const response = await api.post(`/documents/${documentId}/revert`, { version });
         return response.data;
@@ -1,5 +1,5 @@
 import { Client, Message } from '@stomp/stompjs';
-import { DocumentEdit, CursorPosition } from '../types';
+import { DocumentEdit, CursorPosition, CollaboratorStatus } from '../types';
 
 const WEBSOCKET_URL = process.env.REACT_APP_WEBSOCKET_URL || 'ws://localhost:8080/ws';
 
@@ -19,6 +19,12 @@ class WebSocketService {
         this.documentSubscriptions = new Map();
         this.cursorSubscriptions = new Map();
 
+        // The server authenticates the session once, from the token sent with CONNECT
+        this.client.beforeConnect = () => {
+            const token = localStorage.getItem('token');
+            this.client.connectHeaders = token ? { Authorization: `Bearer ${token}` } : {};
+        };
+
         this.client.onConnect = () => {
             console.log('Connected to WebSocket');
         };
@@ -66,8 +72,9 @@ class WebSocketService {
         const subscription = this.client.subscribe(
             `/topic/document/${documentId}/cursors`,
             (message: Message) => {
-                const position: CursorPosition = JSON.parse(message.body);
-                callback(position);
+                // The server merges cursor updates into one frame per tick
+                const positions: CursorPosition[] = JSON.parse(message.body);
+                positions.forEach(callback);
             }
         );
 
@@ -80,6 +87,27 @@ class WebSocketService {
         return unsubscribe;
     }
 
+    subscribeToCollaborators(
+        documentId: string,
+        onSnapshot: (collaborators: CollaboratorStatus[]) => void,
+        onChange: (status: CollaboratorStatus) => void
+    ): () => void {
+        // The snapshot of users already present is sent to this session when it subscribes to the
+        // topic, so listen on the user queue first
+        const snapshot = this.client.subscribe('/user/queue/document.collaborators', (message: Message) => {
+            onSnapshot(JSON.parse(message.body));
+        });
+        const changes = this.client.subscribe(
+            `/topic/document/${documentId}/collaborators`,
+            (message: Message) => onChange(JSON.parse(message.body))
+        );
+
+        return () => {
+            changes.unsubscribe();
+            snapshot.unsubscribe();
+        };
+    }
+
     sendDocumentEdit(edit: DocumentEdit) {
         this.client.publish({
             destination: `/app/document/${edit.documentId}/edit`,
@@ -16,6 +16,64 @@ export interface Document {
     createdAt: string;
 }
 
+export interface DocumentSummary {
+    id: number;
+    title: string;
+    ownerUsername: string;
+    lastModified: string;
+    version: number;
+}
+
+export interface DocumentPage {
+    documents: DocumentSummary[];
+    nextCursor: string | null;
+}
+
+export interface VersionSummary {
+    version: number;
+    revision: number;
+    length: number;
+    modifiedBy: string | null;
+    createdAt: string;
+}
+
+export interface ContentRange {
+    documentId: number;
+    revision: number;
+    offset: number;
+    end: number;
+    firstLine: number;
+    length: number;
+    lineCount: number;
+    content: string;
+}
+
+export interface VersionContent {
+    documentId: number;
+    version: number;
+    content: string;
+}
+
+export interface VersionDiffHunk {
+    fromLine: number;
+    removed: string[];
+    toLine: number;
+    added: string[];
+}
+
+export interface VersionDiff {
+    documentId: number;
+    fromVersion: number;
+    toVersion: number;
+    hunks: VersionDiffHunk[];
+}
+
+export interface SearchHit {
+    documentId: number;
+    title: string;
+    score: number;
+}
+
 export interface DocumentCollaborator {
     userId: number;
     permission: 'READ' | 'COMMENT' | 'EDIT' | 'ADMIN';
@@ -42,6 +100,13 @@ export interface CursorPosition {
     timestamp: number;
 }
 
+export interface CollaboratorStatus {
+    userId: number;
+    username: string;
+    status: 'JOINED' | 'LEFT';
+    documentId: number;
+}
+
 export interface AuthResponse {
     accessToken: string;
     tokenType: string;
@@ -3,9 +3,11 @@ package com.collab.docs;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaRepositories(basePackages = "com.collab.docs.repository")
+@EnableScheduling
 public class CollaborativeDocsApplication {
     public static void main(String[] args) {
         SpringApplication.run(CollaborativeDocsApplication.class, args);
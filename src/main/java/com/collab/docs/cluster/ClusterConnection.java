@@ -0,0 +1,196 @@
+package com.collab.docs.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.crypto.Mac;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * One TCP connection to another node. Frames are written under a lock, in the order of the
+ * {@link #send} calls, and read by a dedicated thread that passes them to the handler together with
+ * the connection, so that requests can be answered on the connection they arrived on.
+ * <p>
+ * No frame is sent or accepted before {@link #authenticate} has run the {@link ClusterHandshake}.
+ * After it, every frame is followed by an HMAC over a per-direction sequence number and the frame,
+ * and a connection receiving a frame with a wrong MAC is closed.
+ */
+@Slf4j
+final class ClusterConnection {
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final ClusterHandshake handshake;
+    private final int handshakeTimeoutMillis;
+    private final Thread reader;
+    private volatile ClusterHandshake.Session session;
+    private volatile boolean closed;
+    private long sent;
+    private long received;
+
+    ClusterConnection(Socket socket, String name, ClusterHandshake handshake, int handshakeTimeoutMillis,
+                      BiConsumer<ClusterConnection, ClusterMessage> handler, Consumer<ClusterConnection> onClose) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.handshake = handshake;
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        this.reader = new Thread(() -> readLoop(handler, onClose), name);
+        reader.setDaemon(true);
+    }
+
+    /**
+     * Runs the handshake unless done already. Outgoing connections call this before {@link #start};
+     * incoming ones run it on their reader thread.
+     */
+    void authenticate() throws IOException {
+        if (session != null) {
+            return;
+        }
+        socket.setSoTimeout(handshakeTimeoutMillis);
+        session = handshake.perform(in, out);
+        socket.setSoTimeout(0);
+    }
+
+    void start() {
+        reader.start();
+    }
+
+    boolean isOpen() {
+        return !closed;
+    }
+
+    /** Node id of the authenticated peer, or {@code null} before the handshake. */
+    String getPeerId() {
+        ClusterHandshake.Session current = session;
+        return current != null ? current.peerId : null;
+    }
+
+    /** Sends a frame; returns {@code false} and closes the connection if the write fails. */
+    boolean send(ClusterMessage message) {
+        ClusterHandshake.Session current = session;
+        if (closed || current == null) {
+            return false;
+        }
+        try {
+            synchronized (out) {
+                Mac mac = current.outgoing;
+                mac.update(sequence(sent++));
+                message.write(new DataOutputStream(new MacOutputStream(out, mac)));
+                out.write(mac.doFinal());
+                out.flush();
+            }
+            return true;
+        } catch (IOException ex) {
+            log.debug("Cluster connection {} failed on write: {}", reader.getName(), ex.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            log.debug("Failed to close cluster connection {}", reader.getName(), ex);
+        }
+    }
+
+    private ClusterMessage read() throws IOException {
+        Mac mac = session.incoming;
+        mac.update(sequence(received++));
+        ClusterMessage message = ClusterMessage.read(new DataInputStream(new MacInputStream(in, mac)));
+        byte[] tag = new byte[mac.getMacLength()];
+        in.readFully(tag);
+        if (!MessageDigest.isEqual(tag, mac.doFinal())) {
+            throw new IOException("Cluster frame from " + session.peerId + " failed authentication");
+        }
+        return message;
+    }
+
+    private void readLoop(BiConsumer<ClusterConnection, ClusterMessage> handler, Consumer<ClusterConnection> onClose) {
+        try {
+            authenticate();
+            while (!closed) {
+                handler.accept(this, read());
+            }
+        } catch (EOFException | SocketException ex) {
+            log.debug("Cluster connection {} closed", reader.getName());
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Cluster connection {} failed: {}", reader.getName(), ex.getMessage());
+        } finally {
+            close();
+            onClose.accept(this);
+        }
+    }
+
+    private static byte[] sequence(long number) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(number).array();
+    }
+
+    /** Feeds everything written through it into a MAC. */
+    private static final class MacOutputStream extends FilterOutputStream {
+        private final Mac mac;
+
+        MacOutputStream(OutputStream out, Mac mac) {
+            super(out);
+            this.mac = mac;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mac.update((byte) b);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mac.update(b, off, len);
+            out.write(b, off, len);
+        }
+    }
+
+    /** Feeds everything read through it into a MAC. */
+    private static final class MacInputStream extends FilterInputStream {
+        private final Mac mac;
+
+        MacInputStream(InputStream in, Mac mac) {
+            super(in);
+            this.mac = mac;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                mac.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                mac.update(b, off, n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.collab.docs.cluster;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+
+/**
+ * Mutual authentication of a new cluster connection with the shared secret
+ * {@code app.cluster.secret}. Both sides send a magic number, their node id and a random nonce,
+ * then an HMAC-SHA256 proof over both ids and both nonces, so only holders of the secret get
+ * through and fresh nonces keep recorded proofs from being replayed. Peers whose id is not in
+ * {@code app.cluster.members}, or is this node's own, are refused.
+ * <p>
+ * The exchange also derives one key per direction from the secret and the nonces. Every frame
+ * after the handshake carries an HMAC under the sender's key (see {@link ClusterConnection}), so a
+ * party relaying a handshake between two genuine nodes still cannot inject or alter frames.
+ * Frames are not encrypted; the channel should run on a private network.
+ */
+final class ClusterHandshake {
+    private static final int MAGIC = 0x434C5553;
+    private static final int NONCE_SIZE = 32;
+    private static final int PROOF_SIZE = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String nodeId;
+    private final SecretKeySpec secret;
+    private final Set<String> members;
+
+    ClusterHandshake(String nodeId, String secret, Set<String> members) {
+        this.nodeId = nodeId;
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.members = members;
+    }
+
+    /** The authenticated peer and the frame MACs for each direction. */
+    static final class Session {
+        final String peerId;
+        final Mac outgoing;
+        final Mac incoming;
+
+        Session(String peerId, Mac outgoing, Mac incoming) {
+            this.peerId = peerId;
+            this.outgoing = outgoing;
+            this.incoming = incoming;
+        }
+    }
+
+    /**
+     * Runs the exchange on a fresh connection.
+     *
+     * @throws IOException if the peer is not a member or does not know the secret
+     */
+    Session perform(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] nonce = new byte[NONCE_SIZE];
+        RANDOM.nextBytes(nonce);
+        out.writeInt(MAGIC);
+        out.writeUTF(nodeId);
+        out.write(nonce);
+        out.flush();
+
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Peer is not a cluster node");
+        }
+        String peerId = in.readUTF();
+        byte[] peerNonce = new byte[NONCE_SIZE];
+        in.readFully(peerNonce);
+        if (!members.contains(peerId) || peerId.equals(nodeId)) {
+            throw new IOException("Cluster node " + peerId + " is not in app.cluster.members");
+        }
+
+        out.write(mac(secret, "proof", nodeId, peerId, nonce, peerNonce).doFinal());
+        out.flush();
+        byte[] peerProof = new byte[PROOF_SIZE];
+        in.readFully(peerProof);
+        if (!MessageDigest.isEqual(peerProof, mac(secret, "proof", peerId, nodeId, peerNonce, nonce).doFinal())) {
+            throw new IOException("Cluster node " + peerId + " failed authentication");
+        }
+
+        return new Session(peerId, frameMac(nodeId, peerId, nonce, peerNonce), frameMac(peerId, nodeId, peerNonce, nonce));
+    }
+
+    /** MAC for frames from {@code sender}, keyed with a key derived for this connection and direction. */
+    private Mac frameMac(String sender, String receiver, byte[] senderNonce, byte[] receiverNonce) {
+        byte[] key = mac(secret, "frames", sender, receiver, senderNonce, receiverNonce).doFinal();
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " not available", ex);
+        }
+    }
+
+    private static Mac mac(SecretKeySpec key, String purpose, String sender, String receiver,
+                           byte[] senderNonce, byte[] receiverNonce) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            for (String part : new String[]{purpose, sender, receiver}) {
+                mac.update(part.getBytes(StandardCharsets.UTF_8));
+                mac.update((byte) 0);
+            }
+            mac.update(senderNonce);
+            mac.update(receiverNonce);
+            return mac;
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ALGORITHM + " not available", ex);
+        }
+    }
+}
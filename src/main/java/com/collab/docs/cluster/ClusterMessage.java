@@ -0,0 +1,138 @@
+package com.collab.docs.cluster;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Frame exchanged between cluster nodes. Every frame starts with its type byte:
+ * <ul>
+ *   <li>{@code HEARTBEAT}: sender node id</li>
+ *   <li>{@code REQUEST}: request id, sender node id, kind, document id, body</li>
+ *   <li>{@code RESPONSE}: request id, status, body</li>
+ *   <li>{@code BROADCAST}: destination, content type, body (an already serialized STOMP payload)</li>
+ * </ul>
+ * Strings are written with {@link DataOutputStream#writeUTF}, bodies as a length and the bytes.
+ */
+final class ClusterMessage {
+    static final byte HEARTBEAT = 1;
+    static final byte REQUEST = 2;
+    static final byte RESPONSE = 3;
+    static final byte BROADCAST = 4;
+
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_REJECTED = 1;
+    static final byte STATUS_NOT_FOUND = 2;
+    static final byte STATUS_NOT_OWNER = 3;
+    static final byte STATUS_FAILED = 4;
+    static final byte STATUS_CONFLICT = 5;
+
+    private static final int MAX_BODY_SIZE = 64 * 1024 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    final byte type;
+    final String nodeId;
+    final long requestId;
+    final byte kind;
+    final byte status;
+    final long documentId;
+    final String destination;
+    final String contentType;
+    final byte[] body;
+
+    private ClusterMessage(byte type, String nodeId, long requestId, byte kind, byte status, long documentId,
+                           String destination, String contentType, byte[] body) {
+        this.type = type;
+        this.nodeId = nodeId;
+        this.requestId = requestId;
+        this.kind = kind;
+        this.status = status;
+        this.documentId = documentId;
+        this.destination = destination;
+        this.contentType = contentType;
+        this.body = body != null ? body : EMPTY;
+    }
+
+    static ClusterMessage heartbeat(String nodeId) {
+        return new ClusterMessage(HEARTBEAT, nodeId, 0, (byte) 0, (byte) 0, 0, null, null, null);
+    }
+
+    static ClusterMessage request(long requestId, String nodeId, byte kind, long documentId, byte[] body) {
+        return new ClusterMessage(REQUEST, nodeId, requestId, kind, (byte) 0, documentId, null, null, body);
+    }
+
+    static ClusterMessage response(long requestId, byte status, byte[] body) {
+        return new ClusterMessage(RESPONSE, null, requestId, (byte) 0, status, 0, null, null, body);
+    }
+
+    static ClusterMessage broadcast(String destination, String contentType, byte[] body) {
+        return new ClusterMessage(BROADCAST, null, 0, (byte) 0, (byte) 0, 0, destination, contentType, body);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(type);
+        switch (type) {
+            case HEARTBEAT:
+                out.writeUTF(nodeId);
+                break;
+            case REQUEST:
+                out.writeLong(requestId);
+                out.writeUTF(nodeId);
+                out.writeByte(kind);
+                out.writeLong(documentId);
+                writeBody(out);
+                break;
+            case RESPONSE:
+                out.writeLong(requestId);
+                out.writeByte(status);
+                writeBody(out);
+                break;
+            case BROADCAST:
+                out.writeUTF(destination);
+                out.writeUTF(contentType);
+                writeBody(out);
+                break;
+            default:
+                throw new IllegalStateException("Unknown cluster message type " + type);
+        }
+    }
+
+    static ClusterMessage read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case HEARTBEAT:
+                return heartbeat(in.readUTF());
+            case REQUEST:
+                long requestId = in.readLong();
+                String nodeId = in.readUTF();
+                byte kind = in.readByte();
+                long documentId = in.readLong();
+                return request(requestId, nodeId, kind, documentId, readBody(in));
+            case RESPONSE:
+                long respondsTo = in.readLong();
+                byte status = in.readByte();
+                return response(respondsTo, status, readBody(in));
+            case BROADCAST:
+                String destination = in.readUTF();
+                String contentType = in.readUTF();
+                return broadcast(destination, contentType, readBody(in));
+            default:
+                throw new IOException("Unknown cluster message type " + type);
+        }
+    }
+
+    private void writeBody(DataOutputStream out) throws IOException {
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    private static byte[] readBody(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_BODY_SIZE) {
+            throw new IOException("Invalid cluster message body length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+}
@@ -0,0 +1,475 @@
+package com.collab.docs.cluster;
+
+import com.collab.docs.websocket.FramePublisher;
+import com.collab.docs.websocket.FrameRelay;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.OptimisticLockException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This instance's membership in a cluster of nodes sharing one database. Every node knows the
+ * static member list {@code app.cluster.members} ({@code id=host:port,...}), connects to the others
+ * over TCP and sends a heartbeat every {@code heartbeat-ms}. The listener binds to this node's own
+ * member address, and every connection is authenticated with the shared {@code app.cluster.secret}
+ * (see {@link ClusterHandshake}); frames from anyone else are never read. Members not heard from within
+ * {@code failure-timeout-ms} are left out of the {@link ConsistentHashRing} that assigns each
+ * document its owning node; whenever the set of live members changes, the registered
+ * {@link OwnershipListener} is told so that documents can be handed over.
+ * <p>
+ * Requests for a document are answered on its owner, one document at a time and in arrival order.
+ * Broadcast frames published locally are relayed to all live members, which deliver them to their
+ * own subscribers.
+ * <p>
+ * With {@code app.cluster.enabled=false} (the default) the node owns every document.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterNode implements FrameRelay {
+    private final FramePublisher framePublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.cluster.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.cluster.node-id:node-1}")
+    private String nodeId;
+
+    @Value("${app.cluster.members:}")
+    private String members;
+
+    @Value("${app.cluster.secret:}")
+    private String secret;
+
+    @Value("${app.cluster.virtual-nodes:128}")
+    private int virtualNodes;
+
+    @Value("${app.cluster.heartbeat-ms:1000}")
+    private long heartbeatMillis;
+
+    @Value("${app.cluster.failure-timeout-ms:3000}")
+    private long failureTimeoutMillis;
+
+    @Value("${app.cluster.request-timeout-ms:5000}")
+    private long requestTimeoutMillis;
+
+    private final Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
+    private final Map<String, ClusterConnection> connections = new ConcurrentHashMap<>();
+    private final Map<Long, CompletableFuture<ClusterMessage>> inflight = new ConcurrentHashMap<>();
+    private final AtomicLong requestIds = new AtomicLong();
+
+    private volatile ConsistentHashRing ring;
+    private volatile RequestHandler requestHandler;
+    private volatile OwnershipListener ownershipListener;
+    private ClusterHandshake handshake;
+    private ServerSocket serverSocket;
+    private ScheduledExecutorService heartbeats;
+    private ExecutorService rebalancer;
+    private ExecutorService[] lanes;
+    private Counter forwarded;
+    private Counter relayed;
+
+    /** Handles a request for a document this node owns and returns the response body. */
+    public interface RequestHandler {
+        byte[] handle(byte kind, long documentId, String origin, byte[] body) throws Exception;
+    }
+
+    public interface OwnershipListener {
+        void ownershipChanged(ConsistentHashRing previous, ConsistentHashRing current);
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!enabled) {
+            ring = new ConsistentHashRing(Set.of(nodeId), 1);
+            return;
+        }
+        if (!StringUtils.hasText(secret)) {
+            throw new IllegalStateException("app.cluster.secret must be set when the cluster is enabled");
+        }
+        parseMembers();
+        handshake = new ClusterHandshake(nodeId, secret, addresses.keySet());
+        // Start out assuming every member is up so that all nodes agree on ownership from the
+        // beginning; members that never answer drop out after the failure timeout
+        long now = System.currentTimeMillis();
+        addresses.keySet().forEach(member -> lastSeen.put(member, now));
+        ring = new ConsistentHashRing(addresses.keySet(), virtualNodes);
+
+        forwarded = meterRegistry.counter("documents.cluster.forwarded");
+        relayed = meterRegistry.counter("documents.cluster.relayed");
+        Gauge.builder("documents.cluster.members", this, node -> node.ring.getNodes().size())
+                .description("Live cluster members, including this node")
+                .register(meterRegistry);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        lanes = new ExecutorService[processors];
+        for (int i = 0; i < lanes.length; i++) {
+            String name = "cluster-request-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, name));
+        }
+        rebalancer = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "cluster-rebalance"));
+
+        InetSocketAddress bind = addresses.get(nodeId);
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bind.getHostString(), bind.getPort()));
+        daemon(this::acceptLoop, "cluster-accept").start();
+
+        heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "cluster-heartbeat"));
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        log.info("Cluster node {} listening on {}, members {}", nodeId, bind, addresses.keySet());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public String ownerOf(long documentId) {
+        return ring.ownerOf(documentId);
+    }
+
+    public boolean isLocal(long documentId) {
+        return nodeId.equals(ring.ownerOf(documentId));
+    }
+
+    public boolean isLive(String member) {
+        return ring.getNodes().contains(member);
+    }
+
+    public void setRequestHandler(RequestHandler requestHandler) {
+        this.requestHandler = requestHandler;
+    }
+
+    public void setOwnershipListener(OwnershipListener ownershipListener) {
+        this.ownershipListener = ownershipListener;
+    }
+
+    /**
+     * Sends a request to another node. The future completes with the response body, or
+     * exceptionally with {@link IllegalArgumentException} (rejected), {@link EntityNotFoundException},
+     * {@link OptimisticLockException} (precondition failed), {@link IllegalStateException} (not the owner, failed, unreachable) or a timeout.
+     */
+    public CompletableFuture<byte[]> request(String member, byte kind, long documentId, byte[] body) {
+        long requestId = requestIds.incrementAndGet();
+        CompletableFuture<ClusterMessage> response = new CompletableFuture<>();
+        inflight.put(requestId, response);
+        response.whenComplete((message, ex) -> inflight.remove(requestId));
+        ClusterConnection connection = connectionTo(member);
+        if (connection == null || !connection.send(ClusterMessage.request(requestId, nodeId, kind, documentId, body))) {
+            response.completeExceptionally(new IllegalStateException("Cluster node " + member + " is unreachable"));
+        } else {
+            forwarded.increment();
+        }
+        return response.orTimeout(requestTimeoutMillis, TimeUnit.MILLISECONDS).thenApply(message -> {
+            String text = new String(message.body, StandardCharsets.UTF_8);
+            switch (message.status) {
+                case ClusterMessage.STATUS_OK:
+                    return message.body;
+                case ClusterMessage.STATUS_REJECTED:
+                    throw new IllegalArgumentException(text);
+                case ClusterMessage.STATUS_NOT_FOUND:
+                    throw new EntityNotFoundException(text);
+                case ClusterMessage.STATUS_CONFLICT:
+                    throw new OptimisticLockException(text);
+                default:
+                    throw new IllegalStateException("Cluster node " + member + ": " + text);
+            }
+        });
+    }
+
+    /** Sends a request and waits for its response, rethrowing failures unwrapped. */
+    public byte[] call(String member, byte kind, long documentId, byte[] body) {
+        try {
+            return request(member, kind, documentId, body).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for cluster node " + member, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw new IllegalStateException("Cluster node " + member + " did not answer in time", cause);
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void relay(String destination, byte[] body, MimeType contentType) {
+        if (!enabled) {
+            return;
+        }
+        ClusterMessage frame = ClusterMessage.broadcast(destination, contentType.toString(), body);
+        for (String member : ring.getNodes()) {
+            if (!member.equals(nodeId)) {
+                ClusterConnection connection = connectionTo(member);
+                if (connection != null && connection.send(frame)) {
+                    relayed.increment();
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        heartbeats.shutdownNow();
+        serverSocket.close();
+        connections.values().forEach(ClusterConnection::close);
+        rebalancer.shutdown();
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    private void parseMembers() {
+        for (String member : StringUtils.commaDelimitedListToStringArray(members)) {
+            String[] parts = member.trim().split("=", 2);
+            int colon = parts.length == 2 ? parts[1].lastIndexOf(':') : -1;
+            if (colon < 0) {
+                throw new IllegalStateException("Invalid cluster member '" + member + "', expected id=host:port");
+            }
+            addresses.put(parts[0].trim(), InetSocketAddress.createUnresolved(
+                    parts[1].substring(0, colon).trim(), Integer.parseInt(parts[1].substring(colon + 1).trim())));
+        }
+        if (!addresses.containsKey(nodeId)) {
+            throw new IllegalStateException("Cluster node id " + nodeId + " is not in app.cluster.members");
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            ClusterMessage heartbeat = ClusterMessage.heartbeat(nodeId);
+            for (String member : addresses.keySet()) {
+                if (!member.equals(nodeId)) {
+                    ClusterConnection connection = connectionTo(member);
+                    if (connection != null) {
+                        connection.send(heartbeat);
+                    }
+                }
+            }
+            updateMembership();
+        } catch (RuntimeException ex) {
+            log.error("Cluster heartbeat failed", ex);
+        }
+    }
+
+    private void updateMembership() {
+        long now = System.currentTimeMillis();
+        Set<String> live = new TreeSet<>();
+        live.add(nodeId);
+        lastSeen.forEach((member, seen) -> {
+            if (now - seen <= failureTimeoutMillis) {
+                live.add(member);
+            }
+        });
+        ConsistentHashRing previous;
+        ConsistentHashRing current;
+        synchronized (this) {
+            previous = ring;
+            if (previous.getNodes().equals(live)) {
+                return;
+            }
+            current = new ConsistentHashRing(live, virtualNodes);
+            ring = current;
+        }
+        log.info("Cluster membership changed from {} to {}", previous.getNodes(), current.getNodes());
+        OwnershipListener listener = ownershipListener;
+        if (listener != null) {
+            rebalancer.execute(() -> listener.ownershipChanged(previous, current));
+        }
+    }
+
+    private void seen(String member) {
+        if (member == null || !addresses.containsKey(member) || member.equals(nodeId)) {
+            return;
+        }
+        boolean wasLive = isLive(member);
+        lastSeen.put(member, System.currentTimeMillis());
+        if (!wasLive) {
+            // A member coming back is taken into the ring right away rather than on the next beat
+            updateMembership();
+        }
+    }
+
+    private ClusterConnection connectionTo(String member) {
+        ClusterConnection connection = connections.get(member);
+        if (connection != null && connection.isOpen()) {
+            return connection;
+        }
+        InetSocketAddress address = addresses.get(member);
+        if (address == null) {
+            return null;
+        }
+        synchronized (connections) {
+            connection = connections.get(member);
+            if (connection != null && connection.isOpen()) {
+                return connection;
+            }
+            Socket socket = new Socket();
+            try {
+                int timeout = (int) Math.min(heartbeatMillis, Integer.MAX_VALUE);
+                socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), timeout);
+                connection = new ClusterConnection(socket, "cluster-out-" + member, handshake, timeout,
+                        this::receive, closed -> connections.remove(member, closed));
+                connection.authenticate();
+                if (!member.equals(connection.getPeerId())) {
+                    throw new IOException("Expected cluster node " + member + " but reached " + connection.getPeerId());
+                }
+                connections.put(member, connection);
+                connection.start();
+                return connection;
+            } catch (IOException ex) {
+                log.trace("Cluster node {} not reachable at {}: {}", member, address, ex.getMessage());
+                closeQuietly(socket);
+                return null;
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        int accepted = 0;
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                int timeout = (int) Math.min(heartbeatMillis, Integer.MAX_VALUE);
+                new ClusterConnection(socket, "cluster-in-" + accepted++, handshake, timeout,
+                        this::receive, closed -> { }).start();
+            } catch (SocketException ex) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Cluster accept failed", ex);
+                }
+            } catch (IOException ex) {
+                log.warn("Cluster accept failed", ex);
+            }
+        }
+    }
+
+    private void receive(ClusterConnection connection, ClusterMessage message) {
+        if ((message.type == ClusterMessage.HEARTBEAT || message.type == ClusterMessage.REQUEST)
+                && !connection.getPeerId().equals(message.nodeId)) {
+            log.warn("Closing cluster connection from {}: frame claims node {}", connection.getPeerId(), message.nodeId);
+            connection.close();
+            return;
+        }
+        switch (message.type) {
+            case ClusterMessage.HEARTBEAT:
+                seen(message.nodeId);
+                break;
+            case ClusterMessage.REQUEST:
+                seen(message.nodeId);
+                laneFor(message.documentId).execute(() -> connection.send(handle(message)));
+                break;
+            case ClusterMessage.RESPONSE:
+                CompletableFuture<ClusterMessage> response = inflight.get(message.requestId);
+                if (response != null) {
+                    response.complete(message);
+                }
+                break;
+            case ClusterMessage.BROADCAST:
+                framePublisher.deliver(message.destination, message.body, MimeType.valueOf(message.contentType));
+                break;
+            default:
+                log.warn("Ignoring cluster message of type {}", message.type);
+        }
+    }
+
+    private ClusterMessage handle(ClusterMessage request) {
+        RequestHandler handler = requestHandler;
+        try {
+            if (handler == null) {
+                throw new IllegalStateException("Cluster node " + nodeId + " is not ready");
+            }
+            byte[] body = handler.handle(request.kind, request.documentId, request.nodeId, request.body);
+            return ClusterMessage.response(request.requestId, ClusterMessage.STATUS_OK, body);
+        } catch (IllegalArgumentException ex) {
+            return error(request, ClusterMessage.STATUS_REJECTED, ex);
+        } catch (EntityNotFoundException ex) {
+            return error(request, ClusterMessage.STATUS_NOT_FOUND, ex);
+        } catch (NotOwnerException ex) {
+            return error(request, ClusterMessage.STATUS_NOT_OWNER, ex);
+        } catch (OptimisticLockException ex) {
+            return error(request, ClusterMessage.STATUS_CONFLICT, ex);
+        } catch (Exception ex) {
+            log.error("Cluster request {} for document {} from {} failed", request.kind, request.documentId,
+                    request.nodeId, ex);
+            return error(request, ClusterMessage.STATUS_FAILED, ex);
+        }
+    }
+
+    private static ClusterMessage error(ClusterMessage request, byte status, Exception ex) {
+        String message = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+        return ClusterMessage.response(request.requestId, status, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private ExecutorService laneFor(long documentId) {
+        int hash = Long.hashCode(documentId * 0x9E3779B97F4A7C15L);
+        return lanes[Math.floorMod(hash, lanes.length)];
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            log.debug("Failed to close cluster socket", ex);
+        }
+    }
+
+    /** Thrown by a {@link RequestHandler} for a document that this node does not own. */
+    public static class NotOwnerException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public NotOwnerException(String message) {
+            super(message);
+        }
+    }
+}
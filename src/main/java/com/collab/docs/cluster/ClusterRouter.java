@@ -0,0 +1,296 @@
+package com.collab.docs.cluster;
+
+import com.collab.docs.model.Document;
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.service.DocumentAccessControl;
+import com.collab.docs.service.DocumentBufferService;
+import com.collab.docs.service.DocumentETags;
+import com.collab.docs.service.DocumentService;
+import com.collab.docs.websocket.CollaboratorStatus;
+import com.collab.docs.websocket.DocumentEditMessage;
+import com.collab.docs.websocket.PresenceRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Runs document operations that need the document's buffer on the node owning it. Edits, joins,
+ * leaves and content updates for a document owned elsewhere are forwarded to the owner; the
+ * resulting broadcasts reach this node's subscribers through the cluster relay.
+ * <p>
+ * Ownership moves by pull: when membership changes, every node writes back and evicts the buffers
+ * it no longer owns, and a new owner about to load a document first asks the previous owner to
+ * release it, so that it reads the latest state from the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ClusterRouter {
+    static final byte EDIT = 1;
+    static final byte JOIN = 2;
+    static final byte LEAVE = 3;
+    static final byte UPDATE = 4;
+    static final byte RELEASE = 5;
+    static final byte PRESENCE = 6;
+    static final byte ACCESS = 7;
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final TypeReference<List<CollaboratorStatus>> COLLABORATOR_LIST = new TypeReference<>() { };
+
+    private final ClusterNode clusterNode;
+    private final DocumentService documentService;
+    private final DocumentBufferService bufferService;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final PresenceRegistry presenceRegistry;
+    private final DocumentAccessControl accessControl;
+    private final DocumentETags etags;
+
+    private volatile ConsistentHashRing previousRing;
+    /** Documents whose previous owner has released them since the last membership change. */
+    private volatile Set<Long> released = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void register() {
+        clusterNode.setRequestHandler(this::handle);
+        clusterNode.setOwnershipListener(this::ownershipChanged);
+    }
+
+    /**
+     * Applies an edit on the owning node. Forwarded edits are not awaited; if the owner rejects
+     * one, the error goes to the user's {@code /queue/errors} like a local rejection.
+     */
+    public void applyEdit(Long documentId, DocumentEditMessage edit, String username) {
+        String owner = clusterNode.ownerOf(documentId);
+        if (isLocal(owner)) {
+            claim(documentId);
+            documentService.applyEdit(documentId, edit, username);
+            return;
+        }
+        ForwardedRequest request = ForwardedRequest.builder().username(username).edit(edit).build();
+        clusterNode.request(owner, EDIT, documentId, write(request)).whenComplete((body, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                log.warn("Forwarded edit of document {} by {} failed: {}", documentId, username, cause.getMessage());
+                messagingTemplate.convertAndSendToUser(username, "/queue/errors", String.valueOf(cause.getMessage()));
+            }
+        });
+    }
+
+    public DocumentContent joinDocument(Long documentId) {
+        String owner = clusterNode.ownerOf(documentId);
+        if (isLocal(owner)) {
+            claim(documentId);
+            return documentService.joinDocument(documentId);
+        }
+        return read(clusterNode.call(owner, JOIN, documentId, EMPTY), DocumentContent.class);
+    }
+
+    public void leaveDocument(Long documentId, Integer siteId) {
+        String owner = clusterNode.ownerOf(documentId);
+        if (isLocal(owner)) {
+            documentService.leaveDocument(documentId, siteId);
+            return;
+        }
+        ForwardedRequest request = ForwardedRequest.builder().siteId(siteId).build();
+        clusterNode.request(owner, LEAVE, documentId, write(request)).exceptionally(ex -> {
+            log.debug("Forwarded leave of document {} failed: {}", documentId, ex.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Replaces a document's content on its owner. The returned document carries the content and
+     * revision reported by the owner, since this node's database copy may still lag behind.
+     */
+    public Document updateDocument(Long documentId, String content, String username) {
+        return updateDocument(documentId, content, username, null);
+    }
+
+    /**
+     * As {@link #updateDocument(Long, String, String)}, but only if the document is still at
+     * {@code expectedRevision}, checked on the owner.
+     *
+     * @throws javax.persistence.OptimisticLockException if it is not
+     */
+    public Document updateDocument(Long documentId, String content, String username, Long expectedRevision) {
+        String owner = clusterNode.ownerOf(documentId);
+        if (isLocal(owner)) {
+            claim(documentId);
+            return documentService.updateDocument(documentId, content, username, expectedRevision);
+        }
+        ForwardedRequest request = ForwardedRequest.builder()
+                .username(username)
+                .content(content)
+                .expectedRevision(expectedRevision)
+                .build();
+        DocumentContent state = read(clusterNode.call(owner, UPDATE, documentId, write(request)), DocumentContent.class);
+        return DocumentService.withState(documentService.getDocumentMetadata(documentId), state);
+    }
+
+    /**
+     * Users present in a document. Presence is kept by the node holding the session, so in a
+     * cluster the lists of all live nodes are merged; nodes that do not answer are skipped.
+     */
+    public List<CollaboratorStatus> getCollaborators(Long documentId) {
+        Map<String, CollaboratorStatus> collaborators = new LinkedHashMap<>();
+        presenceRegistry.getCollaborators(documentId).forEach(status -> collaborators.putIfAbsent(status.getUsername(), status));
+        List<CompletableFuture<byte[]>> responses = new ArrayList<>();
+        for (String member : clusterNode.getRing().getNodes()) {
+            if (!isLocal(member)) {
+                responses.add(clusterNode.request(member, PRESENCE, documentId, EMPTY));
+            }
+        }
+        for (CompletableFuture<byte[]> response : responses) {
+            try {
+                List<CollaboratorStatus> remote = objectMapper.readValue(response.join(), COLLABORATOR_LIST);
+                remote.forEach(status -> collaborators.putIfAbsent(status.getUsername(), status));
+            } catch (IOException | CompletionException ex) {
+                log.debug("Skipping presence of an unreachable node for document {}: {}", documentId, ex.getMessage());
+            }
+        }
+        return new ArrayList<>(collaborators.values());
+    }
+
+    /**
+     * Tells the other nodes that a document's collaborators changed, so that they reload its
+     * cached access list and entity tag. Not awaited; a node that misses it keeps the old list
+     * until the entry is evicted.
+     */
+    public void accessChanged(Long documentId) {
+        for (String member : clusterNode.getRing().getNodes()) {
+            if (!isLocal(member)) {
+                clusterNode.request(member, ACCESS, documentId, EMPTY).exceptionally(ex -> {
+                    log.warn("Node {} did not drop the access list of document {}: {}", member, documentId, ex.getMessage());
+                    return null;
+                });
+            }
+        }
+    }
+
+    private byte[] handle(byte kind, long documentId, String origin, byte[] body) {
+        if (kind == RELEASE) {
+            documentService.releaseDocuments(List.of(documentId));
+            return EMPTY;
+        }
+        if (kind == PRESENCE) {
+            return write(presenceRegistry.getCollaborators(documentId));
+        }
+        if (kind == ACCESS) {
+            accessControl.invalidate(documentId);
+            etags.invalidate(documentId);
+            return EMPTY;
+        }
+        if (!clusterNode.isLocal(documentId)) {
+            // The sender's view of the membership differs from ours; it converges within a heartbeat
+            throw new ClusterNode.NotOwnerException("Node " + clusterNode.getNodeId() + " does not own document "
+                    + documentId + "; retry shortly");
+        }
+        claim(documentId);
+        ForwardedRequest request = body.length > 0 ? read(body, ForwardedRequest.class) : new ForwardedRequest();
+        switch (kind) {
+            case EDIT:
+                documentService.applyEdit(documentId, request.getEdit(), request.getUsername());
+                return EMPTY;
+            case JOIN:
+                return write(documentService.joinDocument(documentId));
+            case LEAVE:
+                documentService.leaveDocument(documentId, request.getSiteId());
+                return EMPTY;
+            case UPDATE:
+                Document document = documentService.updateDocument(documentId, request.getContent(), request.getUsername(),
+                        request.getExpectedRevision());
+                return write(DocumentContent.builder()
+                        .content(document.getContent())
+                        .version(document.getRevision())
+                        .build());
+            default:
+                throw new IllegalArgumentException("Unknown cluster request kind " + kind + " from " + origin);
+        }
+    }
+
+    /**
+     * Before this node loads a document it has just become the owner of, has the previous owner
+     * write it back and drop its buffer.
+     */
+    private void claim(Long documentId) {
+        ConsistentHashRing previous = previousRing;
+        if (previous == null || bufferService.isActive(documentId) || released.contains(documentId)) {
+            return;
+        }
+        String previousOwner = previous.ownerOf(documentId);
+        if (previousOwner != null && !isLocal(previousOwner) && clusterNode.isLive(previousOwner)) {
+            try {
+                clusterNode.call(previousOwner, RELEASE, documentId, EMPTY);
+            } catch (RuntimeException ex) {
+                log.warn("Node {} did not release document {}: {}", previousOwner, documentId, ex.getMessage());
+            }
+        }
+        released.add(documentId);
+    }
+
+    private void ownershipChanged(ConsistentHashRing previous, ConsistentHashRing current) {
+        released = ConcurrentHashMap.newKeySet();
+        previousRing = previous;
+        List<Long> moved = bufferService.getActiveDocumentIds().stream()
+                .filter(documentId -> !clusterNode.getNodeId().equals(current.ownerOf(documentId)))
+                .collect(Collectors.toList());
+        if (!moved.isEmpty()) {
+            log.info("Handing over {} documents after membership change", moved.size());
+            documentService.releaseDocuments(moved);
+        }
+    }
+
+    private boolean isLocal(String owner) {
+        return clusterNode.getNodeId().equals(owner);
+    }
+
+    private byte[] write(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private <T> T read(byte[] body, Class<T> type) {
+        try {
+            return objectMapper.readValue(body, type);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** Body of a forwarded request; only the fields its kind needs are set. */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class ForwardedRequest {
+        private String username;
+        private DocumentEditMessage edit;
+        private String content;
+        private Integer siteId;
+        private Long expectedRevision;
+    }
+}
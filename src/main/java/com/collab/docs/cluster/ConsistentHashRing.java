@@ -0,0 +1,69 @@
+package com.collab.docs.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring mapping document ids to node ids. Each node is placed at
+ * {@code virtualNodes} points on the ring and a document belongs to the first point at or after its
+ * own hash, so adding or removing a node only moves the documents of the neighbouring arcs.
+ */
+public final class ConsistentHashRing {
+    private final SortedSet<String> nodes;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes must be positive");
+        }
+        nodes = Collections.unmodifiableSortedSet(new TreeSet<>(nodeIds));
+        for (String node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // On a (very unlikely) collision the smaller node id wins, independent of insertion order
+                points.merge(hash(node + "#" + i), node, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+            }
+        }
+    }
+
+    public SortedSet<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /** The node owning the document, or {@code null} if the ring is empty. */
+    public String ownerOf(long documentId) {
+        if (points.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(documentId));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    private static long hash(String key) {
+        // FNV-1a, then the murmur finalizer to spread similar keys over the whole ring
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
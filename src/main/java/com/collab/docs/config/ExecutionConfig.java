@@ -0,0 +1,73 @@
+package com.collab.docs.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+
+/**
+ * Wires {@code app.execution.mode}. In {@code virtual} mode Tomcat runs every request on its own
+ * virtual thread (the STOMP channels are switched in {@link WebSocketConfig}). Independently of the
+ * mode, {@code app.datasource.concurrency-limit} puts a {@link BoundedDataSource} in front of the
+ * connection pool.
+ */
+@Configuration
+@Slf4j
+public class ExecutionConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(
+            @Value("${app.execution.mode:pooled}") ExecutionMode mode) {
+        if (mode == ExecutionMode.VIRTUAL && !VirtualThreads.isSupported()) {
+            log.warn("app.execution.mode=virtual needs Java 21 or later; running on {} with thread pools",
+                    System.getProperty("java.version"));
+        }
+        log.info("Execution mode {}", mode.usesVirtualThreads() ? "virtual" : "pooled");
+        return protocolHandler -> {
+            if (mode.usesVirtualThreads()) {
+                protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("http-"));
+            }
+        };
+    }
+
+    @Bean
+    public static BeanPostProcessor boundedDataSourcePostProcessor(Environment environment) {
+        int limit = environment.getProperty("app.datasource.concurrency-limit", Integer.class, 0);
+        long acquireTimeout = environment.getProperty("app.datasource.acquire-timeout-ms", Long.class, 2000L);
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (limit > 0 && bean instanceof DataSource && !(bean instanceof BoundedDataSource)) {
+                    log.info("Limiting data source '{}' to {} concurrent connections", beanName, limit);
+                    return new BoundedDataSource((DataSource) bean, limit, acquireTimeout);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder boundedDataSourceMetrics(ObjectProvider<DataSource> dataSources) {
+        return registry -> dataSources.orderedStream()
+                .filter(BoundedDataSource.class::isInstance)
+                .map(BoundedDataSource.class::cast)
+                .findFirst()
+                .ifPresent(dataSource -> {
+                    Gauge.builder("documents.datasource.permits_available", dataSource, BoundedDataSource::getAvailablePermits)
+                            .description("Connection permits currently free")
+                            .register(registry);
+                    Gauge.builder("documents.datasource.waiting", dataSource, BoundedDataSource::getQueueLength)
+                            .description("Threads waiting for a connection permit")
+                            .register(registry);
+                });
+    }
+}
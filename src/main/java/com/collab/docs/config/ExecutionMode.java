@@ -0,0 +1,16 @@
+package com.collab.docs.config;
+
+/**
+ * How blocking work (JPA calls from STOMP handlers and REST controllers) is run, selected with
+ * {@code app.execution.mode}.
+ */
+public enum ExecutionMode {
+    /** Bounded pools of platform threads. */
+    POOLED,
+    /** A virtual thread per task; falls back to {@link #POOLED} on runtimes without virtual threads. */
+    VIRTUAL;
+
+    public boolean usesVirtualThreads() {
+        return this == VIRTUAL && VirtualThreads.isSupported();
+    }
+}
@@ -0,0 +1,33 @@
+package com.collab.docs.config;
+
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Channel executor that runs every task on its own virtual thread. It extends
+ * {@link ThreadPoolTaskExecutor} only because that is the type {@code ChannelRegistration} accepts.
+ * Spring still initializes the inherited pool, but no task is ever submitted to it, so it never
+ * starts a thread.
+ */
+public class VirtualThreadTaskExecutor extends ThreadPoolTaskExecutor {
+    private static final long serialVersionUID = 1L;
+
+    private final ExecutorService executor;
+
+    public VirtualThreadTaskExecutor(String threadNamePrefix) {
+        setThreadNamePrefix(threadNamePrefix);
+        executor = VirtualThreads.newThreadPerTaskExecutor(threadNamePrefix);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        super.shutdown();
+    }
+}
@@ -1,32 +1,63 @@
 package com.collab.docs.config;
 
+import com.collab.docs.security.StompAuthenticationInterceptor;
+import com.collab.docs.websocket.BinaryMessageConverter;
+import com.collab.docs.websocket.DocumentLaneExecutor;
+import com.collab.docs.websocket.UserPrincipalArgumentResolver;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.messaging.simp.config.ChannelRegistration;
-import org.springframework.messaging.support.ChannelInterceptor;
-import org.springframework.messaging.simp.SimpMessageType;
-import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.handler.invocation.HandlerMethodArgumentResolver;
+
+import java.security.Principal;
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final MeterRegistry meterRegistry;
+    private final StompAuthenticationInterceptor authenticationInterceptor;
+    // Looked up on use: the messaging template is built from the channels this class configures
+    private final ObjectProvider<SimpMessageSendingOperations> messagingTemplate;
+
     @Value("${websocket.endpoint}")
     private String websocketEndpoint;
 
     @Value("${websocket.allowed-origins}")
     private String allowedOrigins;
 
+    @Value("${app.websocket.lanes:0}")
+    private int laneCount;
+
+    @Value("${app.websocket.lane-queue-capacity:1000}")
+    private int laneQueueCapacity;
+
+    @Value("${app.execution.mode:pooled}")
+    private ExecutionMode executionMode;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue", "/document");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+        // Broadcast frames carry consecutive revisions; keep them in order per session even when
+        // the outbound executor runs sends concurrently
+        config.setPreservePublishOrder(true);
     }
 
     @Override
@@ -36,21 +67,51 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .withSockJS();
     }
 
+    /**
+     * Adds the binary codec ahead of the default converters. It only applies to messages whose
+     * content-type selects it, so JSON stays the default.
+     */
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        messageConverters.add(new BinaryMessageConverter());
+        return true;
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        registration.interceptors(new ChannelInterceptor() {
-            @Override
-            public org.springframework.messaging.Message<?> preSend(org.springframework.messaging.Message<?> message, org.springframework.messaging.MessageChannel channel) {
-                StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
-                if (StompCommand.CONNECT.equals(accessor.getCommand())) {
-                    // You could add authentication here if needed
-                    String username = accessor.getFirstNativeHeader("username");
-                    if (username != null) {
-                        accessor.getSessionAttributes().put("username", username);
-                    }
-                }
-                return message;
-            }
-        });
+        // Document messages run on per-document lanes; the pool itself, sized like Spring's
+        // default, handles everything else. Virtual lanes are cheap, so there are many more of them
+        // and a lane blocked on the database holds up fewer documents
+        int processors = Runtime.getRuntime().availableProcessors();
+        boolean virtual = executionMode.usesVirtualThreads();
+        int lanes = laneCount > 0 ? laneCount : virtual ? 256 : processors;
+        registration.taskExecutor(new DocumentLaneExecutor(lanes, laneQueueCapacity, virtual, meterRegistry,
+                        this::rejectDocumentMessage))
+                .corePoolSize(processors * 2);
+        // Sessions authenticate with their JWT once, at CONNECT
+        registration.interceptors(authenticationInterceptor);
+    }
+
+    /** Tells the sender that a message was dropped because its document lane was full. */
+    private void rejectDocumentMessage(Message<?> message) {
+        Principal user = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        log.warn("Dropped {} from {}: document lane full", destination, user != null ? user.getName() : null);
+        if (user != null) {
+            messagingTemplate.getObject().convertAndSendToUser(user.getName(), "/queue/errors",
+                    "Server busy; message to " + destination + " was dropped, retry shortly");
+        }
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> argumentResolvers) {
+        argumentResolvers.add(new UserPrincipalArgumentResolver());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (executionMode.usesVirtualThreads()) {
+            registration.taskExecutor(new VirtualThreadTaskExecutor("client-outbound-"));
+        }
     }
 }
@@ -1,15 +1,36 @@
 package com.collab.docs.controller;
 
+import com.collab.docs.cluster.ClusterRouter;
+import com.collab.docs.history.VersionContent;
+import com.collab.docs.history.VersionDiff;
+import com.collab.docs.history.VersionHistoryService;
+import com.collab.docs.model.CollaborationMode;
+import com.collab.docs.model.ContentRange;
 import com.collab.docs.model.Document;
+import com.collab.docs.model.DocumentPage;
 import com.collab.docs.model.User;
+import com.collab.docs.model.VersionSummary;
+import com.collab.docs.search.SearchHit;
+import com.collab.docs.search.SearchService;
+import com.collab.docs.security.UserPrincipal;
+import com.collab.docs.service.DocumentETags;
 import com.collab.docs.service.DocumentService;
 import com.collab.docs.service.UserService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.persistence.OptimisticLockException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -18,65 +39,218 @@ import java.util.List;
 public class DocumentController {
     private final DocumentService documentService;
     private final UserService userService;
+    private final ClusterRouter clusterRouter;
+    private final SearchService searchService;
+    private final VersionHistoryService versionHistory;
+    private final DocumentETags etags;
 
     @PostMapping
     public ResponseEntity<Document> createDocument(@RequestBody CreateDocumentRequest request, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        Document document = documentService.createDocument(request.title, request.content, user);
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        Document document = documentService.createDocument(request.title, request.content,
+                userService.getReference(user.getId()), request.mode);
         return ResponseEntity.ok(document);
     }
 
+    /**
+     * Creates a document from a plain UTF-8 request body, which is read in chunks rather than
+     * parsed as one JSON string. The response does not repeat the content.
+     */
+    @PostMapping("/import")
+    public ResponseEntity<Document> importDocument(@RequestParam String title,
+                                                   @RequestParam(required = false) CollaborationMode mode,
+                                                   InputStream content,
+                                                   Authentication authentication) throws IOException {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        try {
+            return ResponseEntity.ok(documentService.importDocument(title, content, userService.getReference(user.getId()), mode));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /** All of the user's documents, or those listed in {@code ids}, as a zip of text files written as it is read. */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportDocuments(@RequestParam(required = false) List<Long> ids,
+                                                                 Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename("documents.zip").build().toString())
+                .body(out -> documentService.exportArchive(user.getId(), ids, out));
+    }
+
+    /** The content as a plain-text download, streamed without building it as one string. */
+    @GetMapping("/{id}/export")
+    public ResponseEntity<StreamingResponseBody> exportDocument(@PathVariable Long id, Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        String fileName = DocumentService.exportFileName(id, documentService.getDocumentMetadata(id).getTitle());
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "plain", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName, StandardCharsets.UTF_8).build().toString())
+                .body(out -> documentService.exportContent(id, out));
+    }
+
+    /** Answers {@code If-None-Match} with 304 when the document is unchanged, without loading it. */
     @GetMapping("/{id}")
-    public ResponseEntity<Document> getDocument(@PathVariable Long id, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
+    public ResponseEntity<Document> getDocument(@PathVariable Long id,
+                                                @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        if (ifNoneMatch != null) {
+            String current = etags.current(id);
+            if (DocumentETags.matchesAny(ifNoneMatch, current)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(current).build();
+            }
+        }
         Document document = documentService.getDocument(id);
-        if (!documentService.canEdit(document, user)) {
+        return ResponseEntity.ok().eTag(DocumentETags.of(document)).body(document);
+    }
+
+    /** Part of the content by character offset, for clients that load large documents piecewise. */
+    @GetMapping("/{id}/content")
+    public ResponseEntity<ContentRange> getContentRange(@PathVariable Long id,
+                                                        @RequestParam(defaultValue = "0") int offset,
+                                                        @RequestParam(defaultValue = "65536") int length,
+                                                        Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
             return ResponseEntity.status(403).build();
         }
-        return ResponseEntity.ok(document);
+        return ResponseEntity.ok(documentService.getContentRange(id, offset, length));
+    }
+
+    /** Part of the content by 0-based line number. */
+    @GetMapping("/{id}/lines")
+    public ResponseEntity<ContentRange> getLineRange(@PathVariable Long id,
+                                                     @RequestParam(defaultValue = "0") int from,
+                                                     @RequestParam(defaultValue = "200") int count,
+                                                     Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(documentService.getLineRange(id, from, count));
     }
 
     @GetMapping
-    public ResponseEntity<List<Document>> getUserDocuments(Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        List<Document> documents = documentService.getUserDocuments(user);
-        return ResponseEntity.ok(documents);
+    public ResponseEntity<DocumentPage> getUserDocuments(@RequestParam(required = false) String cursor,
+                                                         @RequestParam(defaultValue = "50") int limit,
+                                                         Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(documentService.getUserDocuments(user.getId(), cursor, limit));
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchHit>> searchDocuments(@RequestParam("q") String query,
+                                                           @RequestParam(defaultValue = "20") int limit,
+                                                           Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        return ResponseEntity.ok(searchService.search(user.getId(), query, limit));
     }
 
+    /**
+     * Replaces the content. With {@code If-Match} carrying a tag from an earlier response, the
+     * write only happens if nobody has edited the document since; otherwise 412.
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<Document> updateDocument(@PathVariable Long id, @RequestBody UpdateDocumentRequest request, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        Document document = documentService.getDocument(id);
-        if (!documentService.canEdit(document, user)) {
+    public ResponseEntity<Document> updateDocument(@PathVariable Long id, @RequestBody UpdateDocumentRequest request,
+                                                   @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                                   Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
             return ResponseEntity.status(403).build();
         }
-        document = documentService.updateDocument(id, request.content);
-        return ResponseEntity.ok(document);
+        Long expectedRevision = null;
+        if (ifMatch != null && !ifMatch.trim().equals("*")) {
+            expectedRevision = DocumentETags.revisionOf(ifMatch);
+            if (expectedRevision == null) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+        try {
+            Document document = clusterRouter.updateDocument(id, request.content, user.getUsername(), expectedRevision);
+            return ResponseEntity.ok().eTag(DocumentETags.of(document)).body(document);
+        } catch (OptimisticLockException ex) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
+    }
+
+    @GetMapping("/{id}/versions")
+    public ResponseEntity<List<VersionSummary>> getVersions(@PathVariable Long id,
+                                                            @RequestParam(required = false) Long before,
+                                                            @RequestParam(defaultValue = "50") int limit,
+                                                            Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(versionHistory.getVersions(id, before, limit));
+    }
+
+    @GetMapping("/{id}/versions/{version}")
+    public ResponseEntity<VersionContent> getVersion(@PathVariable Long id, @PathVariable long version, Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(versionHistory.getVersion(id, version));
+    }
+
+    @GetMapping("/{id}/diff")
+    public ResponseEntity<VersionDiff> diffVersions(@PathVariable Long id, @RequestParam long from, @RequestParam long to,
+                                                    Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(versionHistory.diff(id, from, to));
+    }
+
+    /** Makes the content of an earlier version the current content, as a new edit. */
+    @PostMapping("/{id}/revert")
+    public ResponseEntity<Document> revertDocument(@PathVariable Long id, @RequestBody RevertRequest request, Authentication authentication) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        if (!documentService.canEdit(id, user.getId())) {
+            return ResponseEntity.status(403).build();
+        }
+        String content = versionHistory.getVersion(id, request.version).getContent();
+        Document document = clusterRouter.updateDocument(id, content, user.getUsername());
+        return ResponseEntity.ok().eTag(DocumentETags.of(document)).body(document);
     }
 
     @PostMapping("/{id}/collaborators")
     public ResponseEntity<?> addCollaborator(@PathVariable Long id, @RequestBody AddCollaboratorRequest request, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        Document document = documentService.getDocument(id);
-        if (!document.getOwner().equals(user)) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        Document document = documentService.getDocumentMetadata(id);
+        if (!document.getOwner().getId().equals(user.getId())) {
             return ResponseEntity.status(403).build();
         }
         User collaborator = userService.findById(request.userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        documentService.addCollaborator(document, collaborator);
+        documentService.addCollaborator(id, collaborator);
+        clusterRouter.accessChanged(id);
         return ResponseEntity.ok().build();
     }
 
     @DeleteMapping("/{id}/collaborators/{userId}")
     public ResponseEntity<?> removeCollaborator(@PathVariable Long id, @PathVariable Long userId, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        Document document = documentService.getDocument(id);
-        if (!document.getOwner().equals(user)) {
+        UserPrincipal user = (UserPrincipal) authentication.getPrincipal();
+        Document document = documentService.getDocumentMetadata(id);
+        if (!document.getOwner().getId().equals(user.getId())) {
             return ResponseEntity.status(403).build();
         }
         User collaborator = userService.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        documentService.removeCollaborator(document, collaborator);
+        documentService.removeCollaborator(id, collaborator);
+        clusterRouter.accessChanged(id);
         return ResponseEntity.ok().build();
     }
 
@@ -84,6 +258,7 @@ public class DocumentController {
     public static class CreateDocumentRequest {
         private String title;
         private String content;
+        private CollaborationMode mode;
     }
 
     @Data
@@ -91,6 +266,11 @@ public class DocumentController {
         private String content;
     }
 
+    @Data
+    public static class RevertRequest {
+        private long version;
+    }
+
     @Data
     public static class AddCollaboratorRequest {
         private Long userId;
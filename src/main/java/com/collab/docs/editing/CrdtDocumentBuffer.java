@@ -0,0 +1,584 @@
+package com.collab.docs.editing;
+
+import com.collab.docs.model.CollaborationMode;
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.websocket.DocumentEditMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * {@link CollaborationMode#CRDT} buffer: a replicated growable array (RGA) sequence CRDT.
+ * <p>
+ * Every character has a unique {@link CrdtId}. Inserts name the character they follow and deletes
+ * name the characters they remove, so operations commute and are applied as they arrive without
+ * being transformed. Characters typed in sequence by one site are stored as a single run, and
+ * deleted runs keep only their ids, so memory grows with the number of runs rather than characters.
+ * Tombstones are dropped once every joined site has acknowledged a revision at or after the delete.
+ * <p>
+ * Each site numbers its inserts with increasing clocks, so an insert at or below the highest clock
+ * already integrated for its site is a redelivery, even after its run has been collected.
+ */
+public class CrdtDocumentBuffer implements DocumentBuffer {
+    static final int MAX_RUN_LENGTH = 1024;
+
+    private final Long documentId;
+    private final int gcInterval;
+    private final Run head = new Run(CrdtId.HEAD, "");
+    private final Map<Integer, TreeMap<Integer, Run>> runsBySite = new HashMap<>();
+    private final Map<Integer, Long> siteWatermarks = new HashMap<>();
+    /** Highest clock integrated per site, including runs already dropped by garbage collection. */
+    private final Map<Integer, Integer> siteClocks = new HashMap<>();
+    private int maxClock;
+    private int visibleLength;
+    private int runCount;
+    private long revision;
+    private long operationsSinceGc;
+    private String lastModifiedBy;
+    private long lastModifiedAt;
+    private volatile Rope materialized;
+
+    /**
+     * Restores a buffer from persisted content and, if available, the run layout produced by
+     * {@link #getState()}. Without a matching layout the content becomes a single server-site run.
+     */
+    public CrdtDocumentBuffer(Long documentId, String content, String layout, long revision, int gcInterval) {
+        this.documentId = documentId;
+        this.revision = revision;
+        this.gcInterval = gcInterval;
+        String text = content != null ? content : "";
+        if (!restoreLayout(text, layout) && !text.isEmpty()) {
+            integrateInsert(CrdtId.of(1, CrdtId.SERVER_SITE), CrdtId.HEAD, text);
+        }
+    }
+
+    @Override
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    @Override
+    public CollaborationMode getMode() {
+        return CollaborationMode.CRDT;
+    }
+
+    /**
+     * Integrates an INSERT (run of characters starting at {@code elementId}, placed after {@code referenceId})
+     * or a DELETE ({@code length} consecutive ids starting at {@code elementId}). Duplicate deliveries are
+     * ignored but still acknowledged.
+     */
+    @Override
+    public synchronized List<DocumentEditMessage> apply(DocumentEditMessage edit, String username,
+                                                     Consumer<List<DocumentEditMessage>> beforeCommit) {
+        Integer siteId = edit.getSiteId();
+        if (siteId == null || !siteWatermarks.containsKey(siteId)) {
+            throw new IllegalArgumentException("Unknown CRDT site " + siteId + " for document " + documentId
+                    + "; rejoin the document");
+        }
+        if (edit.getElementId() == null) {
+            throw new IllegalArgumentException("CRDT edit for document " + documentId + " has no element id");
+        }
+
+        String operation = edit.getOperation() != null ? edit.getOperation() : "";
+        switch (operation) {
+            case "INSERT":
+                if (CrdtId.site(edit.getElementId()) != siteId) {
+                    throw new IllegalArgumentException("Site " + siteId + " cannot insert element "
+                            + CrdtId.toString(edit.getElementId()));
+                }
+                if (edit.getContent() == null || edit.getContent().isEmpty() || edit.getReferenceId() == null) {
+                    throw new IllegalArgumentException("CRDT insert needs content and a reference id");
+                }
+                checkInsert(edit.getElementId(), edit.getReferenceId());
+                break;
+            case "DELETE":
+                if (edit.getLength() == null || edit.getLength() <= 0) {
+                    throw new IllegalArgumentException("CRDT delete needs a positive length");
+                }
+                checkDelete(edit.getElementId(), edit.getLength());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported CRDT operation: " + edit.getOperation());
+        }
+
+        List<DocumentEditMessage> committed = List.of(DocumentEditMessage.builder()
+                .operation(operation)
+                .elementId(edit.getElementId())
+                .referenceId(edit.getReferenceId())
+                .content(edit.getContent())
+                .length(edit.getLength())
+                .siteId(siteId)
+                .revision(revision + 1)
+                .username(username)
+                .build());
+        beforeCommit.accept(committed);
+
+        if ("INSERT".equals(operation)) {
+            integrateInsert(edit.getElementId(), edit.getReferenceId(), edit.getContent());
+        } else {
+            integrateDelete(edit.getElementId(), edit.getLength());
+        }
+        if (edit.getRevision() != null) {
+            siteWatermarks.merge(siteId, edit.getRevision(), Math::max);
+        }
+        revision++;
+        touch(username);
+        maybeCollectGarbage();
+        return committed;
+    }
+
+    /**
+     * Deletes every visible run and inserts the new text at the start as the server site.
+     */
+    @Override
+    public synchronized List<DocumentEditMessage> replaceContent(String content, String username,
+                                                              Consumer<List<DocumentEditMessage>> beforeCommit) {
+        // Collect visible ranges first, joining neighbouring runs with consecutive ids into one delete
+        List<long[]> ranges = new ArrayList<>();
+        for (Run run = head.next; run != null; run = run.next) {
+            if (run.isDeleted()) {
+                continue;
+            }
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && CrdtId.plus(last[0], (int) last[1]) == run.id) {
+                last[1] += run.length;
+            } else {
+                ranges.add(new long[]{run.id, run.length});
+            }
+        }
+
+        List<DocumentEditMessage> committed = new ArrayList<>();
+        for (long[] range : ranges) {
+            committed.add(DocumentEditMessage.builder()
+                    .operation("DELETE")
+                    .elementId(range[0])
+                    .length((int) range[1])
+                    .siteId(CrdtId.SERVER_SITE)
+                    .revision(revision + committed.size() + 1)
+                    .username(username)
+                    .build());
+        }
+        if (content != null && !content.isEmpty()) {
+            // Deletes leave maxClock alone, so the insert's id is known up front
+            committed.add(DocumentEditMessage.builder()
+                    .operation("INSERT")
+                    .elementId(CrdtId.of(maxClock + 1, CrdtId.SERVER_SITE))
+                    .referenceId(CrdtId.HEAD)
+                    .content(content)
+                    .siteId(CrdtId.SERVER_SITE)
+                    .revision(revision + committed.size() + 1)
+                    .username(username)
+                    .build());
+        }
+        beforeCommit.accept(committed);
+
+        for (DocumentEditMessage operation : committed) {
+            if ("INSERT".equals(operation.getOperation())) {
+                integrateInsert(operation.getElementId(), CrdtId.HEAD, content);
+            } else {
+                integrateDelete(operation.getElementId(), operation.getLength());
+            }
+            revision++;
+        }
+        touch(username);
+        maybeCollectGarbage();
+        return committed;
+    }
+
+    /**
+     * Integrates a committed operation without site checks; the sites that produced journaled
+     * operations are not registered after a restart.
+     */
+    @Override
+    public synchronized void replay(DocumentEditMessage committed) {
+        long committedRevision = committed.getRevision();
+        if (committedRevision <= revision) {
+            return;
+        }
+        if (committedRevision != revision + 1) {
+            throw new IllegalStateException("Cannot replay revision " + committedRevision + " of document "
+                    + documentId + " at revision " + revision);
+        }
+        if ("INSERT".equals(committed.getOperation())) {
+            integrateInsert(committed.getElementId(), committed.getReferenceId(), committed.getContent());
+        } else {
+            integrateDelete(committed.getElementId(), committed.getLength());
+        }
+        revision = committedRevision;
+        touch(committed.getUsername());
+    }
+
+    @Override
+    public synchronized DocumentContent getState() {
+        return DocumentContent.builder()
+                .content(getContent())
+                .version(revision)
+                .lastModifiedBy(lastModifiedBy)
+                .lastModifiedAt(lastModifiedAt > 0 ? lastModifiedAt : null)
+                .collaborationMode(CollaborationMode.CRDT)
+                .elements(encodeLayout())
+                .build();
+    }
+
+    /**
+     * Registers a new site for the joining client and returns, besides the content, the element
+     * layout it needs to reference existing characters.
+     */
+    @Override
+    public synchronized DocumentContent join() {
+        int siteId;
+        do {
+            siteId = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+        } while (siteWatermarks.containsKey(siteId));
+        addSite(siteId);
+
+        DocumentContent state = getState();
+        state.setSiteId(siteId);
+        return state;
+    }
+
+    synchronized void addSite(int siteId) {
+        siteWatermarks.put(siteId, revision);
+    }
+
+    @Override
+    public synchronized void leave(Integer siteId) {
+        if (siteId != null) {
+            siteWatermarks.remove(siteId);
+        }
+    }
+
+    @Override
+    public synchronized Rope snapshot() {
+        Rope text = materialized;
+        if (text == null) {
+            StringBuilder sb = new StringBuilder(visibleLength);
+            for (Run run = head.next; run != null; run = run.next) {
+                if (!run.isDeleted()) {
+                    sb.append(run.text);
+                }
+            }
+            text = Rope.of(sb);
+            materialized = text;
+        }
+        return text;
+    }
+
+    @Override
+    public String getContent() {
+        return snapshot().toString();
+    }
+
+    @Override
+    public synchronized long getRevision() {
+        return revision;
+    }
+
+    @Override
+    public synchronized int length() {
+        return visibleLength;
+    }
+
+    synchronized int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Run layout: comma-separated {@code id:length} runs in document order, with a {@code ~} suffix
+     * on deleted runs. Ids are base-36 encoded {@link CrdtId}s.
+     */
+    private String encodeLayout() {
+        StringBuilder layout = new StringBuilder();
+        for (Run run = head.next; run != null; run = run.next) {
+            if (layout.length() > 0) {
+                layout.append(',');
+            }
+            layout.append(CrdtId.toString(run.id)).append(':').append(run.length);
+            if (run.isDeleted()) {
+                layout.append('~');
+            }
+        }
+        return layout.toString();
+    }
+
+    private void touch(String username) {
+        lastModifiedBy = username;
+        lastModifiedAt = System.currentTimeMillis();
+    }
+
+    private boolean restoreLayout(String content, String layout) {
+        if (layout == null || layout.isEmpty()) {
+            return false;
+        }
+        String[] tokens = layout.split(",");
+        long[] ids = new long[tokens.length];
+        int[] lengths = new int[tokens.length];
+        boolean[] deleted = new boolean[tokens.length];
+        int visible = 0;
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                String token = tokens[i];
+                deleted[i] = token.endsWith("~");
+                int colon = token.indexOf(':');
+                ids[i] = Long.parseLong(token.substring(0, colon), 36);
+                lengths[i] = Integer.parseInt(token.substring(colon + 1, deleted[i] ? token.length() - 1 : token.length()));
+                if (!deleted[i]) {
+                    visible += lengths[i];
+                }
+            }
+        } catch (RuntimeException ex) {
+            return false;
+        }
+        if (visible != content.length()) {
+            return false;
+        }
+
+        Run anchor = head;
+        int offset = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            Run run = new Run(ids[i], deleted[i] ? null : content.substring(offset, offset + lengths[i]));
+            run.length = lengths[i];
+            run.deletedAt = revision;
+            if (!deleted[i]) {
+                offset += lengths[i];
+            }
+            linkAfter(anchor, run);
+            index(run);
+            anchor = run;
+            maxClock = Math.max(maxClock, CrdtId.clock(ids[i]) + lengths[i] - 1);
+            siteClocks.merge(CrdtId.site(ids[i]), CrdtId.clock(ids[i]) + lengths[i] - 1, Math::max);
+        }
+        visibleLength = visible;
+        return true;
+    }
+
+    /**
+     * Drops tombstones that no joined site can still reference and merges the runs they separated.
+     */
+    synchronized void collectGarbage() {
+        long stableRevision = revision;
+        for (long watermark : siteWatermarks.values()) {
+            stableRevision = Math.min(stableRevision, watermark);
+        }
+
+        Run previous = head;
+        Run run = head.next;
+        while (run != null) {
+            Run next = run.next;
+            if (run.isDeleted() && run.deletedAt <= stableRevision) {
+                remove(run);
+            } else if (canMerge(previous, run)) {
+                previous.text = previous.text + run.text;
+                previous.length += run.length;
+                remove(run);
+            } else {
+                previous = run;
+            }
+            run = next;
+        }
+        operationsSinceGc = 0;
+    }
+
+    /** Throws if {@link #integrateInsert} would reject the insert. */
+    private void checkInsert(long elementId, long referenceId) {
+        if (isIntegrated(elementId) || referenceId == CrdtId.HEAD) {
+            return;
+        }
+        if (find(referenceId) == null) {
+            throw new IllegalArgumentException("Unknown reference element " + CrdtId.toString(referenceId)
+                    + " in document " + documentId + "; reload the document");
+        }
+        if (CrdtId.clock(elementId) <= CrdtId.clock(referenceId)) {
+            throw new IllegalArgumentException("Element " + CrdtId.toString(elementId)
+                    + " must have a later clock than its reference");
+        }
+    }
+
+    private boolean isIntegrated(long elementId) {
+        return CrdtId.clock(elementId) <= siteClocks.getOrDefault(CrdtId.site(elementId), 0);
+    }
+
+    private void integrateInsert(long elementId, long referenceId, String text) {
+        if (isIntegrated(elementId)) {
+            return;
+        }
+        checkInsert(elementId, referenceId);
+        Run previous;
+        if (referenceId == CrdtId.HEAD) {
+            previous = head;
+        } else {
+            Run reference = find(referenceId);
+            int offset = CrdtId.clock(referenceId) - CrdtId.clock(reference.id) + 1;
+            if (offset < reference.length) {
+                split(reference, offset);
+            }
+            previous = reference;
+        }
+
+        // RGA rule: skip runs with a greater id; they were inserted concurrently at the same place
+        // and win, or they descend from such an insert
+        Run left = previous;
+        while (left.next != null && left.next.id > elementId) {
+            left = left.next;
+        }
+
+        if (left == previous && canAppend(previous, elementId, text.length())) {
+            previous.text = previous.text + text;
+            previous.length += text.length();
+        } else {
+            // Long texts are stored as several runs so that later splits copy a bounded amount of text
+            Run anchor = left;
+            for (int offset = 0; offset < text.length(); offset += MAX_RUN_LENGTH) {
+                Run run = new Run(CrdtId.plus(elementId, offset),
+                        text.substring(offset, Math.min(text.length(), offset + MAX_RUN_LENGTH)));
+                linkAfter(anchor, run);
+                index(run);
+                anchor = run;
+            }
+        }
+        maxClock = Math.max(maxClock, CrdtId.clock(elementId) + text.length() - 1);
+        siteClocks.merge(CrdtId.site(elementId), CrdtId.clock(elementId) + text.length() - 1, Math::max);
+        visibleLength += text.length();
+        materialized = null;
+    }
+
+    /** Throws unless every id of the range exists. */
+    private void checkDelete(long elementId, int length) {
+        int site = CrdtId.site(elementId);
+        int end = CrdtId.clock(elementId) + length;
+        for (int c = CrdtId.clock(elementId); c < end; ) {
+            Run run = find(CrdtId.of(c, site));
+            if (run == null) {
+                throw new IllegalArgumentException("Unknown element " + CrdtId.toString(CrdtId.of(c, site))
+                        + " in document " + documentId + "; reload the document");
+            }
+            c = CrdtId.clock(run.id) + run.length;
+        }
+    }
+
+    private void integrateDelete(long elementId, int length) {
+        int site = CrdtId.site(elementId);
+        int clock = CrdtId.clock(elementId);
+        int end = clock + length;
+
+        // Validate the whole range first so that a bad delete leaves the document untouched
+        checkDelete(elementId, length);
+
+        for (int c = clock; c < end; ) {
+            Run run = find(CrdtId.of(c, site));
+            int offset = c - CrdtId.clock(run.id);
+            if (offset > 0) {
+                run = split(run, offset);
+            }
+            if (c + run.length > end) {
+                split(run, end - c);
+            }
+            if (!run.isDeleted()) {
+                visibleLength -= run.length;
+                run.text = null;
+                run.deletedAt = revision + 1;
+                materialized = null;
+            }
+            c += run.length;
+        }
+    }
+
+    private void maybeCollectGarbage() {
+        if (++operationsSinceGc >= gcInterval) {
+            collectGarbage();
+        }
+    }
+
+    private Run find(long id) {
+        TreeMap<Integer, Run> runs = runsBySite.get(CrdtId.site(id));
+        if (runs == null) {
+            return null;
+        }
+        Map.Entry<Integer, Run> entry = runs.floorEntry(CrdtId.clock(id));
+        if (entry == null) {
+            return null;
+        }
+        Run run = entry.getValue();
+        return CrdtId.clock(id) < CrdtId.clock(run.id) + run.length ? run : null;
+    }
+
+    /** Splits {@code run} after {@code offset} characters and returns the new tail run. */
+    private Run split(Run run, int offset) {
+        Run tail = new Run(CrdtId.plus(run.id, offset), run.text != null ? run.text.substring(offset) : null);
+        tail.length = run.length - offset;
+        tail.deletedAt = run.deletedAt;
+        run.length = offset;
+        if (run.text != null) {
+            run.text = run.text.substring(0, offset);
+        }
+        linkAfter(run, tail);
+        index(tail);
+        return tail;
+    }
+
+    private boolean canAppend(Run run, long elementId, int length) {
+        return run != head && !run.isDeleted()
+                && CrdtId.plus(run.id, run.length) == elementId
+                && run.length + length <= MAX_RUN_LENGTH;
+    }
+
+    private boolean canMerge(Run previous, Run run) {
+        return previous != head && !previous.isDeleted() && !run.isDeleted()
+                && CrdtId.plus(previous.id, previous.length) == run.id
+                && previous.length + run.length <= MAX_RUN_LENGTH;
+    }
+
+    private void linkAfter(Run previous, Run run) {
+        run.prev = previous;
+        run.next = previous.next;
+        if (previous.next != null) {
+            previous.next.prev = run;
+        }
+        previous.next = run;
+    }
+
+    private void index(Run run) {
+        runsBySite.computeIfAbsent(CrdtId.site(run.id), site -> new TreeMap<>()).put(CrdtId.clock(run.id), run);
+        runCount++;
+    }
+
+    private void remove(Run run) {
+        run.prev.next = run.next;
+        if (run.next != null) {
+            run.next.prev = run.prev;
+        }
+        TreeMap<Integer, Run> runs = runsBySite.get(CrdtId.site(run.id));
+        runs.remove(CrdtId.clock(run.id));
+        if (runs.isEmpty()) {
+            runsBySite.remove(CrdtId.site(run.id));
+        }
+        runCount--;
+    }
+
+    /**
+     * Consecutive characters of one site with consecutive clocks. Deleted runs drop their text.
+     */
+    private static final class Run {
+        final long id;
+        String text;
+        int length;
+        long deletedAt;
+        Run prev;
+        Run next;
+
+        Run(long id, String text) {
+            this.id = id;
+            this.text = text;
+            this.length = text != null ? text.length() : 0;
+        }
+
+        boolean isDeleted() {
+            return text == null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.collab.docs.editing;
+
+/**
+ * Compact encoding of CRDT element identifiers as a single {@code long}: the Lamport clock in the
+ * high 32 bits and the site id in the low 32 bits. Comparing two encoded ids as longs orders them
+ * by clock first and site second, and the characters of a run typed by one site are consecutive
+ * ids, so a run of any length is described by the id of its first character.
+ */
+public final class CrdtId {
+    /** Reference id meaning "insert at the start of the document". */
+    public static final long HEAD = 0L;
+
+    /** Site id used for content created by the server itself, e.g. the initial text or REST updates. */
+    public static final int SERVER_SITE = 0;
+
+    private CrdtId() {
+    }
+
+    public static long of(int clock, int site) {
+        return ((long) clock << 32) | (site & 0xFFFFFFFFL);
+    }
+
+    public static int clock(long id) {
+        return (int) (id >>> 32);
+    }
+
+    public static int site(long id) {
+        return (int) id;
+    }
+
+    /** Id of the character {@code offset} positions after {@code id} in the same run. */
+    public static long plus(long id, int offset) {
+        return id + ((long) offset << 32);
+    }
+
+    public static String toString(long id) {
+        return Long.toString(id, 36);
+    }
+}
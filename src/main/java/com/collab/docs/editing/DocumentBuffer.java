@@ -0,0 +1,84 @@
+package com.collab.docs.editing;
+
+import com.collab.docs.model.CollaborationMode;
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.websocket.DocumentEditMessage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Server-side state of one active document. Implementations decide how concurrent edits are
+ * reconciled; see {@link CollaborationMode}.
+ * <p>
+ * Implementations guard their state with the buffer's own monitor, so callers can synchronize on
+ * the buffer to make an edit and follow-up work, such as journaling it, atomic.
+ */
+public interface DocumentBuffer {
+
+    Long getDocumentId();
+
+    CollaborationMode getMode();
+
+    /**
+     * Applies a client edit and returns the committed operations to broadcast, each stamped with
+     * the revision it produced. {@code beforeCommit} receives those operations once the edit has
+     * been validated, before the buffer changes; if it throws, the buffer is left as it was. This
+     * is where callers journal the operations.
+     */
+    List<DocumentEditMessage> apply(DocumentEditMessage edit, String username,
+                                    Consumer<List<DocumentEditMessage>> beforeCommit);
+
+    default List<DocumentEditMessage> apply(DocumentEditMessage edit, String username) {
+        return apply(edit, username, committed -> { });
+    }
+
+    /**
+     * Replaces the whole text, e.g. for a REST update, and returns the committed operations.
+     * {@code beforeCommit} is called as in {@link #apply(DocumentEditMessage, String, Consumer)}.
+     */
+    List<DocumentEditMessage> replaceContent(String content, String username,
+                                             Consumer<List<DocumentEditMessage>> beforeCommit);
+
+    default List<DocumentEditMessage> replaceContent(String content, String username) {
+        return replaceContent(content, username, committed -> { });
+    }
+
+    /**
+     * Re-applies an operation previously returned by {@link #apply} or {@link #replaceContent},
+     * e.g. from the edit journal. Operations at or below the current revision are ignored.
+     *
+     * @throws IllegalStateException if the operation does not directly follow the current revision
+     */
+    void replay(DocumentEditMessage committed);
+
+    /**
+     * Content and revision captured atomically, plus any mode-specific state needed to restore the buffer.
+     */
+    DocumentContent getState();
+
+    /**
+     * State sent to a client joining an editing session. Implementations may add the
+     * mode-specific information the client needs to produce edits.
+     */
+    default DocumentContent join() {
+        return getState();
+    }
+
+    /**
+     * Called when a client that received {@link #join()} leaves the session.
+     */
+    default void leave(Integer siteId) {
+    }
+
+    /**
+     * Returns an immutable snapshot of the current text; it is safe to read without holding any lock.
+     */
+    Rope snapshot();
+
+    String getContent();
+
+    long getRevision();
+
+    int length();
+}
@@ -0,0 +1,86 @@
+package com.collab.docs.editing;
+
+import java.util.Objects;
+
+/**
+ * A primitive text operation: either an insertion of {@code text} at {@code position} or
+ * the deletion of {@code length} characters starting at {@code position}. REPLACE edits
+ * are expressed as a delete followed by an insert at the same position.
+ */
+public final class EditOperation {
+    public enum Type { INSERT, DELETE }
+
+    private final Type type;
+    private final int position;
+    private final String text;
+    private final int length;
+
+    private EditOperation(Type type, int position, String text, int length) {
+        this.type = type;
+        this.position = position;
+        this.text = text;
+        this.length = length;
+    }
+
+    public static EditOperation insert(int position, String text) {
+        return new EditOperation(Type.INSERT, position, text, text.length());
+    }
+
+    public static EditOperation delete(int position, int length) {
+        return new EditOperation(Type.DELETE, position, "", length);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isInsert() {
+        return type == Type.INSERT;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    /** Exclusive end of the affected range in the document the operation applies to. */
+    public int getEnd() {
+        return isInsert() ? position : position + length;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public Rope applyTo(Rope rope) {
+        if (position < 0 || getEnd() > rope.length()) {
+            throw new IllegalArgumentException("Operation " + this + " is outside document of length " + rope.length());
+        }
+        return isInsert() ? rope.insert(position, text) : rope.delete(position, position + length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof EditOperation)) {
+            return false;
+        }
+        EditOperation that = (EditOperation) o;
+        return type == that.type && position == that.position && length == that.length && text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, position, text, length);
+    }
+
+    @Override
+    public String toString() {
+        return isInsert() ? "INSERT(" + position + ", \"" + text + "\")" : "DELETE(" + position + ", " + length + ")";
+    }
+}
@@ -0,0 +1,129 @@
+package com.collab.docs.editing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Operational transformation for {@link EditOperation} sequences.
+ * <p>
+ * {@code transform(a, b)} takes two sequences that were produced against the same document state
+ * and returns {@code a'} and {@code b'} such that applying {@code a} then {@code b'} yields the same
+ * text as applying {@code b} then {@code a'}. When two inserts land on the same position the side
+ * with priority is placed first; the server always gives priority to already committed operations.
+ */
+public final class OperationTransformer {
+
+    private OperationTransformer() {
+    }
+
+    /**
+     * Rebases {@code operations} over {@code committed}, a run of operations that were accepted
+     * after the state the operations were produced against.
+     */
+    public static List<EditOperation> transformAgainst(List<EditOperation> operations, List<EditOperation> committed) {
+        List<EditOperation> result = operations;
+        for (EditOperation op : committed) {
+            result = transform(result, Collections.singletonList(op), false).getLeft();
+        }
+        return result;
+    }
+
+    public static Result transform(List<EditOperation> a, List<EditOperation> b, boolean aHasPriority) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return new Result(a, b);
+        }
+        if (a.size() > 1) {
+            Result head = transform(a.subList(0, 1), b, aHasPriority);
+            Result tail = transform(a.subList(1, a.size()), head.getRight(), aHasPriority);
+            return new Result(concat(head.getLeft(), tail.getLeft()), tail.getRight());
+        }
+        if (b.size() > 1) {
+            Result head = transform(a, b.subList(0, 1), aHasPriority);
+            Result tail = transform(head.getLeft(), b.subList(1, b.size()), aHasPriority);
+            return new Result(tail.getLeft(), concat(head.getRight(), tail.getRight()));
+        }
+        return transformPair(a.get(0), b.get(0), aHasPriority);
+    }
+
+    private static Result transformPair(EditOperation a, EditOperation b, boolean aHasPriority) {
+        if (a.isInsert() && b.isInsert()) {
+            if (a.getPosition() < b.getPosition() || (a.getPosition() == b.getPosition() && aHasPriority)) {
+                return new Result(List.of(a), List.of(EditOperation.insert(b.getPosition() + a.getLength(), b.getText())));
+            }
+            return new Result(List.of(EditOperation.insert(a.getPosition() + b.getLength(), a.getText())), List.of(b));
+        }
+        if (a.isInsert()) {
+            return transformInsertDelete(a, b);
+        }
+        if (b.isInsert()) {
+            Result swapped = transformInsertDelete(b, a);
+            return new Result(swapped.getRight(), swapped.getLeft());
+        }
+        return new Result(shrink(a, b), shrink(b, a));
+    }
+
+    private static Result transformInsertDelete(EditOperation insert, EditOperation delete) {
+        int position = insert.getPosition();
+        if (position <= delete.getPosition()) {
+            return new Result(List.of(insert),
+                    List.of(EditOperation.delete(delete.getPosition() + insert.getLength(), delete.getLength())));
+        }
+        if (position >= delete.getEnd()) {
+            return new Result(List.of(EditOperation.insert(position - delete.getLength(), insert.getText())),
+                    List.of(delete));
+        }
+        // The insert lands inside the deleted range: keep the inserted text and delete around it
+        return new Result(List.of(EditOperation.insert(delete.getPosition(), insert.getText())),
+                List.of(EditOperation.delete(delete.getPosition(), position - delete.getPosition()),
+                        EditOperation.delete(delete.getPosition() + insert.getLength(), delete.getEnd() - position)));
+    }
+
+    private static List<EditOperation> shrink(EditOperation delete, EditOperation other) {
+        if (delete.getEnd() <= other.getPosition()) {
+            return List.of(delete);
+        }
+        if (delete.getPosition() >= other.getEnd()) {
+            return List.of(EditOperation.delete(delete.getPosition() - other.getLength(), delete.getLength()));
+        }
+        int overlap = Math.min(delete.getEnd(), other.getEnd()) - Math.max(delete.getPosition(), other.getPosition());
+        int remaining = delete.getLength() - overlap;
+        if (remaining == 0) {
+            return List.of();
+        }
+        return List.of(EditOperation.delete(Math.min(delete.getPosition(), other.getPosition()), remaining));
+    }
+
+    private static List<EditOperation> concat(List<EditOperation> first, List<EditOperation> second) {
+        if (first.isEmpty()) {
+            return second;
+        }
+        if (second.isEmpty()) {
+            return first;
+        }
+        List<EditOperation> result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        result.addAll(second);
+        return result;
+    }
+
+    public static final class Result {
+        private final List<EditOperation> left;
+        private final List<EditOperation> right;
+
+        Result(List<EditOperation> left, List<EditOperation> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /** The first argument rebased so it applies after the second. */
+        public List<EditOperation> getLeft() {
+            return left;
+        }
+
+        /** The second argument rebased so it applies after the first. */
+        public List<EditOperation> getRight() {
+            return right;
+        }
+    }
+}
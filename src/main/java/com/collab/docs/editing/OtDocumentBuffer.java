@@ -0,0 +1,205 @@
+package com.collab.docs.editing;
+
+import com.collab.docs.model.CollaborationMode;
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.websocket.DocumentEditMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link CollaborationMode#OT} buffer. Edits are applied as deltas against a {@link Rope},
+ * so the cost of an edit depends on its size rather than on the size of the document.
+ * <p>
+ * Every committed primitive operation advances the document revision by one. Clients send the
+ * revision their edit was based on; the edit is transformed against everything committed since
+ * then before it is applied, so concurrent edits never overwrite each other.
+ */
+public class OtDocumentBuffer implements DocumentBuffer {
+    private final Long documentId;
+    private final int historyLimit;
+    private final List<EditOperation> history = new ArrayList<>();
+    private volatile Rope text;
+    private volatile long revision;
+    private String lastModifiedBy;
+    private long lastModifiedAt;
+
+    public OtDocumentBuffer(Long documentId, String content, long revision, int historyLimit) {
+        this.documentId = documentId;
+        this.text = Rope.of(content);
+        this.revision = revision;
+        this.historyLimit = historyLimit;
+    }
+
+    @Override
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    @Override
+    public CollaborationMode getMode() {
+        return CollaborationMode.OT;
+    }
+
+    /**
+     * Transforms the edit against the operations committed since its base revision and applies it.
+     * A message without a revision is assumed to be based on the current one, and a message without
+     * an operation is treated as a full content replacement so that older clients keep working.
+     */
+    @Override
+    public synchronized List<DocumentEditMessage> apply(DocumentEditMessage edit, String username,
+                                                     Consumer<List<DocumentEditMessage>> beforeCommit) {
+        long baseRevision = edit.getRevision() != null && edit.getOperation() != null ? edit.getRevision() : revision;
+        long historyStart = revision - history.size();
+        if (baseRevision > revision || baseRevision < historyStart) {
+            throw new IllegalArgumentException("Revision " + baseRevision + " of document " + documentId
+                    + " is not available (current " + revision + ", oldest " + historyStart + "); reload the document");
+        }
+
+        List<EditOperation> operations = toOperations(edit);
+        int committedSince = (int) (revision - baseRevision);
+        if (committedSince > 0) {
+            operations = OperationTransformer.transformAgainst(operations,
+                    history.subList(history.size() - committedSince, history.size()));
+        }
+        if (operations.isEmpty()) {
+            // The edit was absorbed by concurrent deletes; commit an explicit no-op so the author still gets an ack
+            operations = Collections.singletonList(EditOperation.delete(0, 0));
+        }
+
+        Rope result = text;
+        for (EditOperation op : operations) {
+            result = op.applyTo(result);
+        }
+
+        List<DocumentEditMessage> committed = new ArrayList<>(operations.size());
+        for (EditOperation op : operations) {
+            committed.add(toMessage(op, revision + committed.size() + 1, username));
+        }
+        beforeCommit.accept(committed);
+
+        history.addAll(operations);
+        revision += operations.size();
+        text = result;
+        trimHistory();
+        touch(username);
+        return committed;
+    }
+
+    /**
+     * The replacement is recorded as a regular operation so that clients with edits in flight
+     * can still be transformed against it.
+     */
+    @Override
+    public synchronized List<DocumentEditMessage> replaceContent(String content, String username,
+                                                              Consumer<List<DocumentEditMessage>> beforeCommit) {
+        DocumentEditMessage edit = DocumentEditMessage.builder()
+                .content(content)
+                .build();
+        return apply(edit, username, beforeCommit);
+    }
+
+    @Override
+    public synchronized void replay(DocumentEditMessage committed) {
+        long committedRevision = committed.getRevision();
+        if (committedRevision <= revision) {
+            return;
+        }
+        if (committedRevision != revision + 1) {
+            throw new IllegalStateException("Cannot replay revision " + committedRevision + " of document "
+                    + documentId + " at revision " + revision);
+        }
+        EditOperation op = "INSERT".equals(committed.getOperation())
+                ? EditOperation.insert(committed.getStartPosition(), committed.getContent())
+                : EditOperation.delete(committed.getStartPosition(), committed.getEndPosition() - committed.getStartPosition());
+        text = op.applyTo(text);
+        history.add(op);
+        revision = committedRevision;
+        trimHistory();
+        touch(committed.getUsername());
+    }
+
+    @Override
+    public synchronized DocumentContent getState() {
+        return DocumentContent.builder()
+                .content(text.toString())
+                .version(revision)
+                .lastModifiedBy(lastModifiedBy)
+                .lastModifiedAt(lastModifiedAt > 0 ? lastModifiedAt : null)
+                .collaborationMode(CollaborationMode.OT)
+                .build();
+    }
+
+    @Override
+    public Rope snapshot() {
+        return text;
+    }
+
+    @Override
+    public String getContent() {
+        return text.toString();
+    }
+
+    @Override
+    public long getRevision() {
+        return revision;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    private List<EditOperation> toOperations(DocumentEditMessage edit) {
+        String operation = edit.getOperation();
+        String content = edit.getContent() != null ? edit.getContent() : "";
+        if (operation == null) {
+            return List.of(EditOperation.delete(0, text.length()), EditOperation.insert(0, content));
+        }
+
+        int start = edit.getStartPosition() != null ? edit.getStartPosition() : 0;
+        switch (operation) {
+            case "INSERT":
+                return List.of(EditOperation.insert(start, content));
+            case "DELETE":
+                return List.of(EditOperation.delete(start, rangeLength(start, edit.getEndPosition())));
+            case "REPLACE":
+                return List.of(EditOperation.delete(start, rangeLength(start, edit.getEndPosition())),
+                        EditOperation.insert(start, content));
+            default:
+                throw new IllegalArgumentException("Unsupported edit operation: " + operation);
+        }
+    }
+
+    private int rangeLength(int start, Integer end) {
+        if (end == null || start < 0 || end < start) {
+            throw new IllegalArgumentException("Invalid edit range [" + start + ", " + end + ") for document " + documentId);
+        }
+        return end - start;
+    }
+
+    private void touch(String username) {
+        lastModifiedBy = username;
+        lastModifiedAt = System.currentTimeMillis();
+    }
+
+    private DocumentEditMessage toMessage(EditOperation op, long revision, String username) {
+        return DocumentEditMessage.builder()
+                .operation(op.getType().name())
+                .startPosition(op.getPosition())
+                .endPosition(op.getEnd())
+                .content(op.isInsert() ? op.getText() : null)
+                .revision(revision)
+                .username(username)
+                .build();
+    }
+
+    private void trimHistory() {
+        // Drop the oldest half at once so trimming stays amortized O(1) per operation
+        if (history.size() > 2 * historyLimit) {
+            history.subList(0, history.size() - historyLimit).clear();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.collab.docs.editing;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Immutable, height-balanced rope used as the in-memory text buffer of an active document.
+ * <p>
+ * Leaves hold short string chunks and branches are kept AVL-balanced, so insert, delete and
+ * replace are O(log n) regardless of document size. Because the structure is persistent,
+ * a reference to a {@code Rope} is a stable snapshot that can be handed to other threads.
+ * <p>
+ * Every node also counts the line feeds below it, so the rope doubles as a line-offset index:
+ * {@link #lineStart} and {@link #lineOf} walk one path from the root and are O(log n) as well,
+ * and the counts are kept current by the same edits that rebuild the path.
+ */
+public final class Rope implements CharSequence {
+    static final int MAX_LEAF = 512;
+
+    private static final Rope EMPTY = new Rope(new Leaf(""));
+
+    private final Node root;
+
+    private Rope(Node root) {
+        this.root = root;
+    }
+
+    public static Rope empty() {
+        return EMPTY;
+    }
+
+    public static Rope of(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return EMPTY;
+        }
+        return new Rope(build(text, 0, text.length()));
+    }
+
+    public Rope insert(int index, CharSequence text) {
+        checkIndex(index, length());
+        if (text == null || text.length() == 0) {
+            return this;
+        }
+        Node[] parts = split(root, index);
+        return new Rope(join(join(parts[0], build(text, 0, text.length())), parts[1]));
+    }
+
+    public Rope delete(int start, int end) {
+        checkRange(start, end, length());
+        if (start == end) {
+            return this;
+        }
+        Node[] tail = split(root, end);
+        Node[] head = split(tail[0], start);
+        return new Rope(join(head[0], tail[1]));
+    }
+
+    public Rope replace(int start, int end, CharSequence text) {
+        checkRange(start, end, length());
+        Node[] tail = split(root, end);
+        Node[] head = split(tail[0], start);
+        Node middle = text == null || text.length() == 0 ? EMPTY.root : build(text, 0, text.length());
+        return new Rope(join(join(head[0], middle), tail[1]));
+    }
+
+    @Override
+    public int length() {
+        return root.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length());
+        }
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (index < branch.left.length) {
+                node = branch.left;
+            } else {
+                index -= branch.left.length;
+                node = branch.right;
+            }
+        }
+        return ((Leaf) node).text.charAt(index);
+    }
+
+    /** Number of lines, one more than the number of line feeds; a trailing line feed starts an empty line. */
+    public int lineCount() {
+        return root.newlines + 1;
+    }
+
+    /** Offset of the first character of a 0-based line; {@code lineStart(lineCount())} is {@link #length()}. */
+    public int lineStart(int line) {
+        if (line < 0 || line > lineCount()) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of bounds for " + lineCount() + " lines");
+        }
+        if (line == 0) {
+            return 0;
+        }
+        if (line == lineCount()) {
+            return length();
+        }
+        // Find the line feed ending the previous line
+        int feeds = line;
+        int offset = 0;
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (feeds <= branch.left.newlines) {
+                node = branch.left;
+            } else {
+                feeds -= branch.left.newlines;
+                offset += branch.left.length;
+                node = branch.right;
+            }
+        }
+        String text = ((Leaf) node).text;
+        int index = -1;
+        while (feeds-- > 0) {
+            index = text.indexOf('\n', index + 1);
+        }
+        return offset + index + 1;
+    }
+
+    /** The 0-based line that the character at {@code offset}, or the end of the text, belongs to. */
+    public int lineOf(int offset) {
+        checkIndex(offset, length());
+        int line = 0;
+        Node node = root;
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            if (offset < branch.left.length) {
+                node = branch.left;
+            } else {
+                line += branch.left.newlines;
+                offset -= branch.left.length;
+                node = branch.right;
+            }
+        }
+        String text = ((Leaf) node).text;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    @Override
+    public Rope subSequence(int start, int end) {
+        checkRange(start, end, length());
+        if (start == 0 && end == length()) {
+            return this;
+        }
+        Node[] tail = split(root, end);
+        return new Rope(split(tail[0], start)[1]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length());
+        appendTo(root, sb);
+        return sb.toString();
+    }
+
+    /** Writes the text leaf by leaf, without building it as one string. */
+    public void writeTo(Writer out) throws IOException {
+        writeTo(root, out);
+    }
+
+    int height() {
+        return root.height;
+    }
+
+    private static void appendTo(Node node, StringBuilder sb) {
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            appendTo(branch.left, sb);
+            node = branch.right;
+        }
+        sb.append(((Leaf) node).text);
+    }
+
+    private static void writeTo(Node node, Writer out) throws IOException {
+        while (node instanceof Branch) {
+            Branch branch = (Branch) node;
+            writeTo(branch.left, out);
+            node = branch.right;
+        }
+        out.write(((Leaf) node).text);
+    }
+
+    private static Node build(CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length <= MAX_LEAF) {
+            return new Leaf(text.subSequence(start, end).toString());
+        }
+        int mid = start + length / 2;
+        return new Branch(build(text, start, mid), build(text, mid, end));
+    }
+
+    private static Node[] split(Node node, int index) {
+        if (index == 0) {
+            return new Node[]{EMPTY.root, node};
+        }
+        if (index == node.length) {
+            return new Node[]{node, EMPTY.root};
+        }
+        if (node instanceof Leaf) {
+            String text = ((Leaf) node).text;
+            return new Node[]{new Leaf(text.substring(0, index)), new Leaf(text.substring(index))};
+        }
+        Branch branch = (Branch) node;
+        if (index < branch.left.length) {
+            Node[] parts = split(branch.left, index);
+            return new Node[]{parts[0], join(parts[1], branch.right)};
+        }
+        if (index > branch.left.length) {
+            Node[] parts = split(branch.right, index - branch.left.length);
+            return new Node[]{join(branch.left, parts[0]), parts[1]};
+        }
+        return new Node[]{branch.left, branch.right};
+    }
+
+    private static Node join(Node left, Node right) {
+        if (left.length == 0) {
+            return right;
+        }
+        if (right.length == 0) {
+            return left;
+        }
+        if (left instanceof Leaf && right instanceof Leaf && left.length + right.length <= MAX_LEAF) {
+            return new Leaf(((Leaf) left).text + ((Leaf) right).text);
+        }
+        if (left.height > right.height + 1) {
+            Branch branch = (Branch) left;
+            return balance(branch.left, join(branch.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch branch = (Branch) right;
+            return balance(join(left, branch.left), branch.right);
+        }
+        return new Branch(left, right);
+    }
+
+    private static Node balance(Node left, Node right) {
+        if (left.height > right.height + 1) {
+            Branch l = (Branch) left;
+            if (l.left.height >= l.right.height) {
+                return new Branch(l.left, new Branch(l.right, right));
+            }
+            Branch lr = (Branch) l.right;
+            return new Branch(new Branch(l.left, lr.left), new Branch(lr.right, right));
+        }
+        if (right.height > left.height + 1) {
+            Branch r = (Branch) right;
+            if (r.right.height >= r.left.height) {
+                return new Branch(new Branch(left, r.left), r.right);
+            }
+            Branch rl = (Branch) r.left;
+            return new Branch(new Branch(left, rl.left), new Branch(rl.right, r.right));
+        }
+        return new Branch(left, right);
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+    }
+
+    private static void checkRange(int start, int end, int length) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + length);
+        }
+    }
+
+    private abstract static class Node {
+        final int length;
+        final int height;
+        final int newlines;
+
+        Node(int length, int height, int newlines) {
+            this.length = length;
+            this.height = height;
+            this.newlines = newlines;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        final String text;
+
+        Leaf(String text) {
+            super(text.length(), 0, countNewlines(text));
+            this.text = text;
+        }
+
+        private static int countNewlines(String text) {
+            int count = 0;
+            for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', i + 1)) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static final class Branch extends Node {
+        final Node left;
+        final Node right;
+
+        Branch(Node left, Node right) {
+            super(left.length + right.length, Math.max(left.height, right.height) + 1, left.newlines + right.newlines);
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.collab.docs.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-based diff using Myers' O((N+M)D) algorithm. Common leading and trailing lines are
+ * stripped first, which for edits made between two saves usually leaves only a few lines to
+ * compare. If more than {@code maxEdits} line insertions and deletions would be needed, the
+ * remaining middle is reported as one replaced block instead, which keeps time and memory bounded
+ * for unrelated texts.
+ */
+final class LineDiff {
+
+    private LineDiff() {
+    }
+
+    /** A block of lines {@code [fromStart, fromEnd)} of the old text replaced by {@code [toStart, toEnd)} of the new. */
+    static final class Hunk {
+        final int fromStart;
+        final int fromEnd;
+        final int toStart;
+        final int toEnd;
+
+        Hunk(int fromStart, int fromEnd, int toStart, int toEnd) {
+            this.fromStart = fromStart;
+            this.fromEnd = fromEnd;
+            this.toStart = toStart;
+            this.toEnd = toEnd;
+        }
+    }
+
+    /** Splits the text after every line feed; joining the lines gives back the text. */
+    static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = text.indexOf('\n'); i >= 0; i = text.indexOf('\n', start)) {
+            lines.add(text.substring(start, i + 1));
+            start = i + 1;
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    /** The changed blocks turning {@code from} into {@code to}, in order. */
+    static List<Hunk> diff(List<String> from, List<String> to, int maxEdits) {
+        // Compare lines as ints from here on
+        Map<String, Integer> ids = new HashMap<>();
+        int[] a = intern(from, ids);
+        int[] b = intern(to, ids);
+
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            suffix++;
+        }
+        int aEnd = a.length - suffix;
+        int bEnd = b.length - suffix;
+        List<Hunk> hunks = new ArrayList<>();
+        if (prefix == aEnd && prefix == bEnd) {
+            return hunks;
+        }
+        if (prefix == aEnd || prefix == bEnd) {
+            hunks.add(new Hunk(prefix, aEnd, prefix, bEnd));
+            return hunks;
+        }
+        boolean[][] changed = myers(Arrays.copyOfRange(a, prefix, aEnd), Arrays.copyOfRange(b, prefix, bEnd), maxEdits);
+        if (changed == null) {
+            hunks.add(new Hunk(prefix, aEnd, prefix, bEnd));
+            return hunks;
+        }
+        // Group runs of deleted and inserted lines between matching ones into hunks
+        boolean[] deleted = changed[0];
+        boolean[] inserted = changed[1];
+        int i = 0;
+        int j = 0;
+        while (i < deleted.length || j < inserted.length) {
+            if (i < deleted.length && j < inserted.length && !deleted[i] && !inserted[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int fromStart = i;
+            int toStart = j;
+            while (i < deleted.length && deleted[i]) {
+                i++;
+            }
+            while (j < inserted.length && inserted[j]) {
+                j++;
+            }
+            hunks.add(new Hunk(prefix + fromStart, prefix + i, prefix + toStart, prefix + j));
+        }
+        return hunks;
+    }
+
+    /**
+     * Marks the lines of {@code a} deleted and of {@code b} inserted by a shortest edit script, or
+     * returns {@code null} if it needs more than {@code maxEdits} edits.
+     */
+    private static boolean[][] myers(int[] a, int[] b, int maxEdits) {
+        int n = a.length;
+        int m = b.length;
+        int max = Math.min(n + m, maxEdits);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // trace.get(d) holds v[-d-1 .. d+1] as it was before step d, enough to walk back through it
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                        ? v[offset + k + 1]
+                        : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, n, m);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean[][] backtrack(List<int[]> trace, int n, int m) {
+        boolean[] deleted = new boolean[n];
+        boolean[] inserted = new boolean[m];
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            // v[k] is at index k + d + 1 of the saved slice
+            int previousK = k == -d || (k != d && v[k - 1 + d + 1] < v[k + 1 + d + 1]) ? k + 1 : k - 1;
+            int previousX = v[previousK + d + 1];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+            }
+            if (x == previousX) {
+                inserted[previousY] = true;
+            } else {
+                deleted[previousX] = true;
+            }
+            x = previousX;
+            y = previousY;
+        }
+        return new boolean[][]{deleted, inserted};
+    }
+
+    private static int[] intern(List<String> lines, Map<String, Integer> ids) {
+        int[] interned = new int[lines.size()];
+        for (int i = 0; i < interned.length; i++) {
+            interned[i] = ids.computeIfAbsent(lines.get(i), line -> ids.size());
+        }
+        return interned;
+    }
+}
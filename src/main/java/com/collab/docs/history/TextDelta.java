@@ -0,0 +1,98 @@
+package com.collab.docs.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Encodes how to build one text from another as a sequence of operations that either copy a
+ * range of characters of the source or insert literal text. Encoded layout: the source length as
+ * an int, then per operation a tag byte followed by
+ * <ul>
+ *   <li>{@link #COPY}: start and length in the source as ints;</li>
+ *   <li>{@link #INSERT}: the UTF-8 byte count as an int and the bytes.</li>
+ * </ul>
+ * Operations are computed from a {@link LineDiff}, so unchanged lines cost one copy each run
+ * rather than their text.
+ */
+final class TextDelta {
+    static final int MAX_EDITS = 2000;
+
+    private static final byte COPY = 1;
+    private static final byte INSERT = 2;
+
+    private TextDelta() {
+    }
+
+    /** The delta that turns {@code source} into {@code target}. */
+    static byte[] encode(String source, String target) {
+        List<String> sourceLines = LineDiff.lines(source);
+        List<String> targetLines = LineDiff.lines(target);
+        int[] offsets = new int[sourceLines.size() + 1];
+        for (int i = 0; i < sourceLines.size(); i++) {
+            offsets[i + 1] = offsets[i] + sourceLines.get(i).length();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(source.length());
+            int line = 0;
+            for (LineDiff.Hunk hunk : LineDiff.diff(sourceLines, targetLines, MAX_EDITS)) {
+                writeCopy(out, offsets[line], offsets[hunk.fromStart]);
+                if (hunk.toEnd > hunk.toStart) {
+                    byte[] text = String.join("", targetLines.subList(hunk.toStart, hunk.toEnd)).getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(INSERT);
+                    out.writeInt(text.length);
+                    out.write(text);
+                }
+                line = hunk.fromEnd;
+            }
+            writeCopy(out, offsets[line], source.length());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Applies a delta made by {@link #encode} from this {@code source}. */
+    static String apply(String source, byte[] delta) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta))) {
+            if (in.readInt() != source.length()) {
+                throw new IllegalStateException("Delta does not apply to a source of length " + source.length());
+            }
+            StringBuilder target = new StringBuilder(source.length());
+            int tag;
+            while ((tag = in.read()) >= 0) {
+                if (tag == COPY) {
+                    int start = in.readInt();
+                    target.append(source, start, start + in.readInt());
+                } else if (tag == INSERT) {
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    target.append(new String(text, StandardCharsets.UTF_8));
+                } else {
+                    throw new IllegalStateException("Unknown delta operation: " + tag);
+                }
+            }
+            return target.toString();
+        } catch (EOFException | IndexOutOfBoundsException ex) {
+            throw new IllegalStateException("Delta is truncated or corrupt", ex);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void writeCopy(DataOutputStream out, int start, int end) throws IOException {
+        if (end > start) {
+            out.writeByte(COPY);
+            out.writeInt(start);
+            out.writeInt(end - start);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.collab.docs.history;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionContent {
+    private Long documentId;
+    private Long version;
+    private String content;
+}
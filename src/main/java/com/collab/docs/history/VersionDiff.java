@@ -0,0 +1,32 @@
+package com.collab.docs.history;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** The changes turning one version of a document into another, as blocks of replaced lines. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionDiff {
+    private Long documentId;
+    private Long fromVersion;
+    private Long toVersion;
+    private List<Hunk> hunks;
+
+    /** Lines from {@code fromLine} (0-based) of the old version replaced by lines from {@code toLine} of the new. */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hunk {
+        private int fromLine;
+        private List<String> removed;
+        private int toLine;
+        private List<String> added;
+    }
+}
@@ -0,0 +1,168 @@
+package com.collab.docs.history;
+
+import com.collab.docs.model.DocumentVersion;
+import com.collab.docs.model.VersionSummary;
+import com.collab.docs.repository.DocumentVersionRepository;
+import com.collab.docs.service.ContentStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * History of document bodies with reverse-delta storage. Every write of a changed body adds a
+ * version holding it as a checkpoint in the {@link ContentStore}, which costs nothing extra since
+ * the document refers to the same blob. The version it supersedes is turned into a
+ * {@link TextDelta} from the new body back to its own, unless its number is a multiple of
+ * {@code app.documents.history.checkpoint-interval}; those stay checkpoints.
+ * <p>
+ * Reading version N therefore starts from the oldest checkpoint at or after N and applies at most
+ * {@code checkpoint-interval - 1} deltas backwards, however long the history is.
+ */
+@Service
+@RequiredArgsConstructor
+public class VersionHistoryService {
+    static final int MAX_PAGE_SIZE = 200;
+
+    private final DocumentVersionRepository versionRepository;
+    private final ContentStore contentStore;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.documents.history.checkpoint-interval:50}")
+    private int checkpointInterval;
+
+    private Counter versions;
+    private Counter deltas;
+
+    @PostConstruct
+    void initMetrics() {
+        versions = meterRegistry.counter("documents.history.versions");
+        deltas = meterRegistry.counter("documents.history.deltas");
+    }
+
+    /**
+     * Records a body just stored under {@code contentId} as the newest version of the document,
+     * unless it is the body of the newest version already. Runs in the transaction saving the
+     * document; {@code null} bodies are not recorded.
+     */
+    @Transactional
+    public void record(Long documentId, long revision, String modifiedBy, String contentId, String content) {
+        if (contentId == null) {
+            return;
+        }
+        DocumentVersion head = versionRepository.findTopByDocumentIdOrderByVersionDesc(documentId).orElse(null);
+        if (head != null && contentId.equals(head.getContentId())) {
+            return;
+        }
+        versionRepository.save(DocumentVersion.builder()
+                .documentId(documentId)
+                .version(head != null ? head.getVersion() + 1 : 1L)
+                .revision(revision)
+                .contentId(contentId)
+                .length(content.length())
+                .modifiedBy(modifiedBy)
+                .build());
+        versions.increment();
+
+        if (head != null && head.getContentId() != null && head.getVersion() % checkpointInterval != 0) {
+            String previous = contentStore.get(head.getContentId());
+            byte[] delta = TextDelta.encode(content, previous);
+            // A delta larger than the body it rebuilds saves nothing; keep the checkpoint then
+            if (delta.length < previous.length()) {
+                String replaced = head.getContentId();
+                head.setContentId(null);
+                head.setDelta(delta);
+                versionRepository.save(head);
+                contentStore.release(replaced);
+                deltas.increment();
+            }
+        }
+    }
+
+    /** Records the first version of a new document whose body was stored without reading it, e.g. on import. */
+    @Transactional
+    public void recordFirst(Long documentId, String contentId, int length) {
+        versionRepository.save(DocumentVersion.builder()
+                .documentId(documentId)
+                .version(1L)
+                .revision(0L)
+                .contentId(contentId)
+                .length(length)
+                .build());
+        versions.increment();
+    }
+
+    /** Versions older than {@code before} ({@code null} for the newest), newest first. */
+    @Transactional(readOnly = true)
+    public List<VersionSummary> getVersions(Long documentId, Long before, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return versionRepository.findSummaries(documentId, before != null ? before : Long.MAX_VALUE, PageRequest.of(0, size));
+    }
+
+    @Transactional(readOnly = true)
+    public VersionContent getVersion(Long documentId, long version) {
+        return VersionContent.builder()
+                .documentId(documentId)
+                .version(version)
+                .content(reconstruct(documentId, version))
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public VersionDiff diff(Long documentId, long fromVersion, long toVersion) {
+        List<String> from = LineDiff.lines(reconstruct(documentId, fromVersion));
+        List<String> to = LineDiff.lines(reconstruct(documentId, toVersion));
+        List<VersionDiff.Hunk> hunks = new ArrayList<>();
+        for (LineDiff.Hunk hunk : LineDiff.diff(from, to, TextDelta.MAX_EDITS)) {
+            hunks.add(VersionDiff.Hunk.builder()
+                    .fromLine(hunk.fromStart)
+                    .removed(new ArrayList<>(from.subList(hunk.fromStart, hunk.fromEnd)))
+                    .toLine(hunk.toStart)
+                    .added(new ArrayList<>(to.subList(hunk.toStart, hunk.toEnd)))
+                    .build());
+        }
+        return VersionDiff.builder()
+                .documentId(documentId)
+                .fromVersion(fromVersion)
+                .toVersion(toVersion)
+                .hunks(hunks)
+                .build();
+    }
+
+    /** Deletes the history of a deleted document and releases its checkpoint bodies. */
+    @Transactional
+    public void deleteHistory(Long documentId) {
+        List<String> contentIds = versionRepository.findCheckpointContentIds(documentId);
+        versionRepository.deleteByDocumentId(documentId);
+        contentIds.stream().distinct().forEach(contentStore::release);
+    }
+
+    private String reconstruct(Long documentId, long version) {
+        DocumentVersion checkpoint = versionRepository.findCheckpointFrom(documentId, version)
+                .orElseThrow(() -> notFound(documentId, version));
+        String content = contentStore.get(checkpoint.getContentId());
+        if (checkpoint.getVersion() == version) {
+            return content;
+        }
+        List<DocumentVersion> chain = versionRepository.findRange(documentId, version, checkpoint.getVersion() - 1);
+        if (chain.size() != checkpoint.getVersion() - version) {
+            throw notFound(documentId, version);
+        }
+        for (DocumentVersion delta : chain) {
+            content = TextDelta.apply(content, delta.getDelta());
+        }
+        return content;
+    }
+
+    private static EntityNotFoundException notFound(Long documentId, long version) {
+        return new EntityNotFoundException("Version " + version + " of document " + documentId + " not found");
+    }
+}
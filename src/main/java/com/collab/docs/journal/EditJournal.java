@@ -0,0 +1,454 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.websocket.DocumentEditMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of committed edit operations, written to fixed-size memory-mapped segment files
+ * so that edits acknowledged to clients survive a crash between write-behind flushes.
+ * <p>
+ * Appends only copy bytes into the mapping. A single flusher thread forces the current segment to
+ * disk and, because appends keep arriving while it does so, each force covers a whole group of
+ * them. With {@code app.journal.sync=group} callers wait in {@link #awaitDurable} until their
+ * records are forced; with {@code async} they return immediately and may lose the last few
+ * milliseconds of edits on a power failure.
+ * <p>
+ * Once a document has been written back to the database at some revision (a snapshot, see
+ * {@link #markSnapshot}), its journaled operations up to that revision are obsolete. Full segments
+ * containing only obsolete operations are removed by {@link #compact}.
+ */
+@Component
+@Slf4j
+public class EditJournal {
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    @Value("${app.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.journal.directory:./data/journal}")
+    private String directory;
+
+    @Value("${app.journal.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${app.journal.sync:group}")
+    private String syncMode;
+
+    private final Object lock = new Object();
+    private Path journalDirectory;
+    private JournalSegment current;
+    private final List<SealedSegment> sealed = new ArrayList<>();
+    private final Map<Long, Long> snapshotRevisions = new HashMap<>();
+    private final Map<Long, Backlog> backlogs = new HashMap<>();
+    private long writtenSequence;
+    private volatile long durableSequence;
+    private volatile boolean running;
+    private Thread flusher;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            log.info("Edit journal disabled");
+            return;
+        }
+        journalDirectory = Paths.get(directory);
+        Files.createDirectories(journalDirectory);
+        List<Path> segments = listSegments();
+        if (segments.isEmpty()) {
+            current = openSegment(0, segmentSize());
+        } else {
+            for (Path path : segments.subList(0, segments.size() - 1)) {
+                try (JournalSegment segment = JournalSegment.open(path, indexOf(path), 0)) {
+                    sealed.add(new SealedSegment(path, segment.getDocumentRevisions()));
+                }
+            }
+            Path last = segments.get(segments.size() - 1);
+            current = JournalSegment.open(last, indexOf(last), segmentSize());
+        }
+        log.info("Edit journal opened in {} at segment {} offset {} ({} sync)",
+                journalDirectory, current.getIndex(), current.getPosition(), syncMode);
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "edit-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the operations committed by one edit and returns the sequence number to pass to
+     * {@link #awaitDurable}. Callers append while holding the document's buffer lock, so the
+     * records of one document are journaled in revision order.
+     * <p>
+     * The records of one call go into one segment: if they do not fit into the current one, the
+     * journal rolls first. Either all of them are appended or, if rolling fails, none.
+     *
+     * @throws UncheckedIOException if a new segment is needed and cannot be opened
+     */
+    public long append(long documentId, List<DocumentEditMessage> committed) {
+        if (!enabled || committed.isEmpty()) {
+            return 0;
+        }
+        List<byte[]> payloads = new ArrayList<>(committed.size());
+        int size = 0;
+        for (DocumentEditMessage operation : committed) {
+            byte[] payload = new JournalRecord(documentId, operation).encode();
+            payloads.add(payload);
+            size += JournalSegment.RECORD_HEADER_SIZE + payload.length;
+        }
+        synchronized (lock) {
+            if (current.getPosition() + size > current.capacity()) {
+                roll(size);
+            }
+            Backlog backlog = backlogs.computeIfAbsent(documentId, id -> new Backlog());
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] payload = payloads.get(i);
+                long revision = committed.get(i).getRevision();
+                current.append(documentId, revision, payload);
+                backlog.add(revision, payload.length);
+                writtenSequence++;
+            }
+            lock.notifyAll();
+            return writtenSequence;
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number has been forced to disk. Returns
+     * immediately in {@code async} mode.
+     */
+    public void awaitDurable(long sequence) {
+        if (!enabled || !"group".equalsIgnoreCase(syncMode)) {
+            return;
+        }
+        synchronized (lock) {
+            while (durableSequence < sequence && running) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sequence number up to which records are on disk. Without group commit every record counts
+     * as durable.
+     */
+    public long getDurableSequence() {
+        if (!enabled || !"group".equalsIgnoreCase(syncMode)) {
+            return Long.MAX_VALUE;
+        }
+        return durableSequence;
+    }
+
+    /**
+     * Records that the document is persisted up to {@code revision}, making its older journal records
+     * obsolete. Operations journaled after that revision stay in the document's backlog.
+     */
+    public void markSnapshot(long documentId, long revision) {
+        synchronized (lock) {
+            snapshotRevisions.merge(documentId, revision, Math::max);
+            Backlog backlog = backlogs.get(documentId);
+            if (backlog != null && backlog.removeUpTo(revision)) {
+                backlogs.remove(documentId);
+            }
+        }
+    }
+
+    /** Makes all records of a deleted document obsolete. */
+    public void forget(long documentId) {
+        markSnapshot(documentId, Long.MAX_VALUE);
+    }
+
+    /**
+     * Documents with at least {@code maxOperations} operations or {@code maxBytes} of records
+     * journaled since their last snapshot.
+     */
+    public List<Long> getDocumentsOverBacklog(int maxOperations, long maxBytes) {
+        List<Long> documentIds = new ArrayList<>();
+        synchronized (lock) {
+            backlogs.forEach((documentId, backlog) -> {
+                if (backlog.operations() >= maxOperations || backlog.bytes >= maxBytes) {
+                    documentIds.add(documentId);
+                }
+            });
+        }
+        return documentIds;
+    }
+
+    public int getSegmentCount() {
+        synchronized (lock) {
+            return enabled ? sealed.size() + 1 : 0;
+        }
+    }
+
+    /**
+     * Deletes full segments whose records are all covered by snapshots, or moves them to
+     * {@code archiveDirectory} if it is not {@code null}. Returns the number of segments removed.
+     */
+    public int compact(Path archiveDirectory) {
+        if (!enabled) {
+            return 0;
+        }
+        List<SealedSegment> obsolete = new ArrayList<>();
+        synchronized (lock) {
+            for (Iterator<SealedSegment> it = sealed.iterator(); it.hasNext(); ) {
+                SealedSegment segment = it.next();
+                if (segment.isCoveredBy(snapshotRevisions)) {
+                    obsolete.add(segment);
+                    it.remove();
+                }
+            }
+            // Snapshot revisions only matter for documents that still have records
+            Set<Long> referenced = new HashSet<>(current.getDocumentRevisions().keySet());
+            sealed.forEach(segment -> referenced.addAll(segment.documentRevisions.keySet()));
+            snapshotRevisions.keySet().retainAll(referenced);
+        }
+
+        int removed = 0;
+        for (SealedSegment segment : obsolete) {
+            try {
+                if (archiveDirectory != null) {
+                    Files.createDirectories(archiveDirectory);
+                    Files.move(segment.path, archiveDirectory.resolve(segment.path.getFileName()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.deleteIfExists(segment.path);
+                }
+                removed++;
+            } catch (IOException ex) {
+                log.warn("Failed to remove obsolete journal segment {}", segment.path, ex);
+                synchronized (lock) {
+                    sealed.add(0, segment);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Reads every valid record in segment order. Meant for recovery at startup; records of one
+     * document appear in revision order.
+     */
+    public List<JournalRecord> readAll() throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        if (!enabled) {
+            return records;
+        }
+        for (Path path : listSegments()) {
+            synchronized (lock) {
+                if (path.equals(current.getPath())) {
+                    current.scan(payload -> records.add(JournalRecord.decode(payload)));
+                    continue;
+                }
+            }
+            try (JournalSegment segment = JournalSegment.open(path, indexOf(path), 0)) {
+                segment.scan(payload -> records.add(JournalRecord.decode(payload)));
+            }
+        }
+        return records;
+    }
+
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        if (!enabled || flusher == null) {
+            return;
+        }
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        flusher.join();
+        synchronized (lock) {
+            current.force();
+            durableSequence = writtenSequence;
+            current.close();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            JournalSegment segment;
+            long target;
+            synchronized (lock) {
+                while (running && durableSequence == writtenSequence) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                segment = current;
+                target = writtenSequence;
+            }
+
+            // Force outside the lock so that appends continue and form the next group
+            try {
+                segment.force();
+            } catch (RuntimeException ex) {
+                log.error("Failed to force journal segment {}; retrying", segment.getPath(), ex);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                continue;
+            }
+
+            synchronized (lock) {
+                // If the segment was rolled meanwhile, records up to target may sit in the new
+                // one; the next iteration forces it
+                if (segment == current) {
+                    durableSequence = Math.max(durableSequence, target);
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a new segment with room for at least {@code recordsSize} bytes. The new segment is
+     * opened and the old one forced before anything changes, so a failure leaves the old segment
+     * current and a later append simply tries again.
+     */
+    private void roll(int recordsSize) {
+        JournalSegment next;
+        try {
+            next = openSegment(current.getIndex() + 1, Math.max(segmentSize(), recordsSize));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to roll edit journal", ex);
+        }
+        try {
+            current.force();
+        } catch (RuntimeException ex) {
+            closeQuietly(next);
+            throw ex;
+        }
+        JournalSegment previous = current;
+        sealed.add(new SealedSegment(previous.getPath(), previous.getDocumentRevisions()));
+        current = next;
+        closeQuietly(previous);
+        log.debug("Rolled edit journal to segment {}", current.getIndex());
+    }
+
+    private static void closeQuietly(JournalSegment segment) {
+        try {
+            segment.close();
+        } catch (IOException ex) {
+            log.warn("Failed to close journal segment {}", segment.getPath(), ex);
+        }
+    }
+
+    private JournalSegment openSegment(long index, int size) throws IOException {
+        return JournalSegment.open(journalDirectory.resolve(String.format("%016d%s", index, SEGMENT_SUFFIX)), index, size);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long indexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private int segmentSize() {
+        return (int) Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+    }
+
+    /** A full segment, described by the highest revision it holds per document. */
+    private static final class SealedSegment {
+        final Path path;
+        final Map<Long, Long> documentRevisions;
+
+        SealedSegment(Path path, Map<Long, Long> documentRevisions) {
+            this.path = path;
+            this.documentRevisions = documentRevisions;
+        }
+
+        boolean isCoveredBy(Map<Long, Long> snapshotRevisions) {
+            for (Map.Entry<Long, Long> entry : documentRevisions.entrySet()) {
+                if (snapshotRevisions.getOrDefault(entry.getKey(), -1L) < entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Records journaled for a document since its last snapshot: revision and size of each, oldest
+     * first, in a queue of two parallel arrays.
+     */
+    private static final class Backlog {
+        long[] revisions = new long[16];
+        int[] sizes = new int[16];
+        int head;
+        int tail;
+        long bytes;
+
+        int operations() {
+            return tail - head;
+        }
+
+        void add(long revision, int size) {
+            if (tail == revisions.length) {
+                int count = operations();
+                int capacity = count * 2 > revisions.length ? revisions.length * 2 : revisions.length;
+                long[] movedRevisions = new long[capacity];
+                int[] movedSizes = new int[capacity];
+                System.arraycopy(revisions, head, movedRevisions, 0, count);
+                System.arraycopy(sizes, head, movedSizes, 0, count);
+                revisions = movedRevisions;
+                sizes = movedSizes;
+                head = 0;
+                tail = count;
+            }
+            revisions[tail] = revision;
+            sizes[tail++] = size;
+            bytes += size;
+        }
+
+        /** Drops the records up to {@code revision}; returns {@code true} if none are left. */
+        boolean removeUpTo(long revision) {
+            // Records of one document are journaled in revision order
+            while (head < tail && revisions[head] <= revision) {
+                bytes -= sizes[head++];
+            }
+            return head == tail;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.service.DocumentService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Keeps the edit journal bounded. Documents whose journal backlog crosses
+ * {@code app.journal.compaction.max-operations} or {@code max-bytes} are snapshotted, i.e. written
+ * back to the database right away, and segments that only hold operations older than the snapshots
+ * are deleted, or archived if {@code archive-directory} is set.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class JournalCompactor {
+    private final EditJournal journal;
+    private final DocumentService documentService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.journal.compaction.max-operations:10000}")
+    private int maxOperations;
+
+    @Value("${app.journal.compaction.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${app.journal.compaction.archive-directory:}")
+    private String archiveDirectory;
+
+    private Counter snapshotsTaken;
+    private Counter segmentsRemoved;
+
+    @PostConstruct
+    void initMetrics() {
+        snapshotsTaken = meterRegistry.counter("documents.journal.compaction.snapshots");
+        segmentsRemoved = meterRegistry.counter("documents.journal.compaction.segments");
+        Gauge.builder("documents.journal.segments", journal, EditJournal::getSegmentCount)
+                .description("Journal segment files on disk")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.journal.compaction.interval-ms:10000}")
+    public void compact() {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        List<Long> overgrown = journal.getDocumentsOverBacklog(maxOperations, maxBytes);
+        if (!overgrown.isEmpty()) {
+            log.debug("Snapshotting documents {} with large journal backlog", overgrown);
+            snapshotsTaken.increment(documentService.snapshotDocuments(overgrown));
+        }
+
+        Path archive = archiveDirectory.isEmpty() ? null : Paths.get(archiveDirectory);
+        int removed = journal.compact(archive);
+        if (removed > 0) {
+            segmentsRemoved.increment(removed);
+            log.info("{} {} obsolete journal segments", archive != null ? "Archived" : "Deleted", removed);
+        }
+    }
+}
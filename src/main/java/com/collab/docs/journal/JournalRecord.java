@@ -0,0 +1,160 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.websocket.DocumentEditMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One committed operation in the edit journal: the document it belongs to and the operation as it
+ * was broadcast, including its revision.
+ * <p>
+ * Binary layout: document id, revision, operation code, a bit set of the optional fields that are
+ * present, then those fields in bit order. Strings are a length followed by UTF-8 bytes.
+ */
+public final class JournalRecord {
+    private static final byte INSERT = 0;
+    private static final byte DELETE = 1;
+
+    private static final int START = 1;
+    private static final int END = 1 << 1;
+    private static final int SITE = 1 << 2;
+    private static final int ELEMENT = 1 << 3;
+    private static final int REFERENCE = 1 << 4;
+    private static final int LENGTH = 1 << 5;
+    private static final int CONTENT = 1 << 6;
+    private static final int USERNAME = 1 << 7;
+
+    private final long documentId;
+    private final DocumentEditMessage operation;
+
+    public JournalRecord(long documentId, DocumentEditMessage operation) {
+        this.documentId = documentId;
+        this.operation = operation;
+    }
+
+    public long getDocumentId() {
+        return documentId;
+    }
+
+    public long getRevision() {
+        return operation.getRevision();
+    }
+
+    public DocumentEditMessage getOperation() {
+        return operation;
+    }
+
+    byte[] encode() {
+        byte[] content = utf8(operation.getContent());
+        byte[] username = utf8(operation.getUsername());
+        int flags = 0;
+        int size = 8 + 8 + 1 + 1;
+        if (operation.getStartPosition() != null) {
+            flags |= START;
+            size += 4;
+        }
+        if (operation.getEndPosition() != null) {
+            flags |= END;
+            size += 4;
+        }
+        if (operation.getSiteId() != null) {
+            flags |= SITE;
+            size += 4;
+        }
+        if (operation.getElementId() != null) {
+            flags |= ELEMENT;
+            size += 8;
+        }
+        if (operation.getReferenceId() != null) {
+            flags |= REFERENCE;
+            size += 8;
+        }
+        if (operation.getLength() != null) {
+            flags |= LENGTH;
+            size += 4;
+        }
+        if (content != null) {
+            flags |= CONTENT;
+            size += 4 + content.length;
+        }
+        if (username != null) {
+            flags |= USERNAME;
+            size += 4 + username.length;
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putLong(documentId);
+        out.putLong(operation.getRevision());
+        out.put("INSERT".equals(operation.getOperation()) ? INSERT : DELETE);
+        out.put((byte) flags);
+        if ((flags & START) != 0) {
+            out.putInt(operation.getStartPosition());
+        }
+        if ((flags & END) != 0) {
+            out.putInt(operation.getEndPosition());
+        }
+        if ((flags & SITE) != 0) {
+            out.putInt(operation.getSiteId());
+        }
+        if ((flags & ELEMENT) != 0) {
+            out.putLong(operation.getElementId());
+        }
+        if ((flags & REFERENCE) != 0) {
+            out.putLong(operation.getReferenceId());
+        }
+        if ((flags & LENGTH) != 0) {
+            out.putInt(operation.getLength());
+        }
+        if (content != null) {
+            out.putInt(content.length).put(content);
+        }
+        if (username != null) {
+            out.putInt(username.length).put(username);
+        }
+        return out.array();
+    }
+
+    static JournalRecord decode(ByteBuffer in) {
+        long documentId = in.getLong();
+        DocumentEditMessage operation = new DocumentEditMessage();
+        operation.setRevision(in.getLong());
+        operation.setOperation(in.get() == INSERT ? "INSERT" : "DELETE");
+        int flags = in.get() & 0xFF;
+        if ((flags & START) != 0) {
+            operation.setStartPosition(in.getInt());
+        }
+        if ((flags & END) != 0) {
+            operation.setEndPosition(in.getInt());
+        }
+        if ((flags & SITE) != 0) {
+            operation.setSiteId(in.getInt());
+        }
+        if ((flags & ELEMENT) != 0) {
+            operation.setElementId(in.getLong());
+        }
+        if ((flags & REFERENCE) != 0) {
+            operation.setReferenceId(in.getLong());
+        }
+        if ((flags & LENGTH) != 0) {
+            operation.setLength(in.getInt());
+        }
+        if ((flags & CONTENT) != 0) {
+            operation.setContent(readUtf8(in));
+        }
+        if ((flags & USERNAME) != 0) {
+            operation.setUsername(readUtf8(in));
+        }
+        return new JournalRecord(documentId, operation);
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static String readUtf8(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,78 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.editing.DocumentBuffer;
+import com.collab.docs.service.DocumentBufferService;
+import com.collab.docs.service.DocumentService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rebuilds documents at startup from their last persisted snapshot (content and revision in the
+ * database) plus the journaled operations committed after it. Recovered documents are marked dirty
+ * so the next write-behind flush persists them. Runs before the web server accepts connections.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class JournalRecovery {
+    private final EditJournal journal;
+    private final DocumentBufferService bufferService;
+    private final DocumentService documentService;
+
+    @PostConstruct
+    void recover() throws IOException {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        Map<Long, Integer> replayed = new LinkedHashMap<>();
+        Set<Long> seen = new HashSet<>();
+        Set<Long> skipped = new HashSet<>();
+        List<JournalRecord> records = journal.readAll();
+        for (JournalRecord record : records) {
+            Long documentId = record.getDocumentId();
+            if (skipped.contains(documentId)) {
+                continue;
+            }
+            try {
+                DocumentBuffer buffer = bufferService.getBuffer(documentId);
+                if (seen.add(documentId)) {
+                    // The database revision is the snapshot that earlier records are folded into
+                    journal.markSnapshot(documentId, buffer.getRevision());
+                }
+                if (record.getRevision() > buffer.getRevision()) {
+                    buffer.replay(record.getOperation());
+                    replayed.merge(documentId, 1, Integer::sum);
+                }
+            } catch (EntityNotFoundException ex) {
+                // Deleted after the operations were journaled
+                journal.forget(documentId);
+                skipped.add(documentId);
+            } catch (RuntimeException ex) {
+                log.error("Stopped replaying document {} at revision {}", documentId, record.getRevision(), ex);
+                skipped.add(documentId);
+            }
+        }
+
+        int documents = 0;
+        int operations = 0;
+        for (Map.Entry<Long, Integer> entry : replayed.entrySet()) {
+            if (entry.getValue() > 0) {
+                documentService.markDirty(entry.getKey());
+                documents++;
+                operations += entry.getValue();
+            }
+        }
+        log.info("Journal recovery read {} records and replayed {} operations into {} documents",
+                records.size(), operations, documents);
+    }
+}
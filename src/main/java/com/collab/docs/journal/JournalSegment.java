@@ -0,0 +1,140 @@
+package com.collab.docs.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * A preallocated, memory-mapped journal file. Records are laid out back to back as
+ * {@code [int payload length][int CRC32C of payload][payload]}; a zero length marks the end of
+ * the written part, and a record whose checksum does not match is treated as a torn write.
+ * <p>
+ * Not thread-safe; {@link EditJournal} serializes access.
+ */
+final class JournalSegment implements Closeable {
+    static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path path;
+    private final long index;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    /** Highest revision journaled in this segment per document, to tell when the segment is obsolete. */
+    private final Map<Long, Long> documentRevisions = new HashMap<>();
+    private int position;
+
+    private JournalSegment(Path path, long index, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.index = index;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Opens or creates the segment file, growing it to at least {@code size} bytes, and positions
+     * the segment after its last valid record.
+     */
+    static JournalSegment open(Path path, long index, int size) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            if (file.length() < size) {
+                file.setLength(size);
+            }
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            JournalSegment segment = new JournalSegment(path, index, channel, buffer);
+            // A payload starts with the document id and revision, see JournalRecord
+            segment.position = segment.scan(payload -> segment.track(payload.getLong(0), payload.getLong(8)));
+            return segment;
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    int capacity() {
+        return buffer.capacity();
+    }
+
+    Map<Long, Long> getDocumentRevisions() {
+        return documentRevisions;
+    }
+
+    /**
+     * Copies the record into the mapped file. Returns {@code false}, writing nothing, if the
+     * segment has no room left for it.
+     */
+    boolean append(long documentId, long revision, byte[] payload) {
+        int end = position + RECORD_HEADER_SIZE + payload.length;
+        if (end > buffer.capacity()) {
+            return false;
+        }
+        buffer.put(position + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(position + 4, checksum(ByteBuffer.wrap(payload)));
+        // Length last: until it is written the record reads as the end of the segment
+        buffer.putInt(position, payload.length);
+        position = end;
+        track(documentId, revision);
+        return true;
+    }
+
+    /** Writes modified pages of the mapping to the storage device. */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Passes the payload of every valid record, in order, to the consumer and returns the offset
+     * just past the last one.
+     */
+    int scan(Consumer<ByteBuffer> consumer) {
+        int offset = 0;
+        while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.slice(offset + RECORD_HEADER_SIZE, length);
+            if (checksum(payload.duplicate()) != buffer.getInt(offset + 4)) {
+                break;
+            }
+            consumer.accept(payload);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private void track(long documentId, long revision) {
+        documentRevisions.merge(documentId, revision, Math::max);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
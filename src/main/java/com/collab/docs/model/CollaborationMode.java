@@ -0,0 +1,11 @@
+package com.collab.docs.model;
+
+/**
+ * How concurrent edits to a document are reconciled.
+ */
+public enum CollaborationMode {
+    /** Position-based edits transformed against a central per-document revision. */
+    OT,
+    /** Identifier-based sequence CRDT; operations commute and need no central transform step. */
+    CRDT
+}
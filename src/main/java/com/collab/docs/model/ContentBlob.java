@@ -0,0 +1,46 @@
+package com.collab.docs.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A document body stored once under the SHA-256 of its text. Blobs are immutable; documents with
+ * equal content share one. New bodies are kept in {@link #data}, encoded with a format header
+ * that says whether they are compressed; blobs written before that have their text in
+ * {@link #body} instead.
+ */
+@Entity
+@Table(name = "content_blobs")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentBlob {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    /** Plain text of blobs stored before {@link #data} existed; {@code null} otherwise. */
+    @Column(columnDefinition = "TEXT")
+    private String body;
+
+    @Column(columnDefinition = "BYTEA")
+    private byte[] data;
+
+    /** Length of the body in characters. */
+    @Column(nullable = false)
+    private Integer length;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
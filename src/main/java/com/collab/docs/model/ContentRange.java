@@ -0,0 +1,22 @@
+package com.collab.docs.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+/** Part of a document's content, with enough of the whole to page through it. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentRange {
+    private Long documentId;
+    private Long revision;
+    private int offset; // first character returned
+    private int end; // offset after the last character returned
+    private int firstLine; // 0-based line that offset falls on
+    private int length; // characters in the whole document
+    private int lineCount; // lines in the whole document
+    private String content;
+}
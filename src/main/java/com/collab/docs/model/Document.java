@@ -1,5 +1,6 @@
 package com.collab.docs.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -11,9 +12,10 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = @Index(name = "idx_documents_owner_last_modified",
+        columnList = "owner_id, last_modified, id"))
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Document {
@@ -24,9 +26,18 @@ public class Document {
     @Column(nullable = false)
     private String title;
 
-    @Column(columnDefinition = "TEXT")
+    /**
+     * The body, read from the {@link ContentBlob} named by {@link #contentId} only when a caller
+     * asks for the content; {@code null} on documents loaded for their metadata.
+     */
+    @Transient
     private String content;
 
+    /** Hash of the persisted body in {@code content_blobs}. */
+    @JsonIgnore
+    @Column(name = "content_id", length = 64)
+    private String contentId;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
@@ -45,9 +56,27 @@ public class Document {
     @Column(name = "last_modified")
     private LocalDateTime lastModified;
 
+    @Column(name = "last_modified_by")
+    private String lastModifiedBy;
+
     @Version
     private Long version;
 
+    /** Number of edit operations committed to this document; the base for operational transformation. */
+    @Column(nullable = false)
+    @Builder.Default
+    private Long revision = 0L;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "collaboration_mode", nullable = false)
+    @Builder.Default
+    private CollaborationMode collaborationMode = CollaborationMode.OT;
+
+    /** Run layout of a CRDT document at {@link #revision}, so element ids survive a restart. */
+    @JsonIgnore
+    @Column(name = "crdt_state", columnDefinition = "TEXT")
+    private String crdtState;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -11,7 +11,10 @@ import lombok.Builder;
 @Builder
 public class DocumentContent {
     private String content;
-    private Integer version;
+    private Long version;
     private String lastModifiedBy;
     private Long lastModifiedAt;
+    private CollaborationMode collaborationMode;
+    private Integer siteId; // CRDT mode: site assigned to the joining client
+    private String elements; // CRDT mode: run layout, see CrdtDocumentBuffer#join
 }
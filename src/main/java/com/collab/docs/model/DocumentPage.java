@@ -0,0 +1,21 @@
+package com.collab.docs.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a document listing, most recently modified first. {@code nextCursor} is passed back
+ * to fetch the following page and is {@code null} on the last one.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentPage {
+    private List<DocumentSummary> documents;
+    private String nextCursor;
+}
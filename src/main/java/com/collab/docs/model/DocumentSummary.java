@@ -0,0 +1,21 @@
+package com.collab.docs.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** Document metadata for list views, selected without the content columns. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentSummary {
+    private Long id;
+    private String title;
+    private String ownerUsername;
+    private LocalDateTime lastModified;
+    private Long version;
+}
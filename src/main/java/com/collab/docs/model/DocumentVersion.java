@@ -0,0 +1,62 @@
+package com.collab.docs.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One saved state of a document. A version is either a checkpoint, whose full body is the
+ * {@link ContentBlob} named by {@link #contentId}, or a reverse delta that turns the body of the
+ * next version into this one. The newest version of a document is always a checkpoint.
+ */
+@Entity
+@Table(name = "document_versions",
+        uniqueConstraints = @UniqueConstraint(name = "uk_document_versions_version", columnNames = {"document_id", "version"}),
+        indexes = @Index(name = "idx_document_versions_content", columnList = "content_id"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentVersion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    /** 1 for the first saved state of the document, counting up by one per save that changed the body. */
+    @Column(nullable = false)
+    private Long version;
+
+    /** The document's edit revision when this state was saved. */
+    @Column(nullable = false)
+    private Long revision;
+
+    /** Hash of the full body if this version is a checkpoint; {@code null} for deltas. */
+    @Column(name = "content_id", length = 64)
+    private String contentId;
+
+    /** Reverse delta from the next version's body; see {@link com.collab.docs.history.VersionHistoryService}. */
+    @Column(columnDefinition = "BYTEA")
+    private byte[] delta;
+
+    /** Length of the body in characters. */
+    @Column(nullable = false)
+    private Integer length;
+
+    @Column(name = "modified_by")
+    private String modifiedBy;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,21 @@
+package com.collab.docs.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/** A version in a document's history, without its body. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionSummary {
+    private Long version;
+    private Long revision;
+    private Integer length;
+    private String modifiedBy;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,34 @@
+package com.collab.docs.repository;
+
+import com.collab.docs.model.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    /** The stored columns of a blob, without loading it as an entity. */
+    @Query("SELECT b.body AS body, b.data AS data FROM ContentBlob b WHERE b.hash = :hash")
+    Optional<StoredBody> findStoredBodyByHash(@Param("hash") String hash);
+
+    /**
+     * Deletes the blob unless a document or a checkpoint in a document's history still refers to
+     * it; returns the number of rows deleted.
+     */
+    @Modifying
+    @Query("DELETE FROM ContentBlob b WHERE b.hash = :hash " +
+           "AND NOT EXISTS (SELECT d FROM Document d WHERE d.contentId = :hash) " +
+           "AND NOT EXISTS (SELECT v FROM DocumentVersion v WHERE v.contentId = :hash)")
+    int deleteIfUnreferenced(@Param("hash") String hash);
+
+    interface StoredBody {
+        String getBody();
+
+        byte[] getData();
+    }
+}
@@ -1,6 +1,7 @@
 package com.collab.docs.repository;
 
 import com.collab.docs.model.Document;
+import com.collab.docs.model.DocumentSummary;
 import com.collab.docs.model.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -9,11 +10,15 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
 
     @Query("SELECT d FROM Document d WHERE d.owner = :owner OR " +
-           "EXISTS (SELECT c FROM d.collaborators c WHERE c.userId = :userId) " +
+           "EXISTS (SELECT c FROM d.collaborators c WHERE c.id = :userId) " +
            "ORDER BY d.lastModified DESC")
     Page<Document> findByOwnerOrCollaboratorsUserIdOrderByLastModifiedDesc(
             @Param("owner") User owner,
@@ -22,9 +27,56 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
 
     @Query("SELECT CASE WHEN COUNT(d) > 0 THEN true ELSE false END FROM Document d " +
            "WHERE d.id = :documentId AND (d.owner = :user OR " +
-           "EXISTS (SELECT c FROM d.collaborators c WHERE c.userId = :userId))")
+           "EXISTS (SELECT c FROM d.collaborators c WHERE c.id = :userId))")
     boolean existsByIdAndOwnerOrCollaborator(
             @Param("documentId") Long documentId,
             @Param("user") User user,
             @Param("userId") Long userId);
+
+    /**
+     * First page of the documents a user owns or collaborates on, newest first. Selects summaries
+     * only, so the content columns are never read; the {@code pageable} only limits the rows.
+     */
+    @Query("SELECT new com.collab.docs.model.DocumentSummary(d.id, d.title, o.username, d.lastModified, d.version) " +
+           "FROM Document d JOIN d.owner o " +
+           "WHERE (o.id = :userId OR EXISTS (SELECT c FROM d.collaborators c WHERE c.id = :userId)) " +
+           "ORDER BY d.lastModified DESC, d.id DESC")
+    List<DocumentSummary> findAccessibleDocuments(@Param("userId") Long userId, Pageable pageable);
+
+    /** Following pages: the rows after the keyset {@code (lastModified, id)} of the previous page's last row. */
+    @Query("SELECT new com.collab.docs.model.DocumentSummary(d.id, d.title, o.username, d.lastModified, d.version) " +
+           "FROM Document d JOIN d.owner o " +
+           "WHERE (o.id = :userId OR EXISTS (SELECT c FROM d.collaborators c WHERE c.id = :userId)) " +
+           "AND (d.lastModified < :lastModified OR (d.lastModified = :lastModified AND d.id < :id)) " +
+           "ORDER BY d.lastModified DESC, d.id DESC")
+    List<DocumentSummary> findAccessibleDocumentsAfter(@Param("userId") Long userId,
+                                                       @Param("lastModified") LocalDateTime lastModified,
+                                                       @Param("id") Long id,
+                                                       Pageable pageable);
+
+    @Query("SELECT d.owner.id FROM Document d WHERE d.id = :documentId")
+    Optional<Long> findOwnerIdById(@Param("documentId") Long documentId);
+
+    @Query("SELECT c.id FROM Document d JOIN d.collaborators c WHERE d.id = :documentId")
+    List<Long> findCollaboratorIdsById(@Param("documentId") Long documentId);
+
+    /** Id and revision of every document, for checking the search index against the database. */
+    @Query("SELECT d.id AS id, d.revision AS revision FROM Document d")
+    List<DocumentRevision> findAllRevisions();
+
+    /** Version and revision of one document, for computing its entity tag without loading it. */
+    @Query("SELECT d.version AS version, d.revision AS revision FROM Document d WHERE d.id = :documentId")
+    Optional<DocumentStamp> findStampById(@Param("documentId") Long documentId);
+
+    interface DocumentRevision {
+        Long getId();
+
+        Long getRevision();
+    }
+
+    interface DocumentStamp {
+        Long getVersion();
+
+        Long getRevision();
+    }
 }
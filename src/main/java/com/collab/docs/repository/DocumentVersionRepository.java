@@ -0,0 +1,41 @@
+package com.collab.docs.repository;
+
+import com.collab.docs.model.DocumentVersion;
+import com.collab.docs.model.VersionSummary;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DocumentVersionRepository extends JpaRepository<DocumentVersion, Long> {
+
+    Optional<DocumentVersion> findTopByDocumentIdOrderByVersionDesc(Long documentId);
+
+    /** The checkpoint a read of {@code version} starts from: the oldest one at or after it. */
+    @Query("SELECT v FROM DocumentVersion v WHERE v.documentId = :documentId AND v.version = " +
+           "(SELECT MIN(c.version) FROM DocumentVersion c WHERE c.documentId = :documentId " +
+           "AND c.version >= :version AND c.contentId IS NOT NULL)")
+    Optional<DocumentVersion> findCheckpointFrom(@Param("documentId") Long documentId, @Param("version") Long version);
+
+    /** Versions {@code from} to {@code to}, newest first, in the order their deltas are applied. */
+    @Query("SELECT v FROM DocumentVersion v WHERE v.documentId = :documentId " +
+           "AND v.version BETWEEN :from AND :to ORDER BY v.version DESC")
+    List<DocumentVersion> findRange(@Param("documentId") Long documentId, @Param("from") Long from, @Param("to") Long to);
+
+    @Query("SELECT new com.collab.docs.model.VersionSummary(v.version, v.revision, v.length, v.modifiedBy, v.createdAt) " +
+           "FROM DocumentVersion v WHERE v.documentId = :documentId AND v.version < :before ORDER BY v.version DESC")
+    List<VersionSummary> findSummaries(@Param("documentId") Long documentId, @Param("before") Long before, Pageable pageable);
+
+    @Query("SELECT v.contentId FROM DocumentVersion v WHERE v.documentId = :documentId AND v.contentId IS NOT NULL")
+    List<String> findCheckpointContentIds(@Param("documentId") Long documentId);
+
+    @Modifying
+    @Query("DELETE FROM DocumentVersion v WHERE v.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") Long documentId);
+}
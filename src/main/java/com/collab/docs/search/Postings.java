@@ -0,0 +1,53 @@
+package com.collab.docs.search;
+
+import java.util.Arrays;
+
+/**
+ * Postings list of one term: the ids of the documents containing it, ascending, with the term's
+ * frequency in each, in parallel primitive arrays. Not thread-safe; {@link SearchIndex} guards it.
+ */
+final class Postings {
+    private long[] documentIds = new long[4];
+    private int[] frequencies = new int[4];
+    private int size;
+
+    void put(long documentId, int frequency) {
+        int index = Arrays.binarySearch(documentIds, 0, size, documentId);
+        if (index >= 0) {
+            frequencies[index] = frequency;
+            return;
+        }
+        int insertAt = -index - 1;
+        if (size == documentIds.length) {
+            documentIds = Arrays.copyOf(documentIds, size * 2);
+            frequencies = Arrays.copyOf(frequencies, size * 2);
+        }
+        System.arraycopy(documentIds, insertAt, documentIds, insertAt + 1, size - insertAt);
+        System.arraycopy(frequencies, insertAt, frequencies, insertAt + 1, size - insertAt);
+        documentIds[insertAt] = documentId;
+        frequencies[insertAt] = frequency;
+        size++;
+    }
+
+    void remove(long documentId) {
+        int index = Arrays.binarySearch(documentIds, 0, size, documentId);
+        if (index < 0) {
+            return;
+        }
+        System.arraycopy(documentIds, index + 1, documentIds, index, size - index - 1);
+        System.arraycopy(frequencies, index + 1, frequencies, index, size - index - 1);
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long documentId(int index) {
+        return documentIds[index];
+    }
+
+    int frequency(int index) {
+        return frequencies[index];
+    }
+}
@@ -0,0 +1,16 @@
+package com.collab.docs.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+    private Long documentId;
+    private String title;
+    private double score;
+}
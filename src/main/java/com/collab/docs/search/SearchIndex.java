@@ -0,0 +1,291 @@
+package com.collab.docs.search;
+
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory inverted index over document titles and bodies. Every term maps to a {@link Postings}
+ * list; every document keeps its term frequencies so that re-indexing it only touches the
+ * postings of terms whose frequency changed. Queries are ranked with BM25, title terms counting
+ * {@link #TITLE_WEIGHT} times.
+ * <p>
+ * Documents edited since they were last indexed are collected by {@link #markChanged} and picked
+ * up by {@link SearchService}. The index can be written to and read from a file so that a restart
+ * only re-indexes documents changed meanwhile.
+ */
+@Component
+public class SearchIndex {
+    static final int TITLE_WEIGHT = 3;
+
+    private static final int FILE_MAGIC = 0x53494458; // "SIDX"
+    private static final int FILE_VERSION = 1;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, IndexedDocument> documents = new HashMap<>();
+    private long totalLength;
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+    private volatile boolean modified;
+
+    /** Records that the document changed and needs re-indexing. */
+    public void markChanged(long documentId) {
+        changed.add(documentId);
+    }
+
+    /** Takes the documents marked as changed since the last call. */
+    List<Long> drainChanged() {
+        List<Long> documentIds = new ArrayList<>(changed);
+        changed.removeAll(documentIds);
+        return documentIds;
+    }
+
+    public void index(long documentId, long revision, String title, String content) {
+        Map<String, Integer> terms = Tokenizer.termFrequencies(title, TITLE_WEIGHT, new HashMap<>());
+        Tokenizer.termFrequencies(content, 1, terms);
+        IndexedDocument document = new IndexedDocument(revision, title, terms);
+        lock.writeLock().lock();
+        try {
+            IndexedDocument previous = documents.put(documentId, document);
+            Map<String, Integer> previousTerms = previous != null ? previous.terms : Collections.emptyMap();
+            if (previous != null) {
+                totalLength -= previous.length;
+                for (String term : previousTerms.keySet()) {
+                    if (!terms.containsKey(term)) {
+                        removePosting(term, documentId);
+                    }
+                }
+            }
+            terms.forEach((term, frequency) -> {
+                if (!frequency.equals(previousTerms.get(term))) {
+                    postings.computeIfAbsent(term, t -> new Postings()).put(documentId, frequency);
+                }
+            });
+            totalLength += document.length;
+            modified = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long documentId) {
+        changed.remove(documentId);
+        lock.writeLock().lock();
+        try {
+            IndexedDocument previous = documents.remove(documentId);
+            if (previous != null) {
+                totalLength -= previous.length;
+                previous.terms.keySet().forEach(term -> removePosting(term, documentId));
+                modified = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code limit} best matches of the query among documents accepted by {@code filter}, best
+     * first. A document matches if it contains any query term. The filter is an access check that
+     * may query the database, so it runs after the index lock is released, on the best candidates
+     * first, until {@code limit} of them pass.
+     */
+    public List<SearchHit> search(String query, LongPredicate filter, int limit) {
+        Set<String> terms = Tokenizer.termFrequencies(query).keySet();
+        if (terms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        List<SearchHit> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int count = documents.size();
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            double averageLength = Math.max(1.0, (double) totalLength / count);
+            Map<Long, double[]> scores = new HashMap<>();
+            for (String term : terms) {
+                Postings list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (count - list.size() + 0.5) / (list.size() + 0.5));
+                for (int i = 0; i < list.size(); i++) {
+                    long documentId = list.documentId(i);
+                    int frequency = list.frequency(i);
+                    double norm = K1 * (1 - B + B * documents.get(documentId).length / averageLength);
+                    double score = idf * frequency * (K1 + 1) / (frequency + norm);
+                    scores.computeIfAbsent(documentId, id -> new double[1])[0] += score;
+                }
+            }
+            scores.forEach((documentId, score) -> candidates.add(SearchHit.builder()
+                    .documentId(documentId)
+                    .title(documents.get(documentId).title)
+                    .score(score[0])
+                    .build()));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        candidates.sort(Comparator.comparingDouble(SearchHit::getScore).reversed());
+        List<SearchHit> hits = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (SearchHit candidate : candidates) {
+            if (filter.test(candidate.getDocumentId())) {
+                hits.add(candidate);
+                if (hits.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /** Revision each indexed document was indexed at. */
+    Map<Long, Long> getIndexedRevisions() {
+        lock.readLock().lock();
+        try {
+            Map<Long, Long> revisions = new HashMap<>(documents.size() * 2);
+            documents.forEach((documentId, document) -> revisions.put(documentId, document.revision));
+            return revisions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the per-document term frequencies to {@code file}, replacing it atomically. Postings
+     * are rebuilt from them on {@link #read}. Returns {@code false} if nothing changed since the
+     * last write.
+     */
+    boolean write(Path file) throws IOException {
+        if (!modified) {
+            return false;
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            modified = false;
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(documents.size());
+            for (Map.Entry<Long, IndexedDocument> entry : documents.entrySet()) {
+                IndexedDocument document = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeLong(document.revision);
+                out.writeUTF(document.title != null ? document.title : "");
+                out.writeInt(document.terms.size());
+                for (Map.Entry<String, Integer> term : document.terms.entrySet()) {
+                    out.writeUTF(term.getKey());
+                    out.writeInt(term.getValue());
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            modified = true;
+            throw ex;
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /** Replaces the contents of the index with those written to {@code file}. */
+    void read(Path file) throws IOException {
+        Map<Long, IndexedDocument> loaded = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a search index file of version " + FILE_VERSION + ": " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long documentId = in.readLong();
+                long revision = in.readLong();
+                String title = in.readUTF();
+                int termCount = in.readInt();
+                Map<String, Integer> terms = new HashMap<>(termCount * 2);
+                for (int j = 0; j < termCount; j++) {
+                    terms.put(in.readUTF(), in.readInt());
+                }
+                loaded.put(documentId, new IndexedDocument(revision, title, terms));
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            postings.clear();
+            totalLength = 0;
+            // Ascending ids append to the postings instead of inserting into them
+            loaded.keySet().stream().sorted().forEach(documentId -> {
+                IndexedDocument document = loaded.get(documentId);
+                documents.put(documentId, document);
+                totalLength += document.length;
+                document.terms.forEach((term, frequency) ->
+                        postings.computeIfAbsent(term, t -> new Postings()).put(documentId, frequency));
+            });
+            modified = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removePosting(String term, long documentId) {
+        Postings list = postings.get(term);
+        if (list != null) {
+            list.remove(documentId);
+            if (list.size() == 0) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static final class IndexedDocument {
+        final long revision;
+        final String title;
+        final Map<String, Integer> terms;
+        final int length;
+
+        IndexedDocument(long revision, String title, Map<String, Integer> terms) {
+            this.revision = revision;
+            this.title = title;
+            this.terms = terms;
+            this.length = terms.values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+}
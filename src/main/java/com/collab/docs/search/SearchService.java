@@ -0,0 +1,135 @@
+package com.collab.docs.search;
+
+import com.collab.docs.model.Document;
+import com.collab.docs.repository.DocumentRepository;
+import com.collab.docs.service.DocumentAccessControl;
+import com.collab.docs.service.DocumentService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the {@link SearchIndex} up to date and answers queries against it.
+ * <p>
+ * Edits mark their document as changed; every {@code app.search.index-interval-ms} the changed
+ * documents are re-read, from their buffer if they are being edited, and re-indexed, so a burst of
+ * keystrokes costs one re-index. Every {@code app.search.rescan-interval-ms}, and once at startup,
+ * the revisions in the database are compared with the indexed ones to pick up documents written by
+ * other cluster nodes or while this node was down. The index is saved to
+ * {@code app.search.directory} periodically and on shutdown, so that a restart loads it instead of
+ * re-indexing everything.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SearchService {
+    static final int MAX_LIMIT = 100;
+    private static final String INDEX_FILE = "search-index.bin";
+
+    private final SearchIndex index;
+    private final DocumentService documentService;
+    private final DocumentRepository documentRepository;
+    private final DocumentAccessControl accessControl;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.search.directory:./data/search}")
+    private String directory;
+
+    private Path indexFile;
+    private Timer queryTimer;
+
+    @PostConstruct
+    void open() {
+        indexFile = Paths.get(directory).resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            try {
+                index.read(indexFile);
+                log.info("Loaded search index of {} documents from {}", index.getDocumentCount(), indexFile);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Could not load search index from {}; rebuilding it", indexFile, ex);
+            }
+        }
+        queryTimer = meterRegistry.timer("search.query");
+        Gauge.builder("search.index.documents", index, SearchIndex::getDocumentCount)
+                .description("Documents in the search index")
+                .register(meterRegistry);
+        Gauge.builder("search.index.terms", index, SearchIndex::getTermCount)
+                .description("Distinct terms in the search index")
+                .register(meterRegistry);
+    }
+
+    /** Up to {@code limit} documents the user may open that match the query, best first. */
+    public List<SearchHit> search(Long userId, String query, int limit) {
+        int bounded = Math.max(1, Math.min(limit, MAX_LIMIT));
+        return queryTimer.record(() -> index.search(query, documentId -> accessControl.canEdit(documentId, userId), bounded));
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.index-interval-ms:1000}")
+    public void indexChanged() {
+        for (Long documentId : index.drainChanged()) {
+            try {
+                Document document = documentService.getDocument(documentId);
+                index.index(documentId, document.getRevision() != null ? document.getRevision() : 0L,
+                        document.getTitle(), document.getContent());
+            } catch (EntityNotFoundException ex) {
+                index.remove(documentId);
+            } catch (RuntimeException ex) {
+                log.warn("Failed to index document {}; will retry", documentId, ex);
+                index.markChanged(documentId);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.rescan-interval-ms:60000}")
+    public void rescan() {
+        Map<Long, Long> indexed = index.getIndexedRevisions();
+        Set<Long> existing = new HashSet<>(indexed.size() * 2);
+        int stale = 0;
+        for (DocumentRepository.DocumentRevision document : documentRepository.findAllRevisions()) {
+            existing.add(document.getId());
+            Long indexedRevision = indexed.get(document.getId());
+            long revision = document.getRevision() != null ? document.getRevision() : 0L;
+            if (indexedRevision == null || indexedRevision < revision) {
+                index.markChanged(document.getId());
+                stale++;
+            }
+        }
+        indexed.keySet().stream().filter(documentId -> !existing.contains(documentId)).forEach(index::remove);
+        if (stale > 0) {
+            log.info("Queued {} documents for search indexing", stale);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.persist-interval-ms:300000}")
+    public void persist() {
+        try {
+            if (index.write(indexFile)) {
+                log.debug("Saved search index of {} documents to {}", index.getDocumentCount(), indexFile);
+            }
+        } catch (IOException ex) {
+            log.warn("Failed to save search index to {}", indexFile, ex);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        persist();
+    }
+}
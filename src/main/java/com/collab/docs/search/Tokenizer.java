@@ -0,0 +1,44 @@
+package com.collab.docs.search;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Splits text into search terms: maximal runs of letters and digits, lower-cased. Terms shorter
+ * than {@link #MIN_LENGTH} or longer than {@link #MAX_LENGTH} characters are dropped.
+ */
+public final class Tokenizer {
+    static final int MIN_LENGTH = 2;
+    static final int MAX_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    /** Each term of the text with the number of times it occurs, each occurrence counting {@code weight}. */
+    public static Map<String, Integer> termFrequencies(String text, int weight, Map<String, Integer> into) {
+        if (text == null) {
+            return into;
+        }
+        StringBuilder term = new StringBuilder();
+        int length = text.length();
+        for (int i = 0; i <= length; ) {
+            int codePoint = i < length ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (term.length() <= MAX_LENGTH) {
+                    term.appendCodePoint(Character.toLowerCase(codePoint));
+                }
+            } else if (term.length() > 0) {
+                if (term.length() >= MIN_LENGTH && term.length() <= MAX_LENGTH) {
+                    into.merge(term.toString(), weight, Integer::sum);
+                }
+                term.setLength(0);
+            }
+            i += i < length ? Character.charCount(codePoint) : 1;
+        }
+        return into;
+    }
+
+    public static Map<String, Integer> termFrequencies(String text) {
+        return termFrequencies(text, 1, new HashMap<>());
+    }
+}
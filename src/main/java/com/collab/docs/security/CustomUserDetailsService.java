@@ -1,30 +1,91 @@
 package com.collab.docs.security;
 
-import com.collab.docs.model.User;
 import com.collab.docs.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Loads users as {@link UserPrincipal} snapshots. Lookups by username, done for every
+ * authenticated request, are served from a bounded cache for {@code app.security.user-cache.ttl};
+ * code changing a user calls {@link #evict} so that the change applies to the next request.
+ */
 @Service
 @RequiredArgsConstructor
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.security.user-cache.max-size:10000}")
+    private int cacheSize;
+
+    @Value("${app.security.user-cache.ttl:5m}")
+    private Duration cacheTtl;
+
+    private UserPrincipalCache cache;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    @PostConstruct
+    void init() {
+        cache = new UserPrincipalCache(cacheSize, cacheTtl.toMillis());
+        cacheHits = meterRegistry.counter("auth.user_cache", "result", "hit");
+        cacheMisses = meterRegistry.counter("auth.user_cache", "result", "miss");
+        Gauge.builder("auth.user_cache.size", cache, UserPrincipalCache::size)
+                .description("User principals cached for authentication")
+                .register(meterRegistry);
+    }
 
     @Override
     @Transactional(readOnly = true)
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return userRepository.findByUsername(username)
+    public UserPrincipal loadUserByUsername(String username) throws UsernameNotFoundException {
+        UserPrincipal cached = cache.get(username, System.currentTimeMillis());
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+        long generation = cache.generation();
+        UserPrincipal principal = userRepository.findByUsername(username)
+                .map(UserPrincipal::of)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
+        cache.put(principal, generation, System.currentTimeMillis());
+        return principal;
     }
 
     @Transactional(readOnly = true)
-    public UserDetails loadUserById(Long id) {
+    public UserPrincipal loadUserById(Long id) {
         return userRepository.findById(id)
+                .map(UserPrincipal::of)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with id: " + id));
     }
+
+    /**
+     * Drops the cached principal of a user that is being changed. Inside a transaction it is
+     * dropped again after commit, so that a request loading the user before the commit cannot
+     * leave the old state cached.
+     */
+    public void evict(String username) {
+        cache.evict(username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.evict(username);
+                }
+            });
+        }
+    }
 }
@@ -1,17 +1,31 @@
 package com.collab.docs.security;
 
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.io.Decoders;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import java.util.Date;
 
+/**
+ * Issues and verifies JWTs. Verification parses the token once; tokens that pass are remembered
+ * until their {@code exp}, keyed by digest, so that a client sending the same token with every
+ * request only pays for the HMAC check the first time.
+ */
 @Component
+@RequiredArgsConstructor
 @Slf4j
 public class JwtTokenProvider {
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.jwt.secret}")
     private String jwtSecret;
@@ -19,6 +33,26 @@ public class JwtTokenProvider {
     @Value("${app.jwt.expiration}")
     private int jwtExpirationInMs;
 
+    @Value("${app.jwt.cache.max-size:10000}")
+    private int cacheSize;
+
+    private JwtParser parser;
+    private VerifiedTokenCache cache;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    @PostConstruct
+    void init() {
+        // Same key as signWith(HS512, secret): the secret is base64-encoded
+        parser = Jwts.parserBuilder().setSigningKey(Decoders.BASE64.decode(jwtSecret)).build();
+        cache = new VerifiedTokenCache(cacheSize);
+        cacheHits = meterRegistry.counter("auth.jwt.cache", "result", "hit");
+        cacheMisses = meterRegistry.counter("auth.jwt.cache", "result", "miss");
+        Gauge.builder("auth.jwt.cache.size", cache, VerifiedTokenCache::size)
+                .description("Verified tokens cached until their expiry")
+                .register(meterRegistry);
+    }
+
     public String generateToken(Authentication authentication) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
 
@@ -33,19 +67,27 @@ public class JwtTokenProvider {
                 .compact();
     }
 
-    public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parser()
-                .setSigningKey(jwtSecret)
-                .parseClaimsJws(token)
-                .getBody();
-
-        return claims.getSubject();
-    }
-
-    public boolean validateToken(String authToken) {
+    /**
+     * Verifies the token and returns its subject, or {@code null} if the token is invalid or
+     * expired.
+     */
+    public String resolveUsername(String token) {
+        if (!StringUtils.hasText(token)) {
+            return null;
+        }
+        String cached = cache.get(token, System.currentTimeMillis());
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
         try {
-            Jwts.parser().setSigningKey(jwtSecret).parseClaimsJws(authToken);
-            return true;
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            // Tokens without an expiry are verified every time
+            if (claims.getExpiration() != null) {
+                cache.put(token, claims.getSubject(), claims.getExpiration().getTime());
+            }
+            return claims.getSubject();
         } catch (SignatureException ex) {
             log.error("Invalid JWT signature");
         } catch (MalformedJwtException ex) {
@@ -57,6 +99,6 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex) {
             log.error("JWT claims string is empty");
         }
-        return false;
+        return null;
     }
 }
@@ -0,0 +1,106 @@
+package com.collab.docs.security;
+
+import com.collab.docs.service.DocumentAccessControl;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.security.Principal;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Authenticates STOMP sessions from the {@code Authorization: Bearer <jwt>} header of the CONNECT
+ * frame. The token is verified and the user loaded once; the resulting authentication becomes the
+ * session's user, which Spring attaches to every later frame of the session. A CONNECT without a
+ * valid token is answered with an ERROR frame, and frames of sessions without a user are rejected.
+ * <p>
+ * Subscriptions to a document's topics, {@code /topic/document/{id}/**}, are only accepted from
+ * users who may edit the document, so nobody can follow edits, cursors or presence of documents
+ * they cannot open. Destination patterns are refused, since the broker would match them against
+ * every document's topics.
+ * <p>
+ * The handshake itself stays open to anonymous clients since browsers cannot send headers with it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StompAuthenticationInterceptor implements ChannelInterceptor {
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String DOCUMENT_TOPIC_PREFIX = "/topic/document/";
+    private static final Pattern DOCUMENT_TOPIC = Pattern.compile("^/topic/document/(\\d{1,18})(/.*)?$");
+
+    private final JwtTokenProvider tokenProvider;
+    private final CustomUserDetailsService userDetailsService;
+    private final DocumentAccessControl accessControl;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        StompCommand command = accessor.getCommand();
+        if (command == StompCommand.CONNECT || command == StompCommand.STOMP) {
+            // The accessor is still mutable here, so the user set on it is stored with the session
+            accessor.setUser(authenticate(accessor.getFirstNativeHeader("Authorization")));
+        } else if (accessor.getUser() == null
+                && (command == StompCommand.SEND || command == StompCommand.SUBSCRIBE)) {
+            throw new AuthenticationCredentialsNotFoundException("STOMP session is not authenticated");
+        } else if (command == StompCommand.SUBSCRIBE) {
+            authorizeSubscription(accessor.getDestination(), accessor.getUser());
+        }
+        return message;
+    }
+
+    private void authorizeSubscription(String destination, Principal user) {
+        if (destination == null) {
+            return;
+        }
+        if (destination.indexOf('*') >= 0 || destination.indexOf('?') >= 0 || destination.indexOf('{') >= 0) {
+            throw new AccessDeniedException("Subscriptions to destination patterns are not allowed");
+        }
+        if (!destination.startsWith(DOCUMENT_TOPIC_PREFIX)) {
+            return;
+        }
+        Matcher matcher = DOCUMENT_TOPIC.matcher(destination);
+        if (!matcher.matches() || !canEdit(Long.parseLong(matcher.group(1)), user)) {
+            throw new AccessDeniedException("No access to " + destination);
+        }
+    }
+
+    private boolean canEdit(long documentId, Principal user) {
+        if (user instanceof Authentication && ((Authentication) user).getPrincipal() instanceof UserPrincipal) {
+            return accessControl.canEdit(documentId, ((UserPrincipal) ((Authentication) user).getPrincipal()).getId());
+        }
+        return false;
+    }
+
+    private UsernamePasswordAuthenticationToken authenticate(String header) {
+        if (!StringUtils.hasText(header) || !header.startsWith(BEARER_PREFIX)) {
+            throw new AuthenticationCredentialsNotFoundException("Missing bearer token in CONNECT frame");
+        }
+        String username = tokenProvider.resolveUsername(header.substring(BEARER_PREFIX.length()));
+        if (username == null) {
+            throw new BadCredentialsException("Invalid or expired token");
+        }
+        UserPrincipal principal = userDetailsService.loadUserByUsername(username);
+        if (!principal.isEnabled() || !principal.isAccountNonLocked()) {
+            throw new BadCredentialsException("Account disabled or locked");
+        }
+        log.debug("Authenticated STOMP session of user {}", username);
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+}
@@ -0,0 +1,36 @@
+package com.collab.docs.security;
+
+import com.collab.docs.model.User;
+import lombok.ToString;
+import lombok.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Set;
+
+/**
+ * Immutable snapshot of a {@link User} taken when it was loaded for authentication. Unlike the
+ * entity it holds no lazy associations, so it can be cached and shared between threads and used
+ * long after the session that loaded it is closed. Code that needs the entity itself loads it by
+ * {@link #getId()}.
+ */
+@Value
+@ToString(exclude = "password")
+public class UserPrincipal implements UserDetails {
+    private static final long serialVersionUID = 1L;
+
+    Long id;
+    String username;
+    String password;
+    Set<GrantedAuthority> authorities;
+    boolean accountNonExpired;
+    boolean accountNonLocked;
+    boolean credentialsNonExpired;
+    boolean enabled;
+
+    public static UserPrincipal of(User user) {
+        return new UserPrincipal(user.getId(), user.getUsername(), user.getPassword(),
+                Set.copyOf(user.getAuthorities()), user.isAccountNonExpired(), user.isAccountNonLocked(),
+                user.isCredentialsNonExpired(), user.isEnabled());
+    }
+}
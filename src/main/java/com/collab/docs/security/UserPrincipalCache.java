@@ -0,0 +1,94 @@
+package com.collab.docs.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of principals by username, each kept for a fixed time after it was loaded. When
+ * full, expired entries are purged first and then arbitrary ones, down to 90% of the capacity.
+ * <p>
+ * Every eviction advances a generation counter. A loader reads it before querying the database
+ * and passes it to {@link #put}, which drops the principal if an eviction happened meanwhile, so
+ * a load racing with a change cannot re-cache the old state.
+ */
+final class UserPrincipalCache {
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    UserPrincipalCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /** The principal if it is cached and was loaded less than the TTL before {@code now}, else {@code null}. */
+    UserPrincipal get(String username, long now) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return null;
+        }
+        if (now >= entry.expiresAt) {
+            entries.remove(username, entry);
+            return null;
+        }
+        return entry.principal;
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    /** Caches a principal loaded after {@link #generation()} returned {@code loadedAtGeneration}. */
+    void put(UserPrincipal principal, long loadedAtGeneration, long now) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evictOverflow(now);
+        }
+        Entry entry = new Entry(principal, now + ttlMillis);
+        entries.put(principal.getUsername(), entry);
+        if (generation.get() != loadedAtGeneration) {
+            entries.remove(principal.getUsername(), entry);
+        }
+    }
+
+    void evict(String username) {
+        generation.incrementAndGet();
+        entries.remove(username);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private boolean isEnabled() {
+        return maxSize > 0 && ttlMillis > 0;
+    }
+
+    private void evictOverflow(long now) {
+        entries.values().removeIf(entry -> now >= entry.expiresAt);
+        int target = maxSize * 9 / 10;
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static final class Entry {
+        final UserPrincipal principal;
+        final long expiresAt;
+
+        Entry(UserPrincipal principal, long expiresAt) {
+            this.principal = principal;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
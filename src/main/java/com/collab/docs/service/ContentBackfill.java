@@ -0,0 +1,81 @@
+package com.collab.docs.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Moves document bodies left in the legacy {@code documents.content} column into
+ * {@link ContentStore} at startup. Before bodies were content-addressed, schemas created by
+ * {@code ddl-auto} kept the text in that column; {@code ddl-auto=update} leaves the column in
+ * place but nothing reads it any more. Every document with {@code content_id IS NULL AND content
+ * IS NOT NULL} gets its body stored and its {@code content_id} set, in batches of
+ * {@code app.documents.content.backfill-batch-size}. The legacy column itself is left untouched.
+ * <p>
+ * Schemas without the column (created by the migrations, or new ones) are skipped. Runs before
+ * {@link DocumentBufferService}, so no buffer is loaded from a document still missing its body.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ContentBackfill {
+    private final JdbcTemplate jdbcTemplate;
+    private final ContentStore contentStore;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.documents.content.backfill-batch-size:100}")
+    private int batchSize;
+
+    @PostConstruct
+    void backfill() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        long after = 0;
+        int moved = 0;
+        while (true) {
+            List<Long> documentIds;
+            try {
+                documentIds = jdbcTemplate.queryForList("SELECT id FROM documents " +
+                        "WHERE content_id IS NULL AND content IS NOT NULL AND id > ? ORDER BY id LIMIT ?",
+                        Long.class, after, batchSize);
+            } catch (BadSqlGrammarException ex) {
+                log.debug("No legacy documents.content column to backfill: {}", ex.getMessage());
+                return;
+            }
+            if (documentIds.isEmpty()) {
+                break;
+            }
+            for (long documentId : documentIds) {
+                try {
+                    moved += move(transactionTemplate, documentId);
+                } catch (DataIntegrityViolationException ex) {
+                    // Another node stored the same body first; it exists now
+                    moved += move(transactionTemplate, documentId);
+                }
+                after = documentId;
+            }
+        }
+        if (moved > 0) {
+            log.info("Moved {} document bodies from documents.content into content blobs", moved);
+        }
+    }
+
+    private int move(TransactionTemplate transactionTemplate, long documentId) {
+        Integer updated = transactionTemplate.execute(status -> {
+            // Read one body at a time, so a batch never holds more than one document's text
+            String content = jdbcTemplate.queryForObject("SELECT content FROM documents WHERE id = ?",
+                    String.class, documentId);
+            return jdbcTemplate.update("UPDATE documents SET content_id = ? WHERE id = ? AND content_id IS NULL",
+                    contentStore.put(content), documentId);
+        });
+        return updated != null ? updated : 0;
+    }
+}
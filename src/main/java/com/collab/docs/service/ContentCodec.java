@@ -0,0 +1,223 @@
+package com.collab.docs.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary encoding of stored document bodies. The first byte names the format:
+ * <ul>
+ *   <li>{@link #PLAIN}: the UTF-8 text follows as is;</li>
+ *   <li>{@link #DEFLATE}: the length of the UTF-8 text as a 4-byte big-endian int follows, then
+ *       the text compressed as a raw DEFLATE stream.</li>
+ * </ul>
+ * Bodies shorter than the minimum size, or that do not shrink, are stored plain, so decoding never
+ * costs more than a copy for them. Deflaters and inflaters are kept per thread, since creating one
+ * allocates native memory.
+ */
+final class ContentCodec {
+    static final byte PLAIN = 0;
+    static final byte DEFLATE = 1;
+
+    private static final int DEFLATE_HEADER = 5;
+    private static final int CHUNK_SIZE = 8192;
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private ContentCodec() {
+    }
+
+    /**
+     * Encodes UTF-8 text, compressing it at {@code level} (1-9) if it has at least {@code minSize}
+     * bytes; level 0 always stores it plain.
+     */
+    static byte[] encode(byte[] text, int level, int minSize) {
+        if (level > 0 && text.length >= minSize) {
+            byte[] compressed = deflate(text, level);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        byte[] plain = new byte[text.length + 1];
+        plain[0] = PLAIN;
+        System.arraycopy(text, 0, plain, 1, text.length);
+        return plain;
+    }
+
+    static String decode(byte[] data) {
+        if (data.length == 0) {
+            throw new IllegalStateException("Encoded content has no format header");
+        }
+        switch (data[0]) {
+            case PLAIN:
+                return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+            case DEFLATE:
+                return new String(inflate(data), StandardCharsets.UTF_8);
+            default:
+                throw new IllegalStateException("Unknown content format: " + data[0]);
+        }
+    }
+
+    /** Writes the UTF-8 text of an encoded body, inflating it a chunk at a time. */
+    static void decodeTo(byte[] data, OutputStream out) throws IOException {
+        if (data.length == 0) {
+            throw new IllegalStateException("Encoded content has no format header");
+        }
+        switch (data[0]) {
+            case PLAIN:
+                out.write(data, 1, data.length - 1);
+                return;
+            case DEFLATE:
+                int remaining = ByteBuffer.wrap(data, 1, 4).getInt();
+                byte[] chunk = new byte[Math.min(CHUNK_SIZE, Math.max(remaining, 1))];
+                Inflater inflater = INFLATER.get();
+                inflater.reset();
+                inflater.setInput(data, DEFLATE_HEADER, data.length - DEFLATE_HEADER);
+                try {
+                    while (remaining > 0 && !inflater.finished()) {
+                        int n = inflater.inflate(chunk, 0, Math.min(chunk.length, remaining));
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        out.write(chunk, 0, n);
+                        remaining -= n;
+                    }
+                } catch (DataFormatException ex) {
+                    throw new IllegalStateException("Compressed content is corrupt", ex);
+                }
+                if (remaining != 0) {
+                    throw new IllegalStateException("Compressed content is truncated or corrupt");
+                }
+                return;
+            default:
+                throw new IllegalStateException("Unknown content format: " + data[0]);
+        }
+    }
+
+    /** The compressed encoding, or {@code null} if it would not be smaller than the plain one. */
+    private static byte[] deflate(byte[] text, int level) {
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(text);
+        deflater.finish();
+        // Give up once the output reaches the plain size
+        byte[] out = new byte[text.length + 1];
+        int length = DEFLATE_HEADER;
+        while (!deflater.finished() && length < out.length) {
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        out[0] = DEFLATE;
+        ByteBuffer.wrap(out, 1, 4).putInt(text.length);
+        return Arrays.copyOf(out, length);
+    }
+
+    private static byte[] inflate(byte[] data) {
+        int length = ByteBuffer.wrap(data, 1, 4).getInt();
+        byte[] text = new byte[length];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data, DEFLATE_HEADER, data.length - DEFLATE_HEADER);
+        try {
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(text, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new IllegalStateException("Compressed content is truncated or corrupt");
+            }
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Compressed content is corrupt", ex);
+        }
+        return text;
+    }
+
+    /** Length in bytes of the UTF-8 text of an encoded body, read from its header. */
+    static int textSize(byte[] data) {
+        return data[0] == DEFLATE ? ByteBuffer.wrap(data, 1, 4).getInt() : data.length - 1;
+    }
+
+    /**
+     * Encodes text that arrives in pieces, e.g. from an upload, holding only the encoded form.
+     * The text is kept plain until it reaches the minimum size and deflated from then on. Unlike
+     * {@link #encode}, a compressed body is kept even if it did not shrink, since the plain text
+     * is gone by the time that is known.
+     */
+    static final class Encoder implements AutoCloseable {
+        private final int level;
+        private final int minSize;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private Deflater deflater;
+        private long length;
+
+        Encoder(int level, int minSize) {
+            this.level = level;
+            this.minSize = minSize;
+            out.write(PLAIN);
+        }
+
+        void write(byte[] text, int offset, int count) {
+            length += count;
+            if (length > Integer.MAX_VALUE - DEFLATE_HEADER) {
+                throw new IllegalArgumentException("Content is too large");
+            }
+            if (deflater != null) {
+                deflate(text, offset, count);
+                return;
+            }
+            out.write(text, offset, count);
+            if (level > 0 && length >= minSize) {
+                byte[] plain = out.toByteArray();
+                out = new ByteArrayOutputStream();
+                out.write(DEFLATE);
+                out.write(new byte[4], 0, 4);
+                deflater = new Deflater(level, true);
+                deflate(plain, 1, plain.length - 1);
+            }
+        }
+
+        /** The encoded body; the encoder cannot be used afterwards. */
+        byte[] finish() {
+            if (deflater == null) {
+                return out.toByteArray();
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            close();
+            byte[] data = out.toByteArray();
+            ByteBuffer.wrap(data, 1, 4).putInt((int) length);
+            return data;
+        }
+
+        /** Releases the deflater's native memory, also when the input is abandoned. */
+        @Override
+        public void close() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+
+        private void deflate(byte[] text, int offset, int count) {
+            deflater.setInput(text, offset, count);
+            while (!deflater.needsInput()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.collab.docs.service;
+
+import com.collab.docs.editing.Rope;
+import com.collab.docs.model.ContentBlob;
+import com.collab.docs.repository.ContentBlobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed storage of document bodies. A body is stored once under the hex SHA-256 of
+ * its UTF-8 text, so documents and snapshots with the same content share a row and writing an
+ * unchanged body costs only an existence check. Documents refer to bodies by hash
+ * ({@code documents.content_id}) and read them only when the content itself is needed.
+ * <p>
+ * Bodies of at least {@code app.documents.content.compression-min-size} bytes are stored DEFLATE
+ * compressed at {@code app.documents.content.compression-level} (0 disables compression); see
+ * {@link ContentCodec} for the format. They are decompressed in {@link #get}, which only runs when
+ * a caller needs the text. Blobs stored before the encoding was introduced are read as they are.
+ * <p>
+ * For reading parts of a body, {@link #getText} keeps decoded bodies as {@link Rope}s, up to
+ * {@code app.documents.content.text-cache-chars} characters in total. A hash always names the
+ * same text, so cached entries never need invalidating.
+ * <p>
+ * Large bodies can be moved without holding their text: {@link #read} encodes an upload as it
+ * arrives and {@link #writeTo} inflates a stored body straight into a response.
+ * <p>
+ * Two transactions storing the same new body at once may collide on the primary key; the loser
+ * fails and its caller retries, by which time the body exists.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentStore {
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    });
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ContentBlobRepository blobRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.documents.content.compression-level:3}")
+    private int compressionLevel;
+
+    @Value("${app.documents.content.compression-min-size:512}")
+    private int compressionMinSize;
+
+    @Value("${app.documents.content.text-cache-chars:33554432}")
+    private long textCacheChars;
+
+    private final Map<String, Rope> texts = new ConcurrentHashMap<>();
+    private final AtomicLong cachedChars = new AtomicLong();
+
+    private Counter stored;
+    private Counter deduplicated;
+    private Counter textBytes;
+    private Counter storedBytes;
+    private Counter textHits;
+    private Counter textMisses;
+
+    @PostConstruct
+    void initMetrics() {
+        stored = meterRegistry.counter("documents.content.blobs", "result", "stored");
+        deduplicated = meterRegistry.counter("documents.content.blobs", "result", "deduplicated");
+        textBytes = meterRegistry.counter("documents.content.bytes", "form", "text");
+        storedBytes = meterRegistry.counter("documents.content.bytes", "form", "stored");
+        textHits = meterRegistry.counter("documents.content.text.cache", "result", "hit");
+        textMisses = meterRegistry.counter("documents.content.text.cache", "result", "miss");
+    }
+
+    /** Stores the body unless present and returns its hash; {@code null} content has no hash. */
+    @Transactional
+    public String put(String content) {
+        if (content == null) {
+            return null;
+        }
+        byte[] text = content.getBytes(StandardCharsets.UTF_8);
+        String hash = hash(text);
+        if (blobRepository.existsById(hash)) {
+            deduplicated.increment();
+            return hash;
+        }
+        byte[] data = ContentCodec.encode(text, compressionLevel, compressionMinSize);
+        blobRepository.save(ContentBlob.builder().hash(hash).data(data).length(content.length()).build());
+        stored.increment();
+        textBytes.increment(text.length);
+        storedBytes.increment(data.length);
+        return hash;
+    }
+
+    /**
+     * Reads UTF-8 text from a stream and encodes it for {@link #putEncoded}, a chunk at a
+     * time, so only the encoded body is held. Nothing is stored yet.
+     *
+     * @throws IllegalArgumentException if the text is not valid UTF-8 or longer than {@code maxBytes}
+     */
+    public ContentBlob read(InputStream text, long maxBytes) throws IOException {
+        MessageDigest digest = SHA_256.get();
+        digest.reset();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        ByteBuffer bytes = ByteBuffer.allocate(8192);
+        CharBuffer chars = CharBuffer.allocate(8192);
+        long size = 0;
+        int length = 0;
+        try (ContentCodec.Encoder encoder = new ContentCodec.Encoder(compressionLevel, compressionMinSize)) {
+            int n;
+            while ((n = text.read(bytes.array(), bytes.position(), bytes.remaining())) != -1) {
+                size += n;
+                if (size > maxBytes) {
+                    throw new IllegalArgumentException("Content is larger than " + maxBytes + " bytes");
+                }
+                digest.update(bytes.array(), bytes.position(), n);
+                encoder.write(bytes.array(), bytes.position(), n);
+                bytes.position(bytes.position() + n);
+                bytes.flip();
+                // Decoding only counts characters and rejects malformed input; the bytes are stored as sent
+                length += decode(decoder, bytes, chars, false);
+                bytes.compact();
+            }
+            bytes.flip();
+            length += decode(decoder, bytes, chars, true);
+            return ContentBlob.builder().hash(hex(digest.digest())).data(encoder.finish()).length(length).build();
+        }
+    }
+
+    /** Stores a blob made by {@link #read} unless its body is present, and returns its hash. */
+    @Transactional
+    public String putEncoded(ContentBlob blob) {
+        if (blobRepository.existsById(blob.getHash())) {
+            deduplicated.increment();
+            return blob.getHash();
+        }
+        blobRepository.save(blob);
+        stored.increment();
+        textBytes.increment(ContentCodec.textSize(blob.getData()));
+        storedBytes.increment(blob.getData().length);
+        return blob.getHash();
+    }
+
+    /**
+     * Writes the body as UTF-8, inflating it in chunks rather than building its text. Not
+     * transactional, so no connection is held while a slow client reads.
+     */
+    public void writeTo(String hash, OutputStream out) throws IOException {
+        if (hash == null) {
+            return;
+        }
+        ContentBlobRepository.StoredBody blob = blobRepository.findStoredBodyByHash(hash)
+                .orElseThrow(() -> new EntityNotFoundException("Content blob not found: " + hash));
+        if (blob.getData() != null) {
+            ContentCodec.decodeTo(blob.getData(), out);
+        } else {
+            out.write(blob.getBody().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public String get(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        ContentBlobRepository.StoredBody blob = blobRepository.findStoredBodyByHash(hash)
+                .orElseThrow(() -> new EntityNotFoundException("Content blob not found: " + hash));
+        return blob.getData() != null ? ContentCodec.decode(blob.getData()) : blob.getBody();
+    }
+
+    /** The body as a rope, from the cache if it was read recently; {@code null} hashes give an empty text. */
+    public Rope getText(String hash) {
+        if (hash == null) {
+            return Rope.empty();
+        }
+        Rope text = texts.get(hash);
+        if (text != null) {
+            textHits.increment();
+            return text;
+        }
+        textMisses.increment();
+        text = Rope.of(get(hash));
+        if (text.length() <= textCacheChars) {
+            if (cachedChars.get() + text.length() > textCacheChars) {
+                evictTexts(textCacheChars - text.length());
+            }
+            if (texts.putIfAbsent(hash, text) == null) {
+                cachedChars.addAndGet(text.length());
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Deletes a body that the caller stopped referring to, if nothing else refers to it. Must run
+     * after the reference was removed, in the same transaction.
+     */
+    @Transactional
+    public void release(String hash) {
+        if (hash != null && blobRepository.deleteIfUnreferenced(hash) > 0) {
+            log.trace("Deleted unreferenced content blob {}", hash);
+        }
+    }
+
+    /** Decodes what it can of {@code bytes} and returns the number of characters it made. */
+    private static int decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, boolean endOfInput) {
+        int count = 0;
+        while (true) {
+            CoderResult result = decoder.decode(bytes, chars, endOfInput);
+            count += chars.position();
+            chars.clear();
+            if (result.isError()) {
+                throw new IllegalArgumentException("Content is not valid UTF-8");
+            }
+            if (result.isUnderflow()) {
+                return count;
+            }
+        }
+    }
+
+    private void evictTexts(long target) {
+        Iterator<Map.Entry<String, Rope>> entries = texts.entrySet().iterator();
+        while (cachedChars.get() > target && entries.hasNext()) {
+            Map.Entry<String, Rope> entry = entries.next();
+            if (texts.remove(entry.getKey(), entry.getValue())) {
+                cachedChars.addAndGet(-entry.getValue().length());
+            }
+        }
+    }
+
+    public static String hash(String content) {
+        return hash(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(byte[] text) {
+        return hex(SHA_256.get().digest(text));
+    }
+
+    private static String hex(byte[] digest) {
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,150 @@
+package com.collab.docs.service;
+
+import com.collab.docs.repository.DocumentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Who may edit which document, as the owner id and a {@link LongHashSet} of collaborator ids per
+ * document. An entry is loaded with two id-only queries on first use and then kept up to date by
+ * {@link DocumentService} as collaborators change, so checks take a map lookup and a probe of a
+ * primitive set and never touch JPA entities. Up to {@code app.documents.acl.max-size} documents
+ * are cached.
+ * <p>
+ * Grants apply once the transaction making them commits; revocations apply at once and again
+ * after commit. Like {@link com.collab.docs.security.CustomUserDetailsService}'s cache, every
+ * change advances a generation, and a load that overlapped with a change is not cached.
+ */
+@Component
+@RequiredArgsConstructor
+public class DocumentAccessControl {
+    private final DocumentRepository documentRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.documents.acl.max-size:100000}")
+    private int maxSize;
+
+    private final Map<Long, Acl> acls = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void initMetrics() {
+        hits = meterRegistry.counter("documents.acl.cache", "result", "hit");
+        misses = meterRegistry.counter("documents.acl.cache", "result", "miss");
+        Gauge.builder("documents.acl.cache.size", acls, Map::size)
+                .description("Documents whose access list is cached")
+                .register(meterRegistry);
+    }
+
+    /** Whether the user owns or collaborates on the document; {@code false} if it does not exist. */
+    public boolean canEdit(long documentId, long userId) {
+        Acl acl = acls.get(documentId);
+        if (acl != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            acl = load(documentId);
+            if (acl == null) {
+                return false;
+            }
+        }
+        return acl.ownerId == userId || acl.collaborators.contains(userId);
+    }
+
+    public void documentCreated(long documentId, long ownerId) {
+        afterCommit(() -> update(documentId, ownerId, LongHashSet.EMPTY));
+    }
+
+    public void collaboratorAdded(long documentId, long userId) {
+        afterCommit(() -> change(documentId, acl -> new Acl(acl.ownerId, acl.collaborators.with(userId))));
+    }
+
+    public void collaboratorRemoved(long documentId, long userId) {
+        change(documentId, acl -> new Acl(acl.ownerId, acl.collaborators.without(userId)));
+        afterCommit(() -> change(documentId, acl -> new Acl(acl.ownerId, acl.collaborators.without(userId))));
+    }
+
+    /** Drops the entry, e.g. when the document is deleted or another node changed its collaborators. */
+    public void invalidate(long documentId) {
+        generation.incrementAndGet();
+        acls.remove(documentId);
+    }
+
+    private Acl load(long documentId) {
+        long loadedAt = generation.get();
+        Long ownerId = documentRepository.findOwnerIdById(documentId).orElse(null);
+        if (ownerId == null) {
+            return null;
+        }
+        Acl acl = new Acl(ownerId, LongHashSet.of(documentRepository.findCollaboratorIdsById(documentId)));
+        if (maxSize > 0) {
+            if (acls.size() >= maxSize) {
+                evictOverflow();
+            }
+            acls.putIfAbsent(documentId, acl);
+            if (generation.get() != loadedAt) {
+                acls.remove(documentId, acl);
+            }
+        }
+        return acl;
+    }
+
+    private void update(long documentId, long ownerId, LongHashSet collaborators) {
+        generation.incrementAndGet();
+        if (maxSize > 0) {
+            acls.put(documentId, new Acl(ownerId, collaborators));
+        }
+    }
+
+    private void change(long documentId, UnaryOperator<Acl> change) {
+        generation.incrementAndGet();
+        acls.computeIfPresent(documentId, (id, acl) -> change.apply(acl));
+    }
+
+    private void evictOverflow() {
+        int target = maxSize * 9 / 10;
+        Iterator<Long> keys = acls.keySet().iterator();
+        while (acls.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static final class Acl {
+        final long ownerId;
+        final LongHashSet collaborators;
+
+        Acl(long ownerId, LongHashSet collaborators) {
+            this.ownerId = ownerId;
+            this.collaborators = collaborators;
+        }
+    }
+}
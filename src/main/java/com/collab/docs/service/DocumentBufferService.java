@@ -0,0 +1,128 @@
+package com.collab.docs.service;
+
+import com.collab.docs.editing.CrdtDocumentBuffer;
+import com.collab.docs.editing.DocumentBuffer;
+import com.collab.docs.editing.OtDocumentBuffer;
+import com.collab.docs.model.CollaborationMode;
+import com.collab.docs.model.Document;
+import com.collab.docs.repository.DocumentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps an in-memory {@link DocumentBuffer} for every document that is being edited.
+ * The buffer is loaded from the database on first use and stays resident until it is evicted:
+ * when the document is deleted or moves to another cluster node, or by
+ * {@link DocumentService#evictIdleDocuments} once it has no editing sessions and has not been used
+ * for {@code app.documents.buffers.idle-timeout-ms}.
+ */
+@Service
+@DependsOn("contentBackfill")
+@RequiredArgsConstructor
+@Slf4j
+public class DocumentBufferService {
+    private final DocumentRepository documentRepository;
+    private final ContentStore contentStore;
+    private final Map<Long, DocumentBuffer> buffers = new ConcurrentHashMap<>();
+    /** Document id to the time (epoch millis) its buffer was last asked for by {@link #getBuffer}. */
+    private final Map<Long, Long> lastUsed = new ConcurrentHashMap<>();
+    /** Document id to the number of editing sessions joined and not yet left. */
+    private final Map<Long, Integer> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.documents.ot.history-size:10000}")
+    private int historySize;
+
+    @Value("${app.documents.crdt.gc-interval:1000}")
+    private int crdtGcInterval;
+
+    public DocumentBuffer getBuffer(Long documentId) {
+        lastUsed.put(documentId, System.currentTimeMillis());
+        DocumentBuffer buffer = buffers.get(documentId);
+        if (buffer != null) {
+            return buffer;
+        }
+        // Load outside of computeIfAbsent so that the map is not locked during the database call
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
+        DocumentBuffer loaded = createBuffer(document);
+        buffer = buffers.putIfAbsent(documentId, loaded);
+        if (buffer == null) {
+            log.debug("Loaded {} buffer for document {} at revision {} ({} chars)",
+                    loaded.getMode(), documentId, loaded.getRevision(), loaded.length());
+            return loaded;
+        }
+        return buffer;
+    }
+
+    private DocumentBuffer createBuffer(Document document) {
+        long revision = document.getRevision() != null ? document.getRevision() : 0L;
+        String content = contentStore.get(document.getContentId());
+        if (document.getCollaborationMode() == CollaborationMode.CRDT) {
+            return new CrdtDocumentBuffer(document.getId(), content, document.getCrdtState(),
+                    revision, crdtGcInterval);
+        }
+        return new OtDocumentBuffer(document.getId(), content, revision, historySize);
+    }
+
+    public DocumentBuffer getActiveBuffer(Long documentId) {
+        return buffers.get(documentId);
+    }
+
+    public List<Long> getActiveDocumentIds() {
+        return new ArrayList<>(buffers.keySet());
+    }
+
+    /** Puts back a buffer taken out by {@link #evict}, unless the document was loaded again meanwhile. */
+    public void restore(Long documentId, DocumentBuffer buffer) {
+        buffers.putIfAbsent(documentId, buffer);
+    }
+
+    public boolean isActive(Long documentId) {
+        return buffers.containsKey(documentId);
+    }
+
+    /**
+     * Buffers that have no editing sessions and were last used more than {@code idleMillis} ago.
+     * Callers must still check under the buffer lock that nothing changed before evicting.
+     */
+    public List<Long> getIdleDocumentIds(long idleMillis) {
+        List<Long> idle = new ArrayList<>();
+        for (Long documentId : buffers.keySet()) {
+            if (isIdle(documentId, idleMillis)) {
+                idle.add(documentId);
+            }
+        }
+        return idle;
+    }
+
+    public boolean isIdle(Long documentId, long idleMillis) {
+        return !sessions.containsKey(documentId)
+                && lastUsed.getOrDefault(documentId, 0L) < System.currentTimeMillis() - idleMillis;
+    }
+
+    public void sessionOpened(Long documentId) {
+        sessions.merge(documentId, 1, Integer::sum);
+    }
+
+    public void sessionClosed(Long documentId) {
+        sessions.computeIfPresent(documentId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /** Drops the buffer and its usage state; sessions still open are forgotten with it. */
+    public void evict(Long documentId) {
+        lastUsed.remove(documentId);
+        sessions.remove(documentId);
+        if (buffers.remove(documentId) != null) {
+            log.debug("Evicted buffer for document {}", documentId);
+        }
+    }
+}
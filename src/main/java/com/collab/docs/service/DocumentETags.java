@@ -0,0 +1,135 @@
+package com.collab.docs.service;
+
+import com.collab.docs.editing.DocumentBuffer;
+import com.collab.docs.model.Document;
+import com.collab.docs.repository.DocumentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityNotFoundException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Strong entity tags for documents, {@code "<version>.<revision>"}. The JPA version changes with
+ * every database write of the document, the revision with every edit, including edits so far held
+ * only in its buffer; together they change whenever {@link DocumentService#getDocument} would
+ * return something different.
+ * <p>
+ * The current tag is computed without loading the document or its body. For a document being
+ * edited on this node the revision is read from the buffer and the version from a cache that
+ * {@link DocumentService} invalidates when it writes the document, so reopening an active
+ * document is answered from memory; for other documents both numbers are read by primary key.
+ * Entries are only kept while the document has a buffer, and an entry loaded concurrently with
+ * an invalidation is dropped, as in {@link DocumentAccessControl}.
+ */
+@Component
+@RequiredArgsConstructor
+public class DocumentETags {
+    private final DocumentRepository documentRepository;
+    private final DocumentBufferService bufferService;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void initMetrics() {
+        hits = meterRegistry.counter("documents.etag.cache", "result", "hit");
+        misses = meterRegistry.counter("documents.etag.cache", "result", "miss");
+    }
+
+    public static String of(Document document) {
+        return of(document.getVersion(), document.getRevision());
+    }
+
+    static String of(Long version, Long revision) {
+        return "\"" + (version != null ? version : 0L) + "." + (revision != null ? revision : 0L) + "\"";
+    }
+
+    /**
+     * Revision part of a strong tag made by {@link #of}, or {@code null} if the value is not one,
+     * e.g. a weak tag or a list of several.
+     */
+    public static Long revisionOf(String tag) {
+        String value = tag.trim();
+        int dot = value.indexOf('.');
+        if (value.length() < 5 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"' || dot < 0) {
+            return null;
+        }
+        try {
+            Long.parseLong(value.substring(1, dot));
+            return Long.parseLong(value.substring(dot + 1, value.length() - 1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header names the tag. Uses weak comparison, as RFC 7232
+     * requires for this header.
+     */
+    public static boolean matchesAny(String header, String tag) {
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || (value.startsWith("W/") ? value.substring(2) : value).equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The tag of the document as {@link DocumentService#getDocument} would return it now. */
+    public String current(long documentId) {
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer == null) {
+            DocumentRepository.DocumentStamp stamp = load(documentId);
+            return of(stamp.getVersion(), stamp.getRevision());
+        }
+        Long version = versions.get(documentId);
+        if (version != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            long loadedAt = generation.get();
+            version = load(documentId).getVersion();
+            versions.putIfAbsent(documentId, version);
+            if (generation.get() != loadedAt || bufferService.getActiveBuffer(documentId) != buffer) {
+                versions.remove(documentId, version);
+            }
+        }
+        return of(version, buffer.getRevision());
+    }
+
+    /**
+     * Forgets the cached version because this or another node writes the document or dropped its
+     * buffer. Inside a transaction the entry is dropped again after commit, so that a tag computed
+     * meanwhile from the old version is not kept.
+     */
+    public void invalidate(long documentId) {
+        generation.incrementAndGet();
+        versions.remove(documentId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generation.incrementAndGet();
+                    versions.remove(documentId);
+                }
+            });
+        }
+    }
+
+    private DocumentRepository.DocumentStamp load(long documentId) {
+        return documentRepository.findStampById(documentId)
+                .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
+    }
+}
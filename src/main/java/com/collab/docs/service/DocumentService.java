@@ -1,41 +1,336 @@
 package com.collab.docs.service;
 
+import com.collab.docs.editing.DocumentBuffer;
+import com.collab.docs.editing.Rope;
+import com.collab.docs.history.VersionHistoryService;
+import com.collab.docs.journal.EditJournal;
+import com.collab.docs.model.CollaborationMode;
+import com.collab.docs.model.ContentBlob;
+import com.collab.docs.model.ContentRange;
 import com.collab.docs.model.Document;
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.model.DocumentPage;
+import com.collab.docs.model.DocumentSummary;
 import com.collab.docs.model.User;
 import com.collab.docs.repository.DocumentRepository;
+import com.collab.docs.search.SearchIndex;
+import com.collab.docs.websocket.CursorAggregator;
+import com.collab.docs.websocket.EditBroadcaster;
+import com.collab.docs.websocket.DocumentEditMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityNotFoundException;
+import javax.persistence.OptimisticLockException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+/**
+ * Document operations. Edits are applied to the in-memory {@link DocumentBuffer} and the document is
+ * only marked dirty; dirty documents are written back in batches every
+ * {@code app.documents.write-behind.flush-interval-ms}, as soon as {@code batch-size} documents are
+ * pending, and on shutdown. Until then the committed operations are kept in the {@link EditJournal}.
+ */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class DocumentService {
+    /** Largest page {@link #getUserDocuments} returns; larger requests are capped. */
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_RANGE_CHARS = 1 << 20;
+
     private final DocumentRepository documentRepository;
+    private final DocumentBufferService bufferService;
+    private final PlatformTransactionManager transactionManager;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+    private final EditJournal editJournal;
+    private final EditBroadcaster editBroadcaster;
+    private final DocumentAccessControl accessControl;
+    private final ContentStore contentStore;
+    private final SearchIndex searchIndex;
+    private final VersionHistoryService versionHistory;
+    private final DocumentETags etags;
+    private final CursorAggregator cursorAggregator;
+
+    /** Document id to the time (epoch millis) it first became dirty since its last flush. */
+    private final Map<Long, Long> dirtyDocuments = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${app.documents.write-behind.batch-size:100}")
+    private int flushBatchSize;
+
+    @Value("${app.documents.buffers.idle-timeout-ms:600000}")
+    private long bufferIdleTimeoutMillis;
+
+    @Value("${app.documents.import.max-size:64MB}")
+    private DataSize maxImportSize;
+
+    private TransactionTemplate transactionTemplate;
+    private Timer flushTimer;
+    private Counter flushedDocuments;
+    private Counter idleEvictions;
+
+    @PostConstruct
+    void initWriteBehind() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        flushTimer = meterRegistry.timer("documents.write_behind.flush");
+        flushedDocuments = meterRegistry.counter("documents.write_behind.flushed");
+        idleEvictions = meterRegistry.counter("documents.buffers.evicted_idle");
+        Gauge.builder("documents.write_behind.pending", dirtyDocuments, Map::size)
+                .description("Documents with edits not yet written to the database")
+                .register(meterRegistry);
+        Gauge.builder("documents.write_behind.lag", this, DocumentService::getFlushLagMillis)
+                .description("Age in milliseconds of the oldest edit not yet written to the database")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
 
     @Transactional
-    public Document createDocument(String title, String content, User owner) {
+    public Document createDocument(String title, String content, User owner, CollaborationMode mode) {
         Document document = Document.builder()
                 .title(title)
                 .content(content)
+                .contentId(contentStore.put(content))
                 .owner(owner)
+                .collaborationMode(mode != null ? mode : CollaborationMode.OT)
                 .build();
-        return documentRepository.save(document);
+        document = documentRepository.save(document);
+        versionHistory.record(document.getId(), 0L, null, document.getContentId(), content);
+        accessControl.documentCreated(document.getId(), owner.getId());
+        searchIndex.markChanged(document.getId());
+        return document;
+    }
+
+    /**
+     * Creates a document from UTF-8 text read from a stream. The text is encoded as it arrives
+     * and never held as a string; the transaction only starts once it has been read, so a slow
+     * upload does not hold a connection.
+     *
+     * @throws IllegalArgumentException if the text is not UTF-8 or exceeds {@code app.documents.import.max-size}
+     */
+    public Document importDocument(String title, InputStream content, User owner, CollaborationMode mode) throws IOException {
+        ContentBlob blob = contentStore.read(content, maxImportSize.toBytes());
+        Document document = transactionTemplate.execute(status -> {
+            Document created = documentRepository.save(Document.builder()
+                    .title(title)
+                    .contentId(contentStore.putEncoded(blob))
+                    .owner(owner)
+                    .collaborationMode(mode != null ? mode : CollaborationMode.OT)
+                    .build());
+            versionHistory.recordFirst(created.getId(), created.getContentId(), blob.getLength());
+            accessControl.documentCreated(created.getId(), owner.getId());
+            return created;
+        });
+        searchIndex.markChanged(document.getId());
+        return document;
     }
 
+    /**
+     * Writes the current content as UTF-8: the buffer's rope leaf by leaf while the document is
+     * being edited, otherwise the stored body inflated in chunks. Not transactional, so no
+     * connection is held while a slow client reads.
+     */
+    public void exportContent(Long documentId, OutputStream out) throws IOException {
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer != null) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            buffer.snapshot().writeTo(writer);
+            writer.flush();
+        } else {
+            contentStore.writeTo(getDocumentMetadata(documentId).getContentId(), out);
+        }
+    }
+
+    /**
+     * Writes a zip archive with one text file per document, one document at a time: the given
+     * ids the user may open, or all of the user's documents if {@code documentIds} is {@code null}.
+     */
+    public void exportArchive(Long userId, List<Long> documentIds, OutputStream out) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(out, StandardCharsets.UTF_8)) {
+            if (documentIds != null) {
+                for (Long documentId : documentIds) {
+                    if (canEdit(documentId, userId)) {
+                        exportEntry(zip, documentId, getDocumentMetadata(documentId).getTitle());
+                    }
+                }
+                return;
+            }
+            String cursor = null;
+            do {
+                DocumentPage page = getUserDocuments(userId, cursor, MAX_PAGE_SIZE);
+                for (DocumentSummary summary : page.getDocuments()) {
+                    exportEntry(zip, summary.getId(), summary.getTitle());
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+        }
+    }
+
+    /** File name for an exported document: its id and title, reduced to characters safe in any file system. */
+    public static String exportFileName(Long documentId, String title) {
+        String name = title == null ? "" : title.replaceAll("[^\\p{L}\\p{N} ._-]+", "_").trim();
+        if (name.length() > 100) {
+            name = name.substring(0, 100);
+        }
+        return documentId + (name.isEmpty() ? "" : "-" + name) + ".txt";
+    }
+
+    private void exportEntry(ZipOutputStream zip, Long documentId, String title) throws IOException {
+        zip.putNextEntry(new ZipEntry(exportFileName(documentId, title)));
+        exportContent(documentId, zip);
+        zip.closeEntry();
+    }
+
+    /**
+     * Loads a document with its content. If it is being edited, the content and revision are taken
+     * from its buffer, since the database copy may lag behind by up to one flush interval;
+     * otherwise the body is read from the content store. The result is for reading only: with a
+     * buffer it is a copy, so that the buffer's revision never reaches the database without its body.
+     */
     @Transactional(readOnly = true)
     public Document getDocument(Long documentId) {
-        return documentRepository.findById(documentId)
+        Document document = documentRepository.findById(documentId)
                 .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer != null) {
+            return withState(document, buffer.getState());
+        }
+        document.setContent(contentStore.get(document.getContentId()));
+        return document;
+    }
+
+    /**
+     * Loads a document without reading its body; {@link Document#getContent()} is {@code null}.
+     * As with {@link #getDocument}, a document being edited is returned as a copy carrying the
+     * buffer's revision.
+     */
+    @Transactional(readOnly = true)
+    public Document getDocumentMetadata(Long documentId) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer != null) {
+            return document.toBuilder().revision(buffer.getRevision()).build();
+        }
+        return document;
+    }
+
+    /** A copy of the document with the content, revision and last editor of {@code state}, for responses. */
+    public static Document withState(Document document, DocumentContent state) {
+        Document copy = document.toBuilder()
+                .content(state.getContent())
+                .revision(state.getVersion())
+                .build();
+        if (state.getLastModifiedBy() != null) {
+            copy.setLastModifiedBy(state.getLastModifiedBy());
+        }
+        return copy;
     }
 
     @Transactional(readOnly = true)
     public String getDocumentContent(Long documentId) {
-        Document document = getDocument(documentId);
-        return document.getContent();
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer != null) {
+            return buffer.getContent();
+        }
+        return getDocument(documentId).getContent();
+    }
+
+    /** Up to {@code length} characters from {@code offset}, at most {@link #MAX_RANGE_CHARS}. */
+    @Transactional(readOnly = true)
+    public ContentRange getContentRange(Long documentId, int offset, int length) {
+        return readRange(documentId, text -> {
+            int start = Math.max(0, Math.min(offset, text.length()));
+            return new int[]{start, start + Math.max(0, Math.min(length, text.length() - start))};
+        });
+    }
+
+    /**
+     * Lines {@code fromLine} to {@code fromLine + count - 1}, 0-based. At most
+     * {@link #MAX_RANGE_CHARS} characters are returned, so a range of very long lines may end
+     * early; {@link ContentRange#getEnd()} tells where to continue.
+     */
+    @Transactional(readOnly = true)
+    public ContentRange getLineRange(Long documentId, int fromLine, int count) {
+        return readRange(documentId, text -> {
+            int first = Math.max(0, Math.min(fromLine, text.lineCount()));
+            int last = (int) Math.min((long) first + Math.max(1, count), text.lineCount());
+            return new int[]{text.lineStart(first), text.lineStart(last)};
+        });
+    }
+
+    /**
+     * Reads a range of the current text: the buffer's rope while the document is being edited,
+     * otherwise the stored body through {@link ContentStore#getText}. Either way the rope's line
+     * index locates the range without scanning the text before it.
+     */
+    private ContentRange readRange(Long documentId, Function<Rope, int[]> bounds) {
+        Rope text;
+        long revision;
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer != null) {
+            synchronized (buffer) {
+                text = buffer.snapshot();
+                revision = buffer.getRevision();
+            }
+        } else {
+            Document document = getDocumentMetadata(documentId);
+            text = contentStore.getText(document.getContentId());
+            revision = document.getRevision() != null ? document.getRevision() : 0L;
+        }
+        int[] range = bounds.apply(text);
+        int start = range[0];
+        int end = Math.min(range[1], start + Math.min(MAX_RANGE_CHARS, text.length() - start));
+        if (end > start && end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return ContentRange.builder()
+                .documentId(documentId)
+                .revision(revision)
+                .offset(start)
+                .end(end)
+                .firstLine(text.lineOf(start))
+                .length(text.length())
+                .lineCount(text.lineCount())
+                .content(text.subSequence(start, end).toString())
+                .build();
     }
 
     @Transactional
@@ -43,38 +338,391 @@ public class DocumentService {
         return documentRepository.save(document);
     }
 
-    @Transactional
-    public Document updateDocument(Long documentId, String content) {
-        Document document = getDocument(documentId);
-        document.setContent(content);
-        document.setLastModified(LocalDateTime.now());
-        return documentRepository.save(document);
+    /**
+     * Current content and revision of a document, as sent to clients joining an editing session.
+     * CRDT documents also assign the client a site id.
+     */
+    @Transactional(readOnly = true)
+    public DocumentContent joinDocument(Long documentId) {
+        Document document = getDocumentMetadata(documentId);
+        // Counted before the buffer is taken, so that an idle eviction racing with the join sees the session
+        bufferService.sessionOpened(documentId);
+        DocumentContent state = withBuffer(documentId, DocumentBuffer::join);
+        LocalDateTime lastModified = document.getLastModified();
+        if (state.getLastModifiedAt() == null && lastModified != null) {
+            state.setLastModifiedAt(lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        return state;
+    }
+
+    public void leaveDocument(Long documentId, Integer siteId) {
+        bufferService.sessionClosed(documentId);
+        DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+        if (buffer != null) {
+            buffer.leave(siteId);
+        }
+    }
+
+    public Document updateDocument(Long documentId, String content, User user) {
+        return updateDocument(documentId, content, user.getUsername());
+    }
+
+    public Document updateDocument(Long documentId, String content, String username) {
+        return updateDocument(documentId, content, username, null);
+    }
+
+    /**
+     * Replaces the content if the document is still at {@code expectedRevision}, or unconditionally
+     * if that is {@code null}; the check and the replacement are atomic.
+     *
+     * @throws OptimisticLockException if the document has moved past the expected revision
+     */
+    public Document updateDocument(Long documentId, String content, String username, Long expectedRevision) {
+        AtomicLong journalSequence = new AtomicLong();
+        withBuffer(documentId, buffer -> {
+            if (expectedRevision != null && buffer.getRevision() != expectedRevision) {
+                throw new OptimisticLockException("Document " + documentId + " is at revision "
+                        + buffer.getRevision() + ", not " + expectedRevision);
+            }
+            List<DocumentEditMessage> committed = buffer.replaceContent(content, username,
+                    operations -> journalSequence.set(editJournal.append(documentId, operations)));
+            editBroadcaster.publish(documentId, committed, journalSequence.get());
+            return committed;
+        });
+        editJournal.awaitDurable(journalSequence.get());
+        markDirty(documentId);
+        return getDocument(documentId);
+    }
+
+    /**
+     * Applies a client edit on top of the latest revision and returns the committed operations.
+     * They are journaled and queued for broadcast, which waits until the journal record is durable;
+     * the database write is deferred to the next write-behind flush.
+     */
+    public List<DocumentEditMessage> applyEdit(Long documentId, DocumentEditMessage edit, User user) {
+        return applyEdit(documentId, edit, user.getUsername());
+    }
+
+    public List<DocumentEditMessage> applyEdit(Long documentId, DocumentEditMessage edit, String username) {
+        AtomicLong journalSequence = new AtomicLong();
+        // Journal and queue under the buffer lock so that both are in revision order. The operations
+        // are journaled before the buffer takes them, so a failed append leaves the buffer unchanged
+        List<DocumentEditMessage> committed = withBuffer(documentId, buffer -> {
+            List<DocumentEditMessage> operations = buffer.apply(edit, username,
+                    pending -> journalSequence.set(editJournal.append(documentId, pending)));
+            editBroadcaster.publish(documentId, operations, journalSequence.get());
+            return operations;
+        });
+        markDirty(documentId);
+        return committed;
+    }
+
+    /**
+     * Runs {@code action} on the document's buffer under the buffer lock. If the buffer was evicted
+     * while this call waited for the lock, the action runs on a freshly loaded buffer instead, so
+     * nothing is applied to a buffer that is no longer kept.
+     */
+    private <T> T withBuffer(Long documentId, Function<DocumentBuffer, T> action) {
+        while (true) {
+            DocumentBuffer buffer = bufferService.getBuffer(documentId);
+            synchronized (buffer) {
+                if (bufferService.getActiveBuffer(documentId) == buffer) {
+                    return action.apply(buffer);
+                }
+            }
+        }
     }
 
     @Transactional
     public void deleteDocument(Long documentId) {
-        documentRepository.deleteById(documentId);
+        dirtyDocuments.remove(documentId);
+        bufferService.evict(documentId);
+        etags.invalidate(documentId);
+        editJournal.forget(documentId);
+        cursorAggregator.forget(documentId);
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
+        documentRepository.delete(document);
+        versionHistory.deleteHistory(documentId);
+        contentStore.release(document.getContentId());
+        accessControl.invalidate(documentId);
+        searchIndex.remove(documentId);
+    }
+
+    public void markDirty(Long documentId) {
+        searchIndex.markChanged(documentId);
+        if (dirtyDocuments.putIfAbsent(documentId, System.currentTimeMillis()) == null
+                && dirtyDocuments.size() >= flushBatchSize) {
+            taskScheduler.schedule(this::flushDirtyDocuments, Instant.now());
+        }
+    }
+
+    /**
+     * Writes the latest state of every dirty document back to the database, {@code batch-size}
+     * documents per transaction. Documents whose write fails stay dirty and are retried on the next run.
+     */
+    @Scheduled(fixedDelayString = "${app.documents.write-behind.flush-interval-ms:1000}")
+    public void flushDirtyDocuments() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        try {
+            flushPending(new ArrayList<>(dirtyDocuments.keySet()), bufferService::getActiveBuffer);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the given documents back now if they are dirty, waiting for a running flush to finish,
+     * and returns the number written. Used by the journal compactor to snapshot documents whose
+     * journal backlog has grown too large.
+     * <p>
+     * A document that is not dirty has nothing newer to write; its journal is marked as covered up to
+     * the revision already in the database, which releases whatever backlog that revision includes.
+     */
+    public int snapshotDocuments(Collection<Long> documentIds) {
+        flushLock.lock();
+        try {
+            int written = flushPending(documentIds, bufferService::getActiveBuffer);
+            for (Long documentId : documentIds) {
+                if (!dirtyDocuments.containsKey(documentId)) {
+                    Optional<DocumentRepository.DocumentStamp> stamp = documentRepository.findStampById(documentId);
+                    if (stamp.isPresent()) {
+                        editJournal.markSnapshot(documentId, stamp.get().getRevision());
+                    } else {
+                        editJournal.forget(documentId);
+                    }
+                }
+            }
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the buffers of documents this node stops editing, e.g. because another cluster node
+     * now owns them, and writes them back. A buffer whose write fails is kept so that the retry
+     * still has its state.
+     */
+    public void releaseDocuments(Collection<Long> documentIds) {
+        Map<Long, DocumentBuffer> released = new HashMap<>();
+        for (Long documentId : documentIds) {
+            DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+            if (buffer != null) {
+                // Under the buffer lock no edit is half applied when the buffer leaves the map
+                synchronized (buffer) {
+                    bufferService.evict(documentId);
+                }
+                etags.invalidate(documentId);
+                cursorAggregator.forget(documentId);
+                released.put(documentId, buffer);
+            }
+        }
+        if (released.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flushPending(released.keySet(), released::get);
+        } finally {
+            flushLock.unlock();
+        }
+        released.forEach((documentId, buffer) -> {
+            if (dirtyDocuments.containsKey(documentId)) {
+                log.warn("Document {} could not be written back on release; keeping its buffer", documentId);
+                bufferService.restore(documentId, buffer);
+            }
+        });
     }
 
+    /**
+     * Evicts the buffers of documents that have no editing sessions, have not been used for
+     * {@code app.documents.buffers.idle-timeout-ms} and are fully written back, together with their
+     * cached entity tag and cursors. The next use loads the document from the database again.
+     */
+    @Scheduled(fixedDelayString = "${app.documents.buffers.eviction-interval-ms:60000}")
+    public void evictIdleDocuments() {
+        int evicted = 0;
+        for (Long documentId : bufferService.getIdleDocumentIds(bufferIdleTimeoutMillis)) {
+            DocumentBuffer buffer = bufferService.getActiveBuffer(documentId);
+            if (buffer == null || dirtyDocuments.containsKey(documentId)) {
+                continue;
+            }
+            Optional<DocumentRepository.DocumentStamp> stamp = documentRepository.findStampById(documentId);
+            if (stamp.isEmpty()) {
+                continue;
+            }
+            // Under the buffer lock no edit is half applied; one committed since the stamp was read
+            // shows as a revision the database does not have yet
+            synchronized (buffer) {
+                if (bufferService.getActiveBuffer(documentId) != buffer || dirtyDocuments.containsKey(documentId)
+                        || !bufferService.isIdle(documentId, bufferIdleTimeoutMillis)
+                        || buffer.getRevision() != stamp.get().getRevision()) {
+                    continue;
+                }
+                bufferService.evict(documentId);
+            }
+            etags.invalidate(documentId);
+            cursorAggregator.forget(documentId);
+            evicted++;
+        }
+        idleEvictions.increment(evicted);
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flushLock.lock();
+        try {
+            flushPending(new ArrayList<>(dirtyDocuments.keySet()), bufferService::getActiveBuffer);
+            if (!dirtyDocuments.isEmpty()) {
+                log.error("{} documents could not be written back on shutdown", dirtyDocuments.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    long getFlushLagMillis() {
+        long oldest = Long.MAX_VALUE;
+        for (Long dirtySince : dirtyDocuments.values()) {
+            oldest = Math.min(oldest, dirtySince);
+        }
+        return oldest == Long.MAX_VALUE ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /** Writes back those of the documents that are dirty and returns the number written. */
+    private int flushPending(Collection<Long> documentIds, Function<Long, DocumentBuffer> buffers) {
+        int written = 0;
+        Iterator<Long> pending = documentIds.iterator();
+        while (pending.hasNext()) {
+            // Take documents out of the dirty set before reading their state, so that an edit racing
+            // with the flush marks the document dirty again instead of being lost
+            Map<Long, Long> dirtySince = new HashMap<>();
+            Map<Long, DocumentContent> states = new HashMap<>();
+            while (pending.hasNext() && states.size() < flushBatchSize) {
+                Long documentId = pending.next();
+                Long since = dirtyDocuments.remove(documentId);
+                DocumentBuffer buffer = buffers.apply(documentId);
+                if (since != null && buffer != null) {
+                    dirtySince.put(documentId, since);
+                    states.put(documentId, buffer.getState());
+                }
+            }
+            if (states.isEmpty()) {
+                continue;
+            }
+
+            try {
+                flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> writeBack(states)));
+                flushedDocuments.increment(states.size());
+                written += states.size();
+                states.forEach((documentId, state) -> {
+                    editJournal.markSnapshot(documentId, state.getVersion());
+                    etags.invalidate(documentId);
+                });
+            } catch (RuntimeException ex) {
+                log.error("Write-behind flush of documents {} failed; will retry", states.keySet(), ex);
+                dirtySince.forEach(dirtyDocuments::putIfAbsent);
+            }
+        }
+        return written;
+    }
+
+    private void writeBack(Map<Long, DocumentContent> states) {
+        List<Document> documents = documentRepository.findAllById(states.keySet());
+        List<String> replacedBodies = new ArrayList<>();
+        for (Document document : documents) {
+            DocumentContent state = states.get(document.getId());
+            if (document.getRevision() == null || document.getRevision() < state.getVersion()) {
+                String contentId = contentStore.put(state.getContent());
+                if (document.getContentId() != null && !document.getContentId().equals(contentId)) {
+                    replacedBodies.add(document.getContentId());
+                }
+                versionHistory.record(document.getId(), state.getVersion(), state.getLastModifiedBy(), contentId, state.getContent());
+                document.setContentId(contentId);
+                document.setRevision(state.getVersion());
+                document.setCrdtState(state.getElements());
+                if (state.getLastModifiedBy() != null) {
+                    document.setLastModifiedBy(state.getLastModifiedBy());
+                }
+            }
+        }
+        documentRepository.saveAll(documents);
+        replacedBodies.forEach(contentStore::release);
+    }
+
+    /**
+     * A page of the documents the user owns or collaborates on, most recently modified first.
+     * Pages are cut by keyset rather than offset, so each costs the same however far the user
+     * pages; pass {@code null} for the first page and the returned cursor for the next.
+     */
     @Transactional(readOnly = true)
-    public List<Document> getUserDocuments(User user) {
-        return documentRepository.findByOwnerIdOrCollaboratorsContaining(user.getId(), user);
+    public DocumentPage getUserDocuments(Long userId, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // One extra row tells whether there is a next page without a count query
+        PageRequest rows = PageRequest.of(0, size + 1);
+        List<DocumentSummary> documents;
+        if (cursor == null || cursor.isEmpty()) {
+            documents = documentRepository.findAccessibleDocuments(userId, rows);
+        } else {
+            DocumentSummary last = decodeCursor(cursor);
+            documents = documentRepository.findAccessibleDocumentsAfter(userId, last.getLastModified(), last.getId(), rows);
+        }
+        String nextCursor = null;
+        if (documents.size() > size) {
+            documents = new ArrayList<>(documents.subList(0, size));
+            nextCursor = encodeCursor(documents.get(size - 1));
+        }
+        return DocumentPage.builder().documents(documents).nextCursor(nextCursor).build();
+    }
+
+    static String encodeCursor(DocumentSummary last) {
+        String keyset = last.getLastModified() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(keyset.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static DocumentSummary decodeCursor(String cursor) {
+        try {
+            String keyset = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = keyset.lastIndexOf('|');
+            return DocumentSummary.builder()
+                    .lastModified(LocalDateTime.parse(keyset.substring(0, separator)))
+                    .id(Long.parseLong(keyset.substring(separator + 1)))
+                    .build();
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid document list cursor", ex);
+        }
     }
 
+    /** Adds a collaborator to the document as stored, not to a copy returned for reading. */
     @Transactional
-    public void addCollaborator(Document document, User collaborator) {
+    public void addCollaborator(Long documentId, User collaborator) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
         document.getCollaborators().add(collaborator);
         documentRepository.save(document);
+        accessControl.collaboratorAdded(documentId, collaborator.getId());
+        etags.invalidate(documentId);
     }
 
     @Transactional
-    public void removeCollaborator(Document document, User collaborator) {
+    public void removeCollaborator(Long documentId, User collaborator) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new EntityNotFoundException("Document not found with id: " + documentId));
         document.getCollaborators().remove(collaborator);
         documentRepository.save(document);
+        accessControl.collaboratorRemoved(documentId, collaborator.getId());
+        etags.invalidate(documentId);
     }
 
-    @Transactional(readOnly = true)
-    public boolean canEdit(Document document, User user) {
-        return document.getOwner().equals(user) || document.getCollaborators().contains(user);
+    public boolean canEdit(Document document, Long userId) {
+        return canEdit(document.getId(), userId);
+    }
+
+    /** Checked against the cached access list; does not load the document or its collaborators. */
+    public boolean canEdit(Long documentId, Long userId) {
+        return accessControl.canEdit(documentId, userId);
     }
 }
@@ -0,0 +1,113 @@
+package com.collab.docs.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable set of positive {@code long}s in an open-addressing table with linear probing, so
+ * that membership checks need neither boxing nor pointer chasing. Zero marks an empty slot,
+ * which is why only positive values, such as database ids, can be stored. Updates return a copy.
+ */
+final class LongHashSet {
+    static final LongHashSet EMPTY = new LongHashSet(new long[0], 0);
+
+    private final long[] slots;
+    private final int size;
+
+    private LongHashSet(long[] slots, int size) {
+        this.slots = slots;
+        this.size = size;
+    }
+
+    static LongHashSet of(Collection<Long> values) {
+        long[] slots = new long[capacityFor(values.size())];
+        int size = 0;
+        for (Long value : values) {
+            if (value != null && insert(slots, value)) {
+                size++;
+            }
+        }
+        return size == 0 ? EMPTY : new LongHashSet(slots, size);
+    }
+
+    boolean contains(long value) {
+        if (value <= 0 || size == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int i = index(value, mask); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    LongHashSet with(long value) {
+        if (contains(value)) {
+            return this;
+        }
+        long[] copy = new long[capacityFor(size + 1)];
+        for (long slot : slots) {
+            if (slot != 0) {
+                insert(copy, slot);
+            }
+        }
+        insert(copy, value);
+        return new LongHashSet(copy, size + 1);
+    }
+
+    LongHashSet without(long value) {
+        if (!contains(value)) {
+            return this;
+        }
+        if (size == 1) {
+            return EMPTY;
+        }
+        // Rebuilding avoids tombstones; collaborator changes are rare compared to lookups
+        long[] copy = new long[capacityFor(size - 1)];
+        for (long slot : slots) {
+            if (slot != 0 && slot != value) {
+                insert(copy, slot);
+            }
+        }
+        return new LongHashSet(copy, size - 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] toArray() {
+        return Arrays.stream(slots).filter(slot -> slot != 0).toArray();
+    }
+
+    private static boolean insert(long[] slots, long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Only positive values can be stored: " + value);
+        }
+        int mask = slots.length - 1;
+        for (int i = index(value, mask); ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return false;
+            }
+            if (slots[i] == 0) {
+                slots[i] = value;
+                return true;
+            }
+        }
+    }
+
+    private static int index(long value, int mask) {
+        // Ids are sequential; spread them before masking
+        return Long.hashCode(value * 0x9E3779B97F4A7C15L) & mask;
+    }
+
+    /** Power of two keeping the load factor at or below one half. */
+    private static int capacityFor(int size) {
+        return Math.max(4, Integer.highestOneBit(Math.max(1, size) * 2 - 1) << 1);
+    }
+}
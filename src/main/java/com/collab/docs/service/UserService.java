@@ -2,6 +2,7 @@ package com.collab.docs.service;
 
 import com.collab.docs.model.User;
 import com.collab.docs.repository.UserRepository;
+import com.collab.docs.security.CustomUserDetailsService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -16,6 +17,7 @@ import java.util.Optional;
 public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final CustomUserDetailsService userDetailsService;
 
     @Transactional(readOnly = true)
     public Optional<User> findByUsername(String username) {
@@ -27,6 +29,11 @@ public class UserService {
         return userRepository.findById(id);
     }
 
+    /** A reference to the user for use in associations; does not load the user. */
+    public User getReference(Long id) {
+        return userRepository.getReferenceById(id);
+    }
+
     @Transactional(readOnly = true)
     public boolean existsByUsername(String username) {
         return userRepository.existsByUsername(username);
@@ -52,7 +59,9 @@ public class UserService {
                 .password(passwordEncoder.encode(password))
                 .roles(Collections.singleton("ROLE_USER"))
                 .build();
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userDetailsService.evict(username);
+        return saved;
     }
 
     @Transactional
@@ -60,6 +69,7 @@ public class UserService {
         findByUsername(username).ifPresent(user -> {
             user.setLastLogin(LocalDateTime.now());
             userRepository.save(user);
+            userDetailsService.evict(username);
         });
     }
 }
@@ -0,0 +1,277 @@
+package com.collab.docs.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the STOMP payloads, hand-written per type so that no reflection is
+ * involved. A value starts with a type tag; messages then carry a varint bit set of the fields that
+ * are present, followed by those fields in declaration order. Integers are zig-zag varints and
+ * strings a varint byte length followed by UTF-8. A list is its tag, a varint count and the
+ * elements, each with its own tag.
+ */
+public final class BinaryMessageCodec {
+    static final int EDIT = 1;
+    static final int CURSOR = 2;
+    static final int COLLABORATOR = 3;
+    static final int LIST = 4;
+
+    private static final String[] OPERATIONS = {"INSERT", "DELETE", "REPLACE"};
+
+    private BinaryMessageCodec() {
+    }
+
+    public static boolean supports(Class<?> type) {
+        return type == DocumentEditMessage.class || type == CursorPosition.class
+                || type == CollaboratorStatus.class || List.class.isAssignableFrom(type);
+    }
+
+    public static byte[] encode(Object value) {
+        Writer out = new Writer();
+        write(out, value);
+        return out.toByteArray();
+    }
+
+    public static Object decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        Object value = read(in);
+        if (in.position != bytes.length) {
+            throw new IllegalArgumentException("Trailing bytes after binary message");
+        }
+        return value;
+    }
+
+    private static void write(Writer out, Object value) {
+        if (value instanceof DocumentEditMessage) {
+            writeEdit(out, (DocumentEditMessage) value);
+        } else if (value instanceof CursorPosition) {
+            writeCursor(out, (CursorPosition) value);
+        } else if (value instanceof CollaboratorStatus) {
+            writeCollaborator(out, (CollaboratorStatus) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.varint(LIST);
+            out.varint(list.size());
+            for (Object element : list) {
+                write(out, element);
+            }
+        } else {
+            throw new IllegalArgumentException("No binary encoding for " + (value == null ? "null" : value.getClass()));
+        }
+    }
+
+    private static Object read(Reader in) {
+        int tag = (int) in.varint();
+        switch (tag) {
+            case EDIT:
+                return readEdit(in);
+            case CURSOR:
+                return readCursor(in);
+            case COLLABORATOR:
+                return readCollaborator(in);
+            case LIST:
+                int size = (int) in.varint();
+                List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            default:
+                throw new IllegalArgumentException("Unknown binary message type " + tag);
+        }
+    }
+
+    private static void writeEdit(Writer out, DocumentEditMessage edit) {
+        int operationCode = operationCode(edit.getOperation());
+        int fields = bits(edit.getContent(), edit.getStartPosition(), edit.getEndPosition(), edit.getOperation(),
+                edit.getRevision(), edit.getUsername(), edit.getSiteId(), edit.getElementId(),
+                edit.getReferenceId(), edit.getLength());
+        out.varint(EDIT);
+        out.varint(fields);
+        out.string(edit.getContent());
+        out.signed(edit.getStartPosition());
+        out.signed(edit.getEndPosition());
+        if (edit.getOperation() != null) {
+            out.varint(operationCode);
+            if (operationCode == 0) {
+                out.string(edit.getOperation());
+            }
+        }
+        out.signed(edit.getRevision());
+        out.string(edit.getUsername());
+        out.signed(edit.getSiteId());
+        out.signed(edit.getElementId());
+        out.signed(edit.getReferenceId());
+        out.signed(edit.getLength());
+    }
+
+    private static DocumentEditMessage readEdit(Reader in) {
+        int fields = (int) in.varint();
+        DocumentEditMessage edit = new DocumentEditMessage();
+        edit.setContent(has(fields, 0) ? in.string() : null);
+        edit.setStartPosition(has(fields, 1) ? in.signedInt() : null);
+        edit.setEndPosition(has(fields, 2) ? in.signedInt() : null);
+        if (has(fields, 3)) {
+            int code = (int) in.varint();
+            edit.setOperation(code == 0 ? in.string() : operation(code));
+        }
+        edit.setRevision(has(fields, 4) ? in.signed() : null);
+        edit.setUsername(has(fields, 5) ? in.string() : null);
+        edit.setSiteId(has(fields, 6) ? in.signedInt() : null);
+        edit.setElementId(has(fields, 7) ? in.signed() : null);
+        edit.setReferenceId(has(fields, 8) ? in.signed() : null);
+        edit.setLength(has(fields, 9) ? in.signedInt() : null);
+        return edit;
+    }
+
+    private static void writeCursor(Writer out, CursorPosition cursor) {
+        out.varint(CURSOR);
+        out.varint(bits(cursor.getDocumentId(), cursor.getUsername(), cursor.getLine(), cursor.getColumn()));
+        out.signed(cursor.getDocumentId());
+        out.string(cursor.getUsername());
+        out.signed(cursor.getLine());
+        out.signed(cursor.getColumn());
+    }
+
+    private static CursorPosition readCursor(Reader in) {
+        int fields = (int) in.varint();
+        CursorPosition cursor = new CursorPosition();
+        cursor.setDocumentId(has(fields, 0) ? in.signed() : null);
+        cursor.setUsername(has(fields, 1) ? in.string() : null);
+        cursor.setLine(has(fields, 2) ? in.signedInt() : null);
+        cursor.setColumn(has(fields, 3) ? in.signedInt() : null);
+        return cursor;
+    }
+
+    private static void writeCollaborator(Writer out, CollaboratorStatus status) {
+        out.varint(COLLABORATOR);
+        out.varint(bits(status.getUserId(), status.getUsername(), status.getStatus(), status.getDocumentId()));
+        out.signed(status.getUserId());
+        out.string(status.getUsername());
+        out.string(status.getStatus());
+        out.signed(status.getDocumentId());
+    }
+
+    private static CollaboratorStatus readCollaborator(Reader in) {
+        int fields = (int) in.varint();
+        CollaboratorStatus status = new CollaboratorStatus();
+        status.setUserId(has(fields, 0) ? in.signed() : null);
+        status.setUsername(has(fields, 1) ? in.string() : null);
+        status.setStatus(has(fields, 2) ? in.string() : null);
+        status.setDocumentId(has(fields, 3) ? in.signed() : null);
+        return status;
+    }
+
+    private static int bits(Object... values) {
+        int fields = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                fields |= 1 << i;
+            }
+        }
+        return fields;
+    }
+
+    private static boolean has(int fields, int index) {
+        return (fields & (1 << index)) != 0;
+    }
+
+    private static int operationCode(String operation) {
+        int index = Arrays.asList(OPERATIONS).indexOf(operation);
+        return index + 1;
+    }
+
+    private static String operation(int code) {
+        if (code > OPERATIONS.length) {
+            throw new IllegalArgumentException("Unknown operation code " + code);
+        }
+        return OPERATIONS[code - 1];
+    }
+
+    /** Growable output buffer; null values are skipped since their presence bit is clear. */
+    private static final class Writer {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        void varint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void signed(Number value) {
+            if (value != null) {
+                long v = value.longValue();
+                varint((v << 1) ^ (v >> 63));
+            }
+        }
+
+        void string(String value) {
+            if (value != null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                varint(bytes.length);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, buffer, size, bytes.length);
+                size += bytes.length;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IllegalArgumentException("Truncated binary message");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in binary message");
+        }
+
+        long signed() {
+            long v = varint();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        int signedInt() {
+            return Math.toIntExact(signed());
+        }
+
+        String string() {
+            int length = (int) varint();
+            if (length < 0 || position + length > bytes.length) {
+                throw new IllegalArgumentException("Truncated binary message");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
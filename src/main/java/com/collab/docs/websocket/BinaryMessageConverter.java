@@ -0,0 +1,53 @@
+package com.collab.docs.websocket;
+
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts STOMP payloads with content type {@value #CONTENT_TYPE} using {@link BinaryMessageCodec}.
+ * Messages without that exact content type, including the {@code codec} parameter, are left to the
+ * JSON converter.
+ * <p>
+ * The base type is {@code application/octet-stream} because the STOMP handler only sends such
+ * payloads as binary WebSocket frames. SockJS transports are text-only, so binary clients connect
+ * to the raw WebSocket path of the endpoint ({@code /ws/websocket}).
+ */
+public class BinaryMessageConverter extends AbstractMessageConverter {
+    public static final String CONTENT_TYPE = "application/octet-stream;codec=collab-v1";
+    public static final MimeType MIME_TYPE = MimeType.valueOf(CONTENT_TYPE);
+
+    public BinaryMessageConverter() {
+        super(MIME_TYPE);
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BinaryMessageCodec.supports(clazz);
+    }
+
+    @Override
+    protected boolean supportsMimeType(@Nullable MessageHeaders headers) {
+        MimeType mimeType = getMimeType(headers);
+        return mimeType != null && MIME_TYPE.equalsTypeAndSubtype(mimeType)
+                && MIME_TYPE.getParameter("codec").equals(mimeType.getParameter("codec"));
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, @Nullable Object conversionHint) {
+        Object payload = message.getPayload();
+        byte[] bytes = payload instanceof byte[] ? (byte[]) payload : payload.toString().getBytes(StandardCharsets.UTF_8);
+        Object value = BinaryMessageCodec.decode(bytes);
+        return targetClass.isInstance(value) ? value : null;
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, @Nullable MessageHeaders headers, @Nullable Object conversionHint) {
+        return BinaryMessageCodec.encode(payload);
+    }
+}
@@ -0,0 +1,114 @@
+package com.collab.docs.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces cursor updates. Only the latest position per user and document is kept, and once per
+ * {@code app.cursors.tick-ms} every document with changed cursors gets a single frame, a list of
+ * positions, on {@code /topic/document/{id}/cursors}. Positions equal to the last one sent are dropped.
+ * <p>
+ * A document's maps are removed once they are empty, i.e. after a tick sent everything pending or
+ * when its last user left, and dropped entirely by {@link #forget}. Changes to a document's maps
+ * run inside {@code compute} on the outer map, so a removal never loses a concurrent update.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CursorAggregator {
+    private final FramePublisher framePublisher;
+    private final MeterRegistry meterRegistry;
+
+    /** Document id to username to the latest position not yet broadcast. */
+    private final Map<Long, Map<String, CursorPosition>> pending = new ConcurrentHashMap<>();
+    /** Document id to username to the position last broadcast. */
+    private final Map<Long, Map<String, CursorPosition>> broadcast = new ConcurrentHashMap<>();
+
+    private Counter received;
+    private Counter dropped;
+    private Counter frames;
+    private DistributionSummary frameSize;
+
+    @PostConstruct
+    void initMetrics() {
+        received = meterRegistry.counter("documents.cursors.received");
+        dropped = meterRegistry.counter("documents.cursors.dropped");
+        frames = meterRegistry.counter("documents.cursors.frames");
+        frameSize = DistributionSummary.builder("documents.cursors.frame_size")
+                .description("Cursor positions merged into one broadcast frame")
+                .register(meterRegistry);
+    }
+
+    public void submit(Long documentId, CursorPosition position) {
+        received.increment();
+        pending.compute(documentId, (id, positions) -> {
+            if (positions == null) {
+                positions = new ConcurrentHashMap<>();
+            }
+            if (positions.put(position.getUsername(), position) != null) {
+                dropped.increment();
+            }
+            return positions;
+        });
+    }
+
+    /** Forgets the user's cursor, e.g. when they leave the document. */
+    public void remove(Long documentId, String username) {
+        removeUser(pending, documentId, username);
+        removeUser(broadcast, documentId, username);
+    }
+
+    /** Forgets every cursor of the document, e.g. when its buffer is evicted or it is deleted. */
+    public void forget(Long documentId) {
+        pending.remove(documentId);
+        broadcast.remove(documentId);
+    }
+
+    @Scheduled(fixedRateString = "${app.cursors.tick-ms:50}")
+    public void flush() {
+        pending.forEach((documentId, positions) -> {
+            if (positions.isEmpty()) {
+                pending.computeIfPresent(documentId, (id, current) -> current.isEmpty() ? null : current);
+                return;
+            }
+            Map<String, CursorPosition> sent = broadcast.computeIfAbsent(documentId, id -> new ConcurrentHashMap<>());
+            List<CursorPosition> frame = new ArrayList<>(positions.size());
+            for (Map.Entry<String, CursorPosition> entry : positions.entrySet()) {
+                // Only take the entry if no newer position replaced it meanwhile
+                if (!positions.remove(entry.getKey(), entry.getValue())) {
+                    continue;
+                }
+                if (entry.getValue().equals(sent.put(entry.getKey(), entry.getValue()))) {
+                    dropped.increment();
+                } else {
+                    frame.add(entry.getValue());
+                }
+            }
+            if (!frame.isEmpty()) {
+                framePublisher.publish("/topic/document/" + documentId + "/cursors", frame);
+                frames.increment();
+                frameSize.record(frame.size());
+            }
+            // Drop the emptied map unless a position arrived meanwhile
+            pending.computeIfPresent(documentId, (id, current) -> current.isEmpty() ? null : current);
+        });
+    }
+
+    private static void removeUser(Map<Long, Map<String, CursorPosition>> documents, Long documentId, String username) {
+        documents.computeIfPresent(documentId, (id, positions) -> {
+            positions.remove(username);
+            return positions.isEmpty() ? null : positions;
+        });
+    }
+}
@@ -12,6 +12,14 @@ import lombok.NoArgsConstructor;
 public class DocumentEditMessage {
     private String content;
     private Integer startPosition;
-    private Integer endPosition;
+    private Integer endPosition; // exclusive, used by DELETE and REPLACE
     private String operation; // INSERT, DELETE, REPLACE
+    private Long revision; // base revision when sent by a client, committed revision when broadcast
+    private String username;
+
+    // CRDT mode only: ids are encoded CrdtId values
+    private Integer siteId;
+    private Long elementId;
+    private Long referenceId;
+    private Integer length;
 }
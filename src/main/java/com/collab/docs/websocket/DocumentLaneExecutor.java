@@ -0,0 +1,143 @@
+package com.collab.docs.websocket;
+
+import com.collab.docs.config.VirtualThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Executor for the client inbound channel that runs every message sent to
+ * {@code /app/document/{documentId}/**} on one of a fixed number of single-threaded lanes, chosen
+ * by a hash of the document id. Messages for one document are therefore handled one at a time and
+ * in arrival order, while different documents spread over all lanes. Other messages (CONNECT,
+ * SUBSCRIBE, ...) run on the regular pool configured on this executor.
+ * <p>
+ * Each lane queues at most {@code queueCapacity} messages. A message for a full lane is dropped
+ * and passed to {@code onRejected}, so that one hot document or a slow handler cannot pile up
+ * inbound frames without limit.
+ * <p>
+ * With virtual threads the lanes run on virtual threads and other messages get a virtual thread
+ * each, so a handler blocked on the database parks instead of holding a pool thread.
+ */
+public class DocumentLaneExecutor extends ThreadPoolTaskExecutor {
+    private static final long serialVersionUID = 1L;
+    private static final Pattern DOCUMENT_DESTINATION = Pattern.compile("^/app/document/(\\d+)/");
+
+    private final ThreadPoolExecutor[] lanes;
+    private final ExecutorService perTask;
+    private final Timer latency;
+    private final Counter rejected;
+    private final Consumer<Message<?>> onRejected;
+
+    public DocumentLaneExecutor(int laneCount, int queueCapacity, boolean virtualThreads, MeterRegistry meterRegistry,
+                                Consumer<Message<?>> onRejected) {
+        this.onRejected = onRejected;
+        lanes = new ThreadPoolExecutor[laneCount];
+        perTask = virtualThreads ? VirtualThreads.newThreadPerTaskExecutor("client-inbound-") : null;
+        for (int i = 0; i < laneCount; i++) {
+            String name = "document-lane-" + i;
+            ThreadFactory threadFactory = virtualThreads
+                    ? VirtualThreads.factory(name + "-")
+                    : runnable -> new Thread(runnable, name);
+            ThreadPoolExecutor lane = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                    threadFactory);
+            lanes[i] = lane;
+            Gauge.builder("documents.lanes.queue_depth", lane, executor -> executor.getQueue().size())
+                    .description("Inbound messages waiting in a document lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+        latency = Timer.builder("documents.lanes.latency")
+                .description("Time from queuing an inbound document message to the end of its handling")
+                .register(meterRegistry);
+        rejected = Counter.builder("documents.lanes.rejected")
+                .description("Inbound document messages dropped because their lane was full")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Long documentId = documentIdOf(task);
+        if (documentId == null) {
+            if (perTask != null) {
+                perTask.execute(task);
+            } else {
+                super.execute(task);
+            }
+            return;
+        }
+        long queuedAt = System.nanoTime();
+        ThreadPoolExecutor lane = laneFor(documentId);
+        try {
+            lane.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    latency.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            if (lane.isShutdown()) {
+                throw ex;
+            }
+            rejected.increment();
+            onRejected.accept(((MessageHandlingRunnable) task).getMessage());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (perTask != null) {
+            perTask.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    int getLaneCount() {
+        return lanes.length;
+    }
+
+    ThreadPoolExecutor laneFor(long documentId) {
+        // Spread sequential ids so that neighbouring documents land on different lanes
+        int hash = Long.hashCode(documentId * 0x9E3779B97F4A7C15L);
+        return lanes[Math.floorMod(hash, lanes.length)];
+    }
+
+    private static Long documentIdOf(Runnable task) {
+        if (!(task instanceof MessageHandlingRunnable)) {
+            return null;
+        }
+        Message<?> message = ((MessageHandlingRunnable) task).getMessage();
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return null;
+        }
+        Matcher matcher = DOCUMENT_DESTINATION.matcher(destination);
+        if (!matcher.find()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+}
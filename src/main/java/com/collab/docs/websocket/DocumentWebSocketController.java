@@ -1,29 +1,42 @@
 package com.collab.docs.websocket;
 
-import com.collab.docs.model.Document;
-import com.collab.docs.model.User;
-import com.collab.docs.service.DocumentService;
+import com.collab.docs.cluster.ClusterRouter;
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.security.UserPrincipal;
+import com.collab.docs.service.DocumentAccessControl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.security.core.Authentication;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Controller;
 
-import java.time.LocalDateTime;
+import java.util.Map;
 
 @Controller
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentWebSocketController {
-    private final DocumentService documentService;
-    private final SimpMessagingTemplate messagingTemplate;
+    static final String CRDT_SITE_ATTRIBUTE = "crdtSite.";
+    /** Present for every document the session joined and has not left, so that a disconnect leaves it. */
+    static final String JOINED_ATTRIBUTE = "joined.";
+
+    private final ClusterRouter clusterRouter;
+    private final FramePublisher framePublisher;
+    private final CursorAggregator cursorAggregator;
+    private final PresenceRegistry presenceRegistry;
+    private final DocumentAccessControl accessControl;
 
     @MessageMapping("/document/{documentId}/join")
-    public void joinDocument(@DestinationVariable Long documentId, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
+    @SendToUser(destinations = "/queue/document.state", broadcast = false)
+    public DocumentContent joinDocument(@DestinationVariable Long documentId,
+                                        SimpMessageHeaderAccessor headerAccessor,
+                                        UserPrincipal user) {
+        authorize(documentId, user);
         log.info("User {} joined document {}", user.getUsername(), documentId);
 
         CollaboratorStatus status = CollaboratorStatus.builder()
@@ -33,14 +46,41 @@ public class DocumentWebSocketController {
                 .documentId(documentId)
                 .build();
 
-        messagingTemplate.convertAndSend("/topic/document/" + documentId + "/collaborators", status);
+        Map<String, Object> attributes = headerAccessor.getSessionAttributes();
+        if (attributes.remove(JOINED_ATTRIBUTE + documentId) != null) {
+            // Joining again replaces the earlier join of this session
+            clusterRouter.leaveDocument(documentId, (Integer) attributes.remove(CRDT_SITE_ATTRIBUTE + documentId));
+        }
+        DocumentContent state = clusterRouter.joinDocument(documentId);
+        attributes.put(JOINED_ATTRIBUTE + documentId, Boolean.TRUE);
+        if (state.getSiteId() != null) {
+            attributes.put(CRDT_SITE_ATTRIBUTE + documentId, state.getSiteId());
+        }
+
+        // Further sessions of a user already present (other tabs) are not announced again
+        if (presenceRegistry.join(documentId, headerAccessor.getSessionId(), status)) {
+            framePublisher.publish("/topic/document/" + documentId + "/collaborators", status);
+        }
+        return state;
     }
 
     @MessageMapping("/document/{documentId}/leave")
-    public void leaveDocument(@DestinationVariable Long documentId, Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
+    public void leaveDocument(@DestinationVariable Long documentId,
+                              SimpMessageHeaderAccessor headerAccessor,
+                              UserPrincipal user) {
         log.info("User {} left document {}", user.getUsername(), documentId);
 
+        Map<String, Object> attributes = headerAccessor.getSessionAttributes();
+        Integer siteId = (Integer) attributes.remove(CRDT_SITE_ATTRIBUTE + documentId);
+        if (attributes.remove(JOINED_ATTRIBUTE + documentId) != null) {
+            clusterRouter.leaveDocument(documentId, siteId);
+        }
+        if (presenceRegistry.leave(documentId, headerAccessor.getSessionId()) == null) {
+            // The user is still present in another session
+            return;
+        }
+        cursorAggregator.remove(documentId, user.getUsername());
+
         CollaboratorStatus status = CollaboratorStatus.builder()
                 .userId(user.getId())
                 .username(user.getUsername())
@@ -48,32 +88,49 @@ public class DocumentWebSocketController {
                 .documentId(documentId)
                 .build();
 
-        messagingTemplate.convertAndSend("/topic/document/" + documentId + "/collaborators", status);
+        framePublisher.publish("/topic/document/" + documentId + "/collaborators", status);
     }
 
     @MessageMapping("/document/{documentId}/edit")
     public void handleDocumentEdit(@DestinationVariable Long documentId,
                                  @Payload DocumentEditMessage editMessage,
-                                 Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        log.info("User {} edited document {}", user.getUsername(), documentId);
+                                 SimpMessageHeaderAccessor headerAccessor,
+                                 UserPrincipal user) {
+        authorize(documentId, user);
+        log.debug("User {} edited document {}", user.getUsername(), documentId);
 
-        Document document = documentService.getDocument(documentId);
-        document.setContent(editMessage.getContent());
-        document.setLastModified(LocalDateTime.now());
-        documentService.save(document);
+        // A CRDT edit counts for the site this session was given on join, whatever the client claims,
+        // so that no client can advance another site's acknowledgements
+        editMessage.setSiteId((Integer) headerAccessor.getSessionAttributes().get(CRDT_SITE_ATTRIBUTE + documentId));
 
-        messagingTemplate.convertAndSend("/topic/document/" + documentId + "/content", editMessage);
+        // Committed operations reach all subscribers, including the author, through the EditBroadcaster
+        // of the node owning the document
+        clusterRouter.applyEdit(documentId, editMessage, user.getUsername());
     }
 
     @MessageMapping("/document/{documentId}/cursor")
     public void handleCursorMove(@DestinationVariable Long documentId,
                                @Payload CursorPosition cursorPosition,
-                               Authentication authentication) {
-        User user = (User) authentication.getPrincipal();
-        log.info("User {} moved cursor in document {}", user.getUsername(), documentId);
+                               UserPrincipal user) {
+        authorize(documentId, user);
+        log.trace("User {} moved cursor in document {}", user.getUsername(), documentId);
 
+        cursorPosition.setDocumentId(documentId);
         cursorPosition.setUsername(user.getUsername());
-        messagingTemplate.convertAndSend("/topic/document/" + documentId + "/cursors", cursorPosition);
+        cursorAggregator.submit(documentId, cursorPosition);
+    }
+
+    @MessageExceptionHandler({IllegalArgumentException.class, AccessDeniedException.class})
+    @SendToUser("/queue/errors")
+    public String handleInvalidEdit(RuntimeException ex) {
+        log.warn("Rejected edit: {}", ex.getMessage());
+        return ex.getMessage();
+    }
+
+    /** Checked on every message against the cached access list, so revocations apply at once. */
+    private void authorize(Long documentId, UserPrincipal user) {
+        if (!accessControl.canEdit(documentId, user.getId())) {
+            throw new AccessDeniedException("Not allowed to edit document " + documentId);
+        }
     }
 }
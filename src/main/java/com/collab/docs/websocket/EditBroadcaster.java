@@ -0,0 +1,94 @@
+package com.collab.docs.websocket;
+
+import com.collab.docs.journal.EditJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Outbound batching of committed operations. Operations are queued per document and, once per
+ * {@code app.broadcast.tick-ms}, everything queued for a document is sent as one frame, a list in
+ * revision order, on {@code /topic/document/{id}/content}.
+ * <p>
+ * An operation is only sent once its journal record is durable, so no client sees an edit that
+ * could be lost in a crash.
+ * <p>
+ * A drained queue is removed; queues are filled inside {@code compute} on the map, so the removal
+ * never drops an operation queued at the same time.
+ */
+@Component
+@RequiredArgsConstructor
+public class EditBroadcaster {
+    private final FramePublisher framePublisher;
+    private final EditJournal editJournal;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<Long, Queue<PendingOperation>> pending = new ConcurrentHashMap<>();
+
+    private Counter frames;
+    private DistributionSummary batchSize;
+
+    @PostConstruct
+    void initMetrics() {
+        frames = meterRegistry.counter("documents.broadcast.frames");
+        batchSize = DistributionSummary.builder("documents.broadcast.batch_size")
+                .description("Committed operations sent in one broadcast frame")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues operations for the next frame. Callers publish while holding the document's buffer
+     * lock so that the queue stays in revision order.
+     */
+    public void publish(Long documentId, List<DocumentEditMessage> committed, long journalSequence) {
+        pending.compute(documentId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ConcurrentLinkedQueue<>();
+            }
+            for (DocumentEditMessage operation : committed) {
+                queue.add(new PendingOperation(operation, journalSequence));
+            }
+            return queue;
+        });
+    }
+
+    @Scheduled(fixedRateString = "${app.broadcast.tick-ms:10}")
+    public void flush() {
+        long durable = editJournal.getDurableSequence();
+        pending.forEach((documentId, queue) -> {
+            List<DocumentEditMessage> batch = new ArrayList<>();
+            PendingOperation next;
+            while ((next = queue.peek()) != null && next.journalSequence <= durable) {
+                queue.poll();
+                batch.add(next.operation);
+            }
+            if (!batch.isEmpty()) {
+                framePublisher.publish("/topic/document/" + documentId + "/content", batch);
+                frames.increment();
+                batchSize.record(batch.size());
+            }
+            pending.computeIfPresent(documentId, (id, current) -> current.isEmpty() ? null : current);
+        });
+    }
+
+    private static final class PendingOperation {
+        final DocumentEditMessage operation;
+        final long journalSequence;
+
+        PendingOperation(DocumentEditMessage operation, long journalSequence) {
+            this.operation = operation;
+            this.journalSequence = journalSequence;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.collab.docs.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Sends broadcast frames whose payload is serialized exactly once per encoding: JSON on the
+ * destination itself and, if {@code app.websocket.binary-topics} is enabled, the
+ * {@link BinaryMessageCodec} form on the same destination with a {@code .bin} suffix. The broker
+ * hands the same serialized body to every subscriber. A {@link FrameRelay} bean, if present, gets
+ * each serialized frame as well.
+ * <p>
+ * Binary topics are off by default, since every frame then costs a second serialization whether or
+ * not anyone subscribed to the {@code .bin} destination. A payload the binary codec cannot encode
+ * is logged and still sent as JSON.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FramePublisher {
+    static final String BINARY_SUFFIX = ".bin";
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<FrameRelay> frameRelay;
+
+    @Value("${app.websocket.binary-topics:false}")
+    private boolean binaryTopics;
+
+    public void publish(String destination, Object payload) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException ex) {
+            log.error("Failed to serialize frame for {}", destination, ex);
+            return;
+        }
+        byte[] binary = null;
+        if (binaryTopics) {
+            try {
+                binary = BinaryMessageCodec.encode(payload);
+            } catch (IllegalArgumentException ex) {
+                log.error("Failed to encode binary frame for {}", destination, ex);
+            }
+        }
+        publish(destination, json, MimeTypeUtils.APPLICATION_JSON);
+        if (binary != null) {
+            publish(destination + BINARY_SUFFIX, binary, BinaryMessageConverter.MIME_TYPE);
+        }
+    }
+
+    private void publish(String destination, byte[] body, MimeType contentType) {
+        deliver(destination, body, contentType);
+        FrameRelay relay = frameRelay.getIfAvailable();
+        if (relay != null) {
+            relay.relay(destination, body, contentType);
+        }
+    }
+
+    /** Sends an already serialized frame to the local broker only. */
+    public void deliver(String destination, byte[] body, MimeType contentType) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setContentType(contentType);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(body, headers.getMessageHeaders()));
+    }
+}
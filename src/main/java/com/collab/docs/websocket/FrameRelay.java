@@ -0,0 +1,11 @@
+package com.collab.docs.websocket;
+
+import org.springframework.util.MimeType;
+
+/**
+ * Receives every frame {@link FramePublisher} sends to the local broker, e.g. to pass it on to the
+ * other nodes of a cluster.
+ */
+public interface FrameRelay {
+    void relay(String destination, byte[] body, MimeType contentType);
+}
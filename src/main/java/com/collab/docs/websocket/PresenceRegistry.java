@@ -0,0 +1,119 @@
+package com.collab.docs.websocket;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is present in which document, tracked per WebSocket session. A user with several sessions on
+ * one document (e.g. two tabs) is listed once; {@link #join} and {@link #leave} report whether the
+ * call made the user appear or disappear, so that JOINED and LEFT are only broadcast then. All
+ * operations are constant time except {@link #removeSession}, which is linear in the documents of
+ * the session.
+ */
+@Component
+public class PresenceRegistry {
+    /** Document id to username to the user's presence. */
+    private final Map<Long, Map<String, Presence>> documents = new ConcurrentHashMap<>();
+    /** Session id to the user and the documents joined in it. */
+    private final Map<String, SessionPresence> sessions = new ConcurrentHashMap<>();
+
+    /** Registers the session in the document; returns {@code true} if the user was not present yet. */
+    public boolean join(Long documentId, String sessionId, CollaboratorStatus status) {
+        sessions.computeIfAbsent(sessionId, id -> new SessionPresence(status.getUsername())).documents.add(documentId);
+        boolean[] first = new boolean[1];
+        // Updates of one document run inside compute, so they are atomic with the removal of an
+        // emptied document
+        documents.compute(documentId, (id, present) -> {
+            if (present == null) {
+                present = new ConcurrentHashMap<>();
+            }
+            Presence presence = present.computeIfAbsent(status.getUsername(), username -> new Presence(status));
+            first[0] = presence.sessions.isEmpty();
+            presence.sessions.add(sessionId);
+            return present;
+        });
+        return first[0];
+    }
+
+    /**
+     * Removes the session from the document. Returns the user's status if this was their last
+     * session there, i.e. if they left, and {@code null} otherwise.
+     */
+    public CollaboratorStatus leave(Long documentId, String sessionId) {
+        SessionPresence session = sessions.get(sessionId);
+        if (session == null || !session.documents.remove(documentId)) {
+            return null;
+        }
+        return remove(documentId, sessionId, session.username);
+    }
+
+    /**
+     * Removes a closed session from every document it joined and returns the statuses of the users
+     * who thereby left, keyed by document id.
+     */
+    public Map<Long, CollaboratorStatus> removeSession(String sessionId) {
+        SessionPresence session = sessions.remove(sessionId);
+        if (session == null) {
+            return Collections.emptyMap();
+        }
+        Map<Long, CollaboratorStatus> left = new HashMap<>();
+        for (Long documentId : session.documents) {
+            CollaboratorStatus status = remove(documentId, sessionId, session.username);
+            if (status != null) {
+                left.put(documentId, status);
+            }
+        }
+        return left;
+    }
+
+    /** Users currently present in the document. */
+    public List<CollaboratorStatus> getCollaborators(Long documentId) {
+        Map<String, Presence> present = documents.get(documentId);
+        if (present == null) {
+            return Collections.emptyList();
+        }
+        List<CollaboratorStatus> collaborators = new ArrayList<>(present.size());
+        present.values().forEach(presence -> collaborators.add(presence.status));
+        return collaborators;
+    }
+
+    private CollaboratorStatus remove(Long documentId, String sessionId, String username) {
+        CollaboratorStatus[] left = new CollaboratorStatus[1];
+        documents.computeIfPresent(documentId, (id, present) -> {
+            Presence presence = present.get(username);
+            if (presence != null && presence.sessions.remove(sessionId) && presence.sessions.isEmpty()) {
+                present.remove(username);
+                left[0] = presence.status;
+            }
+            return present.isEmpty() ? null : present;
+        });
+        return left[0];
+    }
+
+    private static final class Presence {
+        final CollaboratorStatus status;
+        /** Only accessed inside {@code documents.compute}. */
+        final Set<String> sessions = new HashSet<>();
+
+        Presence(CollaboratorStatus status) {
+            this.status = status;
+        }
+    }
+
+    private static final class SessionPresence {
+        final String username;
+        final Set<Long> documents = ConcurrentHashMap.newKeySet();
+
+        SessionPresence(String username) {
+            this.username = username;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.collab.docs.websocket;
+
+import com.collab.docs.security.UserPrincipal;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.handler.invocation.HandlerMethodArgumentResolver;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+
+import java.security.Principal;
+
+/**
+ * Resolves {@link UserPrincipal} parameters of message handlers to the principal bound to the
+ * STOMP session at CONNECT, taken from the message's user header.
+ */
+public class UserPrincipalArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return UserPrincipal.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, Message<?> message) {
+        Principal user = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        if (user instanceof Authentication && ((Authentication) user).getPrincipal() instanceof UserPrincipal) {
+            return ((Authentication) user).getPrincipal();
+        }
+        throw new AuthenticationCredentialsNotFoundException("No authenticated user on message");
+    }
+}
@@ -1,42 +1,108 @@
 package com.collab.docs.websocket;
 
+import com.collab.docs.cluster.ClusterRouter;
+import com.collab.docs.security.UserPrincipal;
+import com.collab.docs.service.DocumentAccessControl;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class WebSocketEventListener {
+    private static final Pattern COLLABORATORS_TOPIC = Pattern.compile("^/topic/document/(\\d+)/collaborators$");
 
     private final SimpMessageSendingOperations messagingTemplate;
+    private final FramePublisher framePublisher;
+    private final PresenceRegistry presenceRegistry;
+    private final CursorAggregator cursorAggregator;
+    private final ClusterRouter clusterRouter;
+    private final DocumentAccessControl accessControl;
 
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectedEvent event) {
         log.info("Received a new web socket connection");
     }
 
+    /**
+     * Sends a session subscribing to a document's collaborator updates the list of users already
+     * present, on {@code /user/queue/document.collaborators}. The subscription itself was authorized
+     * by {@link com.collab.docs.security.StompAuthenticationInterceptor}; access is checked again
+     * so that no presence is gathered from the cluster for a user who may not open the document.
+     */
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = headerAccessor.getDestination();
+        Matcher matcher = destination != null ? COLLABORATORS_TOPIC.matcher(destination) : null;
+        if (matcher == null || !matcher.matches()) {
+            return;
+        }
+        Long documentId = Long.parseLong(matcher.group(1));
+        Principal user = event.getUser();
+        if (!canEdit(documentId, user)) {
+            log.warn("Not sending presence of document {} to unauthorized session {}", documentId, headerAccessor.getSessionId());
+            return;
+        }
+        List<CollaboratorStatus> collaborators = clusterRouter.getCollaborators(documentId);
+
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(headerAccessor.getSessionId());
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(user.getName(),
+                "/queue/document.collaborators", collaborators, headers.getMessageHeaders());
+    }
+
+    private boolean canEdit(long documentId, Principal user) {
+        if (user instanceof Authentication && ((Authentication) user).getPrincipal() instanceof UserPrincipal) {
+            return accessControl.canEdit(documentId, ((UserPrincipal) ((Authentication) user).getPrincipal()).getId());
+        }
+        return false;
+    }
+
     @EventListener
     public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
         SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
-        String username = (String) headerAccessor.getSessionAttributes().get("username");
-        String documentId = (String) headerAccessor.getSessionAttributes().get("documentId");
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
 
-        if (username != null && documentId != null) {
-            log.info("User {} disconnected from document {}", username, documentId);
+        // Leave the documents the client did not leave explicitly, giving back their CRDT sites
+        if (sessionAttributes != null) {
+            sessionAttributes.forEach((name, value) -> {
+                if (name.startsWith(DocumentWebSocketController.JOINED_ATTRIBUTE)) {
+                    String documentId = name.substring(DocumentWebSocketController.JOINED_ATTRIBUTE.length());
+                    Integer siteId = (Integer) sessionAttributes.get(DocumentWebSocketController.CRDT_SITE_ATTRIBUTE + documentId);
+                    clusterRouter.leaveDocument(Long.parseLong(documentId), siteId);
+                }
+            });
+        }
+
+        presenceRegistry.removeSession(event.getSessionId()).forEach((documentId, present) -> {
+            log.info("User {} disconnected from document {}", present.getUsername(), documentId);
+            cursorAggregator.remove(documentId, present.getUsername());
 
             CollaboratorStatus status = CollaboratorStatus.builder()
-                    .username(username)
-                    .action("LEAVE")
-                    .documentId(Long.parseLong(documentId))
+                    .userId(present.getUserId())
+                    .username(present.getUsername())
+                    .status("LEFT")
+                    .documentId(documentId)
                     .build();
 
-            messagingTemplate.convertAndSend("/topic/document/" + documentId + "/collaborators", status);
-        }
+            framePublisher.publish("/topic/document/" + documentId + "/collaborators", status);
+        });
     }
 }
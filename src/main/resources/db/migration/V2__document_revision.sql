@@ -0,0 +1,2 @@
+-- Server revision used by operational transformation
+ALTER TABLE documents ADD COLUMN revision BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,2 @@
+-- Conflict resolution strategy per document: OT or CRDT
+ALTER TABLE documents ADD COLUMN collaboration_mode VARCHAR(10) NOT NULL DEFAULT 'OT';
@@ -0,0 +1,2 @@
+-- Run layout of CRDT documents, written together with content and revision
+ALTER TABLE documents ADD COLUMN crdt_state TEXT;
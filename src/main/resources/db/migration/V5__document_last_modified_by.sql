@@ -0,0 +1,2 @@
+-- Author of the latest edit included in the persisted snapshot
+ALTER TABLE documents ADD COLUMN last_modified_by VARCHAR(255);
@@ -0,0 +1,2 @@
+-- Keyset pagination of document listings: newest first per owner, ties broken by id
+CREATE INDEX idx_documents_owner_last_modified ON documents(owner_id, last_modified, id);
@@ -0,0 +1,10 @@
+-- Document bodies stored once per distinct content, keyed by the SHA-256 of the text;
+-- documents.content_id refers to them
+CREATE TABLE content_blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    body TEXT NOT NULL,
+    length INTEGER NOT NULL,
+    created_at TIMESTAMP
+);
+
+ALTER TABLE documents ALTER COLUMN content_id TYPE VARCHAR(64);
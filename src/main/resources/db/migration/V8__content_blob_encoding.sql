@@ -0,0 +1,4 @@
+-- Bodies are now written to data, prefixed with a format byte and possibly compressed;
+-- rows written before keep their text in body and are read from there
+ALTER TABLE content_blobs ADD COLUMN data BYTEA;
+ALTER TABLE content_blobs ALTER COLUMN body DROP NOT NULL;
@@ -0,0 +1,17 @@
+-- Version history: checkpoints refer to a content blob, other versions hold a reverse delta
+-- from the next version's body
+CREATE TABLE document_versions (
+    id BIGSERIAL PRIMARY KEY,
+    document_id BIGINT NOT NULL,
+    version BIGINT NOT NULL,
+    revision BIGINT NOT NULL,
+    content_id VARCHAR(64),
+    delta BYTEA,
+    length INTEGER NOT NULL,
+    modified_by VARCHAR(50),
+    created_at TIMESTAMP,
+    CONSTRAINT uk_document_versions_version UNIQUE (document_id, version)
+);
+
+-- Checked whenever a content blob is released
+CREATE INDEX idx_document_versions_content ON document_versions (content_id);
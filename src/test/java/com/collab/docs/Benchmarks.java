@@ -0,0 +1,37 @@
+package com.collab.docs;
+
+/**
+ * Timing loop shared by the main-method benchmarks in the test tree; the project has no JMH. They
+ * are not unit tests. Run one from the IDE or with
+ * {@code java -cp target/classes:target/test-classes:<dependencies> <benchmark class>}.
+ */
+public final class Benchmarks {
+    private static volatile Object sink;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs {@code operation} {@code warmupRounds} times, then {@code rounds} times, and returns the
+     * mean time per measured run in nanoseconds. Results go to a volatile field so that the JIT
+     * cannot drop the work.
+     */
+    public static double nanosPerOp(long warmupRounds, long rounds, Operation operation) throws Exception {
+        for (long i = 0; i < warmupRounds; i++) {
+            sink = operation.run();
+        }
+        long start = System.nanoTime();
+        for (long i = 0; i < rounds; i++) {
+            sink = operation.run();
+        }
+        return (System.nanoTime() - start) / (double) rounds;
+    }
+
+    public static double megabytesPerSecond(long bytesPerOp, double nanosPerOp) {
+        return bytesPerOp / (1024.0 * 1024.0) / (nanosPerOp / 1e9);
+    }
+
+    public interface Operation {
+        Object run() throws Exception;
+    }
+}
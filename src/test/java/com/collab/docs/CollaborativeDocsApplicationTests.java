@@ -0,0 +1,22 @@
+package com.collab.docs;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.web.SecurityFilterChain;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class CollaborativeDocsApplicationTests {
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    void contextLoads_DefaultProfile_HasOneSecurityFilterChain() {
+        // Assert
+        assertEquals(1, context.getBeansOfType(SecurityFilterChain.class).size());
+    }
+}
@@ -0,0 +1,207 @@
+package com.collab.docs.cluster;
+
+import com.collab.docs.websocket.FramePublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Runs two nodes on localhost talking over real sockets. */
+class ClusterNodeTest {
+
+    private static final String SECRET = "test-cluster-secret";
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private int secondPort;
+    private ClusterNode first;
+    private ClusterNode second;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        secondPort = freePort();
+        String members = "node-1=localhost:" + freePort() + ",node-2=localhost:" + secondPort;
+        first = node("node-1", members, SECRET);
+        second = node("node-2", members, SECRET);
+        first.start();
+        second.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        first.stop();
+        second.stop();
+    }
+
+    @Test
+    void request_HandledByOtherNode_ReturnsResponseBody() {
+        // Arrange
+        second.setRequestHandler((kind, documentId, origin, body) ->
+                (origin + ":" + kind + ":" + documentId + ":" + new String(body, StandardCharsets.UTF_8))
+                        .getBytes(StandardCharsets.UTF_8));
+
+        // Act
+        byte[] response = first.call("node-2", (byte) 7, 42L, "hello".getBytes(StandardCharsets.UTF_8));
+
+        // Assert
+        assertEquals("node-1:7:42:hello", new String(response, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void request_HandlerRejects_ThrowsIllegalArgument() {
+        // Arrange
+        second.setRequestHandler((kind, documentId, origin, body) -> {
+            throw new IllegalArgumentException("Stale revision");
+        });
+
+        // Act & Assert
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> first.call("node-2", (byte) 1, 42L, new byte[0]));
+        assertEquals("Stale revision", ex.getMessage());
+    }
+
+    @Test
+    void relay_FramePublishedOnOneNode_DeliveredOnTheOther() throws Exception {
+        // Arrange
+        awaitMembers(first, 2);
+
+        // Act
+        first.relay("/topic/document/42/content", "[]".getBytes(StandardCharsets.UTF_8), MimeTypeUtils.APPLICATION_JSON);
+
+        // Assert
+        long deadline = System.currentTimeMillis() + 2000;
+        while (delivered.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("/topic/document/42/content application/json []"), delivered);
+    }
+
+    @Test
+    void ownerOf_BothNodes_AgreeAndSplitDocuments() {
+        // Act & Assert
+        int local = 0;
+        for (long documentId = 1; documentId <= 1000; documentId++) {
+            assertEquals(first.ownerOf(documentId), second.ownerOf(documentId));
+            if (first.isLocal(documentId)) {
+                local++;
+            }
+        }
+        assertTrue(local > 300 && local < 700, "node-1 owns " + local);
+    }
+
+    @Test
+    void membership_NodeStops_OtherNodeTakesOverAllDocuments() throws Exception {
+        // Arrange
+        CompletableFuture<ConsistentHashRing> changed = new CompletableFuture<>();
+        first.setOwnershipListener((previous, current) -> changed.complete(current));
+        awaitMembers(first, 2);
+
+        // Act
+        second.stop();
+
+        // Assert
+        ConsistentHashRing ring = changed.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("node-1"), List.copyOf(ring.getNodes()));
+        assertTrue(first.isLocal(42L));
+        assertTrue(first.isLocal(43L));
+    }
+
+    @Test
+    void request_SenderWithWrongSecret_IsRefused() throws IOException {
+        // Arrange
+        AtomicInteger handled = new AtomicInteger();
+        second.setRequestHandler((kind, documentId, origin, body) -> {
+            handled.incrementAndGet();
+            return new byte[0];
+        });
+        ClusterNode impostor = node("node-1", "node-1=localhost:" + freePort() + ",node-2=localhost:" + secondPort, "guessed");
+        impostor.start();
+
+        // Act & Assert
+        try {
+            assertThrows(IllegalStateException.class, () -> impostor.call("node-2", (byte) 1, 42L, new byte[0]));
+            assertEquals(0, handled.get());
+        } finally {
+            impostor.stop();
+        }
+    }
+
+    @Test
+    void request_WithoutHandshake_ConnectionClosedUnread() throws IOException {
+        // Arrange
+        AtomicInteger handled = new AtomicInteger();
+        second.setRequestHandler((kind, documentId, origin, body) -> {
+            handled.incrementAndGet();
+            return new byte[0];
+        });
+
+        try (Socket socket = new Socket("localhost", secondPort)) {
+            socket.setSoTimeout(2000);
+
+            // Act
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            ClusterMessage.request(1L, "node-1", (byte) 1, 42L, new byte[0]).write(out);
+            out.flush();
+
+            // Assert: the node sends its own greeting, then hangs up
+            InputStream in = socket.getInputStream();
+            while (in.read() >= 0) {
+                // drain
+            }
+            assertEquals(0, handled.get());
+        }
+    }
+
+    private ClusterNode node(String nodeId, String members, String secret) {
+        FramePublisher publisher = new FramePublisher(null, null, null) {
+            @Override
+            public void deliver(String destination, byte[] body, MimeType contentType) {
+                delivered.add(destination + " " + contentType + " " + new String(body, StandardCharsets.UTF_8));
+            }
+        };
+        ClusterNode node = new ClusterNode(publisher, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(node, "enabled", true);
+        ReflectionTestUtils.setField(node, "nodeId", nodeId);
+        ReflectionTestUtils.setField(node, "members", members);
+        ReflectionTestUtils.setField(node, "secret", secret);
+        ReflectionTestUtils.setField(node, "virtualNodes", 64);
+        ReflectionTestUtils.setField(node, "heartbeatMillis", 100L);
+        ReflectionTestUtils.setField(node, "failureTimeoutMillis", 500L);
+        ReflectionTestUtils.setField(node, "requestTimeoutMillis", 2000L);
+        return node;
+    }
+
+    private static void awaitMembers(ClusterNode node, int count) throws InterruptedException {
+        // Both nodes start out with the full member list; wait for a heartbeat to have connected
+        long deadline = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < deadline) {
+            if (node.getRing().getNodes().size() == count) {
+                Thread.sleep(200);
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
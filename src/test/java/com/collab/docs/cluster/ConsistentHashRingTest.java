@@ -0,0 +1,85 @@
+package com.collab.docs.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsistentHashRingTest {
+
+    private static final int DOCUMENTS = 30_000;
+
+    @Test
+    void ownerOf_SameMembersInAnyOrder_SameOwners() {
+        // Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 128);
+        ConsistentHashRing shuffled = new ConsistentHashRing(List.of("node-3", "node-1", "node-2"), 128);
+
+        // Act & Assert
+        for (long documentId = 1; documentId <= 1000; documentId++) {
+            assertEquals(ring.ownerOf(documentId), shuffled.ownerOf(documentId));
+        }
+    }
+
+    @Test
+    void ownerOf_ThreeNodes_SpreadsDocumentsEvenly() {
+        // Arrange
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+
+        // Act
+        for (long documentId = 1; documentId <= DOCUMENTS; documentId++) {
+            counts.merge(ring.ownerOf(documentId), 1, Integer::sum);
+        }
+
+        // Assert
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - DOCUMENTS / 3) < DOCUMENTS / 3 * 0.25, "unbalanced: " + counts);
+        }
+    }
+
+    @Test
+    void ownerOf_NodeJoins_OnlyMovesDocumentsToNewNode() {
+        // Arrange
+        ConsistentHashRing before = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("node-1", "node-2", "node-3", "node-4"), 128);
+        int moved = 0;
+
+        // Act
+        for (long documentId = 1; documentId <= DOCUMENTS; documentId++) {
+            String oldOwner = before.ownerOf(documentId);
+            String newOwner = after.ownerOf(documentId);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("node-4", newOwner);
+                moved++;
+            }
+        }
+
+        // Assert
+        assertTrue(moved > DOCUMENTS / 4 * 0.75 && moved < DOCUMENTS / 4 * 1.25, "moved " + moved);
+    }
+
+    @Test
+    void ownerOf_NodeLeaves_KeepsOwnersOfOtherNodes() {
+        // Arrange
+        ConsistentHashRing before = new ConsistentHashRing(List.of("node-1", "node-2", "node-3"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("node-1", "node-3"), 128);
+
+        // Act & Assert
+        for (long documentId = 1; documentId <= DOCUMENTS; documentId++) {
+            String oldOwner = before.ownerOf(documentId);
+            if (!oldOwner.equals("node-2")) {
+                assertEquals(oldOwner, after.ownerOf(documentId));
+            }
+        }
+    }
+
+    @Test
+    void ownerOf_EmptyRing_ReturnsNull() {
+        assertNull(new ConsistentHashRing(List.of(), 16).ownerOf(42));
+    }
+}
@@ -0,0 +1,91 @@
+package com.collab.docs.config;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedDataSourceTest {
+
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Test
+    void getConnection_LimitReached_FailsAfterTimeout() throws Exception {
+        // Arrange
+        BoundedDataSource dataSource = new BoundedDataSource(target(), 2, 50);
+        dataSource.getConnection();
+        dataSource.getConnection();
+
+        // Act
+        long start = System.nanoTime();
+        SQLTransientConnectionException ex = assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+
+        // Assert
+        assertTrue(System.nanoTime() - start >= 40_000_000L);
+        assertTrue(ex.getMessage().contains("50 ms"));
+        assertEquals(0, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void close_ReleasesPermitOnce() throws Exception {
+        // Arrange
+        BoundedDataSource dataSource = new BoundedDataSource(target(), 1, 50);
+        Connection connection = dataSource.getConnection();
+
+        // Act
+        connection.close();
+        connection.close();
+
+        // Assert
+        assertEquals(1, dataSource.getAvailablePermits());
+        assertEquals(2, closed.get());
+        assertNotNull(dataSource.getConnection());
+    }
+
+    @Test
+    void getConnection_TargetFails_ReleasesPermit() {
+        // Arrange
+        DataSource failing = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    throw new SQLException("database down");
+                });
+        BoundedDataSource dataSource = new BoundedDataSource(failing, 1, 50);
+
+        // Act
+        assertThrows(SQLException.class, dataSource::getConnection);
+
+        // Assert
+        assertEquals(1, dataSource.getAvailablePermits());
+    }
+
+    @Test
+    void constructor_NonPositiveLimit_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedDataSource(target(), 0, 50));
+    }
+
+    private DataSource target() {
+        return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        return connection();
+                    }
+                    return null;
+                });
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        closed.incrementAndGet();
+                    }
+                    return null;
+                });
+    }
+}
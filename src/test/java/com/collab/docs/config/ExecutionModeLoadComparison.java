@@ -0,0 +1,106 @@
+package com.collab.docs.config;
+
+import com.collab.docs.Benchmarks;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the pooled and virtual execution modes while the database stalls. A burst of handlers
+ * that each hold a connection for {@code STALL_MILLIS} is mixed with many handlers that never touch
+ * the database (cursor moves, presence), all behind a {@link BoundedDataSource}. Reports latency of
+ * the in-memory handlers and the fate of the database ones. Runs like the {@link Benchmarks};
+ * virtual mode needs Java 21.
+ */
+public class ExecutionModeLoadComparison {
+    private static final int DATABASE_TASKS = 200;
+    private static final int MEMORY_TASKS = 5_000;
+    private static final long STALL_MILLIS = 250;
+    private static final int CONNECTIONS = 10;
+    private static final long ACQUIRE_TIMEOUT_MILLIS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors() * 2;
+        System.out.printf("%-24s %9s %9s %9s %9s %9s%n",
+                "mode", "mem p50", "mem p99", "mem max", "db ok", "db fail");
+        run("pooled (" + threads + " threads)", new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()));
+        if (VirtualThreads.isSupported()) {
+            run("virtual", VirtualThreads.newThreadPerTaskExecutor("load-"));
+        } else {
+            System.out.println("virtual: not supported on Java " + System.getProperty("java.version"));
+        }
+    }
+
+    private static void run(String mode, ExecutorService executor) throws InterruptedException {
+        BoundedDataSource dataSource = new BoundedDataSource(stalledDatabase(), CONNECTIONS, ACQUIRE_TIMEOUT_MILLIS);
+        List<Long> memoryLatencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger databaseOk = new AtomicInteger();
+        AtomicInteger databaseFailed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(DATABASE_TASKS + MEMORY_TASKS);
+
+        int memoryPerDatabase = MEMORY_TASKS / DATABASE_TASKS;
+        for (int i = 0; i < DATABASE_TASKS; i++) {
+            executor.execute(() -> {
+                try (Connection connection = dataSource.getConnection()) {
+                    databaseOk.incrementAndGet();
+                } catch (SQLException ex) {
+                    databaseFailed.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+            for (int j = 0; j < memoryPerDatabase; j++) {
+                long queuedAt = System.nanoTime();
+                executor.execute(() -> {
+                    spin(20_000);
+                    memoryLatencies.add(System.nanoTime() - queuedAt);
+                    done.countDown();
+                });
+            }
+        }
+        done.await();
+        executor.shutdown();
+
+        List<Long> sorted = new ArrayList<>(memoryLatencies);
+        Collections.sort(sorted);
+        System.out.printf("%-24s %7.1fms %7.1fms %7.1fms %9d %9d%n", mode,
+                millis(sorted.get(sorted.size() / 2)), millis(sorted.get(sorted.size() * 99 / 100)),
+                millis(sorted.get(sorted.size() - 1)), databaseOk.get(), databaseFailed.get());
+    }
+
+    /** Every connection takes {@code STALL_MILLIS} to hand out, as if the database were stalled. */
+    private static DataSource stalledDatabase() {
+        return (DataSource) Proxy.newProxyInstance(ExecutionModeLoadComparison.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, (proxy, method, args) -> {
+                    if (!"getConnection".equals(method.getName())) {
+                        return null;
+                    }
+                    Thread.sleep(STALL_MILLIS);
+                    return Proxy.newProxyInstance(ExecutionModeLoadComparison.class.getClassLoader(),
+                            new Class<?>[]{Connection.class}, (connection, call, callArgs) -> null);
+                });
+    }
+
+    private static void spin(long nanos) {
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,218 @@
+package com.collab.docs.editing;
+
+import com.collab.docs.model.DocumentContent;
+import com.collab.docs.websocket.DocumentEditMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrdtDocumentBufferTest {
+
+    private static final long FIRST_CHAR = CrdtId.of(1, CrdtId.SERVER_SITE);
+
+    @Test
+    void apply_ConcurrentInsertsAtSamePlace_ConvergeInAnyOrder() {
+        // Arrange
+        CrdtDocumentBuffer first = new CrdtDocumentBuffer(1L, "ac", null, 0L, 1000);
+        CrdtDocumentBuffer second = new CrdtDocumentBuffer(1L, "ac", null, 0L, 1000);
+        for (CrdtDocumentBuffer buffer : List.of(first, second)) {
+            buffer.addSite(7);
+            buffer.addSite(9);
+        }
+        DocumentEditMessage fromA = insert(7, CrdtId.of(10, 7), FIRST_CHAR, "X");
+        DocumentEditMessage fromB = insert(9, CrdtId.of(10, 9), FIRST_CHAR, "Y");
+
+        // Act
+        first.apply(fromA, "alice");
+        first.apply(fromB, "bob");
+        second.apply(fromB, "bob");
+        second.apply(fromA, "alice");
+
+        // Assert
+        assertEquals("aYXc", first.getContent());
+        assertEquals(first.getContent(), second.getContent());
+    }
+
+    @Test
+    void apply_TypingAfterOwnInsert_ExtendsExistingRun() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+
+        // Act
+        buffer.apply(insert(site, CrdtId.of(1, site), CrdtId.HEAD, "he"), "alice");
+        buffer.apply(insert(site, CrdtId.of(3, site), CrdtId.of(2, site), "llo"), "alice");
+
+        // Assert
+        assertEquals("hello", buffer.getContent());
+        assertEquals(1, buffer.getRunCount());
+    }
+
+    @Test
+    void apply_DeleteAcrossRuns_RemovesVisibleText() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "hello world", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+        buffer.apply(insert(site, CrdtId.of(20, site), CrdtId.plus(FIRST_CHAR, 4), ","), "alice");
+
+        // Act
+        List<DocumentEditMessage> committed = buffer.apply(delete(site, CrdtId.plus(FIRST_CHAR, 2), 5), "alice");
+
+        // Assert
+        assertEquals("he,orld", buffer.getContent());
+        assertEquals(2L, committed.get(0).getRevision());
+    }
+
+    @Test
+    void apply_DuplicateInsert_IsIgnored() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+        DocumentEditMessage edit = insert(site, CrdtId.of(1, site), CrdtId.HEAD, "x");
+
+        // Act
+        buffer.apply(edit, "alice");
+        buffer.apply(edit, "alice");
+
+        // Assert
+        assertEquals("x", buffer.getContent());
+        assertEquals(2L, buffer.getRevision());
+    }
+
+    @Test
+    void apply_UnknownSiteOrReference_Rejected() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "abc", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class,
+                () -> buffer.apply(insert(site + 1, CrdtId.of(5, site + 1), FIRST_CHAR, "x"), "bob"));
+        assertThrows(IllegalArgumentException.class,
+                () -> buffer.apply(insert(site, CrdtId.of(5, site), CrdtId.of(3, 12345), "x"), "alice"));
+        assertEquals("abc", buffer.getContent());
+    }
+
+    @Test
+    void replaceContent_BeforeCommitThrows_LeavesBufferUnchanged() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "abc", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> buffer.replaceContent("xyz", "alice", committed -> {
+            throw new IllegalStateException("Journal unavailable");
+        }));
+        assertThrows(IllegalStateException.class, () -> buffer.apply(insert(site, CrdtId.of(5, site), FIRST_CHAR, "!"),
+                "alice", committed -> {
+                    throw new IllegalStateException("Journal unavailable");
+                }));
+        List<DocumentEditMessage> committed = buffer.replaceContent("xyz", "alice");
+
+        // Assert
+        assertEquals("xyz", buffer.getContent());
+        assertEquals(1L, committed.get(0).getRevision());
+        assertEquals(2L, buffer.getRevision());
+    }
+
+    @Test
+    void collectGarbage_AfterAllSitesAcknowledge_DropsTombstonesAndMergesRuns() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+        buffer.apply(insert(site, CrdtId.of(1, site), CrdtId.HEAD, "abc"), "alice");
+        buffer.apply(insert(site, CrdtId.of(4, site), CrdtId.of(1, site), "X"), "alice");
+        buffer.apply(delete(site, CrdtId.of(4, site), 1), "alice");
+        int runsWithTombstone = buffer.getRunCount();
+
+        // Act
+        DocumentEditMessage acknowledging = insert(site, CrdtId.of(5, site), CrdtId.of(3, site), "d");
+        acknowledging.setRevision(3L);
+        buffer.apply(acknowledging, "alice");
+        buffer.collectGarbage();
+
+        // Assert
+        assertEquals("abcd", buffer.getContent());
+        assertTrue(buffer.getRunCount() < runsWithTombstone);
+    }
+
+    @Test
+    void apply_InsertRedeliveredAfterCollection_StaysDeleted() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "", null, 0L, 1000);
+        int site = buffer.join().getSiteId();
+        buffer.apply(insert(site, CrdtId.of(1, site), CrdtId.HEAD, "abc"), "alice");
+        DocumentEditMessage inserted = insert(site, CrdtId.of(4, site), CrdtId.of(3, site), "X");
+        buffer.apply(inserted, "alice");
+        DocumentEditMessage deleting = delete(site, CrdtId.of(4, site), 1);
+        deleting.setRevision(2L);
+        buffer.apply(deleting, "alice");
+        DocumentEditMessage acknowledging = insert(site, CrdtId.of(5, site), CrdtId.of(3, site), "d");
+        acknowledging.setRevision(3L);
+        buffer.apply(acknowledging, "alice");
+        buffer.collectGarbage();
+
+        // Act
+        buffer.apply(inserted, "alice");
+
+        // Assert
+        assertEquals("abcd", buffer.getContent());
+    }
+
+    @Test
+    void join_ExistingDocument_DescribesRunLayout() {
+        // Arrange
+        CrdtDocumentBuffer buffer = new CrdtDocumentBuffer(1L, "abc", null, 4L, 1000);
+
+        // Act
+        DocumentContent state = buffer.join();
+
+        // Assert
+        assertEquals("abc", state.getContent());
+        assertEquals(4L, state.getVersion());
+        assertNotNull(state.getSiteId());
+        assertEquals(CrdtId.toString(FIRST_CHAR) + ":3", state.getElements());
+    }
+
+    @Test
+    void replay_FromPersistedLayout_ResolvesExistingElementIds() {
+        // Arrange
+        CrdtDocumentBuffer original = new CrdtDocumentBuffer(1L, "abc", null, 0L, 1000);
+        int site = original.join().getSiteId();
+        original.apply(insert(site, CrdtId.of(4, site), FIRST_CHAR, "X"), "alice");
+        original.apply(delete(site, CrdtId.plus(FIRST_CHAR, 2), 1), "alice");
+        DocumentContent snapshot = original.getState();
+        DocumentEditMessage later = original.apply(insert(site, CrdtId.of(5, site), CrdtId.of(4, site), "Y"), "alice").get(0);
+
+        // Act
+        CrdtDocumentBuffer restored = new CrdtDocumentBuffer(1L, snapshot.getContent(), snapshot.getElements(),
+                snapshot.getVersion(), 1000);
+        restored.replay(later);
+
+        // Assert
+        assertEquals("aXYb", restored.getContent());
+        assertEquals(original.getContent(), restored.getContent());
+        assertEquals(3L, restored.getRevision());
+    }
+
+    private static DocumentEditMessage insert(int site, long elementId, long referenceId, String content) {
+        return DocumentEditMessage.builder()
+                .operation("INSERT")
+                .siteId(site)
+                .elementId(elementId)
+                .referenceId(referenceId)
+                .content(content)
+                .build();
+    }
+
+    private static DocumentEditMessage delete(int site, long elementId, int length) {
+        return DocumentEditMessage.builder()
+                .operation("DELETE")
+                .siteId(site)
+                .elementId(elementId)
+                .length(length)
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package com.collab.docs.editing;
+
+import com.collab.docs.websocket.DocumentEditMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OtDocumentBufferTest {
+
+    @Test
+    void apply_ConcurrentInserts_TransformsLaterEdit() {
+        // Arrange
+        OtDocumentBuffer buffer = new OtDocumentBuffer(1L, "Hello world", 0L, 100);
+        DocumentEditMessage first = edit("INSERT", 5, 5, ",", 0L);
+        DocumentEditMessage second = edit("INSERT", 11, 11, "!", 0L);
+
+        // Act
+        buffer.apply(first, "alice");
+        List<DocumentEditMessage> committed = buffer.apply(second, "bob");
+
+        // Assert
+        assertEquals("Hello, world!", buffer.getContent());
+        assertEquals(2L, buffer.getRevision());
+        assertEquals(1, committed.size());
+        assertEquals(12, committed.get(0).getStartPosition());
+        assertEquals(2L, committed.get(0).getRevision());
+        assertEquals("bob", committed.get(0).getUsername());
+    }
+
+    @Test
+    void apply_DeleteOverlappingConcurrentDelete_DeletesOnlyRemainder() {
+        // Arrange
+        OtDocumentBuffer buffer = new OtDocumentBuffer(1L, "abcdefgh", 0L, 100);
+
+        // Act
+        buffer.apply(edit("DELETE", 2, 5, null, 0L), "alice");
+        buffer.apply(edit("DELETE", 4, 7, null, 0L), "bob");
+
+        // Assert
+        assertEquals("abh", buffer.getContent());
+    }
+
+    @Test
+    void apply_InsertInsideConcurrentDelete_KeepsInsertedText() {
+        // Arrange
+        OtDocumentBuffer buffer = new OtDocumentBuffer(1L, "abcdef", 0L, 100);
+
+        // Act
+        buffer.apply(edit("DELETE", 1, 5, null, 0L), "alice");
+        buffer.apply(edit("INSERT", 3, 3, "XY", 0L), "bob");
+
+        // Assert
+        assertEquals("aXYf", buffer.getContent());
+    }
+
+    @Test
+    void apply_ReplaceAbsorbedByConcurrentDelete_CommitsNoOp() {
+        // Arrange
+        OtDocumentBuffer buffer = new OtDocumentBuffer(1L, "abcdef", 0L, 100);
+        buffer.apply(edit("DELETE", 0, 6, null, 0L), "alice");
+
+        // Act
+        List<DocumentEditMessage> committed = buffer.apply(edit("DELETE", 2, 4, null, 0L), "bob");
+
+        // Assert
+        assertEquals("", buffer.getContent());
+        assertEquals(1, committed.size());
+        assertEquals(2L, committed.get(0).getRevision());
+    }
+
+    @Test
+    void replay_CommittedOperations_RebuildsStateFromSnapshot() {
+        // Arrange
+        OtDocumentBuffer original = new OtDocumentBuffer(1L, "abc", 3L, 100);
+        List<DocumentEditMessage> committed = new ArrayList<>();
+        committed.addAll(original.apply(edit("INSERT", 3, 3, "def", 3L), "alice"));
+        committed.addAll(original.apply(edit("DELETE", 0, 1, null, 3L), "bob"));
+        OtDocumentBuffer restored = new OtDocumentBuffer(1L, "abc", 3L, 100);
+
+        // Act
+        committed.forEach(restored::replay);
+        restored.replay(committed.get(0));
+
+        // Assert
+        assertEquals(original.getContent(), restored.getContent());
+        assertEquals(5L, restored.getRevision());
+    }
+
+    @Test
+    void apply_RevisionOutsideHistory_Rejected() {
+        // Arrange
+        OtDocumentBuffer buffer = new OtDocumentBuffer(1L, "", 0L, 1);
+        for (int i = 0; i < 5; i++) {
+            buffer.apply(edit("INSERT", 0, 0, "x", (long) i), "alice");
+        }
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> buffer.apply(edit("INSERT", 0, 0, "y", 0L), "bob"));
+        assertThrows(IllegalArgumentException.class, () -> buffer.apply(edit("INSERT", 0, 0, "y", 9L), "bob"));
+    }
+
+    @Test
+    void apply_BeforeCommitThrows_LeavesBufferUnchanged() {
+        // Arrange
+        OtDocumentBuffer buffer = new OtDocumentBuffer(1L, "abc", 3L, 100);
+        List<DocumentEditMessage> seen = new ArrayList<>();
+
+        // Act
+        assertThrows(IllegalStateException.class, () -> buffer.apply(edit("INSERT", 3, 3, "def", 3L), "alice",
+                committed -> {
+                    seen.addAll(committed);
+                    throw new IllegalStateException("Journal unavailable");
+                }));
+        List<DocumentEditMessage> retried = buffer.apply(edit("INSERT", 3, 3, "def", 3L), "alice");
+
+        // Assert
+        assertEquals(4L, seen.get(0).getRevision());
+        assertEquals(4L, retried.get(0).getRevision());
+        assertEquals("abcdef", buffer.getContent());
+    }
+
+    private static DocumentEditMessage edit(String operation, int start, int end, String content, Long revision) {
+        return DocumentEditMessage.builder()
+                .operation(operation)
+                .startPosition(start)
+                .endPosition(end)
+                .content(content)
+                .revision(revision)
+                .build();
+    }
+}
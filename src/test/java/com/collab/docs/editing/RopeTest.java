@@ -0,0 +1,133 @@
+package com.collab.docs.editing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RopeTest {
+
+    @Test
+    void insert_IntoMiddle_SplicesText() {
+        // Arrange
+        Rope rope = Rope.of("Hello world");
+
+        // Act
+        Rope result = rope.insert(5, ",");
+
+        // Assert
+        assertEquals("Hello, world", result.toString());
+        assertEquals("Hello world", rope.toString());
+    }
+
+    @Test
+    void delete_Range_RemovesCharacters() {
+        // Arrange
+        Rope rope = Rope.of("Hello, world");
+
+        // Act
+        Rope result = rope.delete(5, 7);
+
+        // Assert
+        assertEquals("Helloworld", result.toString());
+        assertEquals(10, result.length());
+    }
+
+    @Test
+    void replace_Range_SubstitutesText() {
+        // Arrange
+        Rope rope = Rope.of("Hello world");
+
+        // Act
+        Rope result = rope.replace(6, 11, "rope");
+
+        // Assert
+        assertEquals("Hello rope", result.toString());
+    }
+
+    @Test
+    void insert_OutOfBounds_Throws() {
+        Rope rope = Rope.of("abc");
+
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.insert(4, "x"));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.delete(2, 1));
+    }
+
+    @Test
+    void randomEdits_LargeDocument_MatchesStringBuilderAndStaysBalanced() {
+        // Arrange
+        Random random = new Random(42);
+        Rope rope = Rope.empty();
+        StringBuilder expected = new StringBuilder();
+
+        // Act
+        for (int i = 0; i < 20_000; i++) {
+            if (expected.length() == 0 || random.nextInt(3) > 0) {
+                int position = random.nextInt(expected.length() + 1);
+                String text = i % 500 == 0 ? "x".repeat(5_000) : "ab";
+                rope = rope.insert(position, text);
+                expected.insert(position, text);
+            } else {
+                int start = random.nextInt(expected.length());
+                int end = Math.min(expected.length(), start + random.nextInt(8));
+                rope = rope.delete(start, end);
+                expected.delete(start, end);
+            }
+        }
+
+        // Assert
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(expected.charAt(expected.length() / 2), rope.charAt(expected.length() / 2));
+        int leaves = Math.max(1, rope.length() / Rope.MAX_LEAF);
+        assertTrue(rope.height() <= 2 * (32 - Integer.numberOfLeadingZeros(leaves)) + 2,
+                "height " + rope.height() + " for " + rope.length() + " chars");
+    }
+
+    @Test
+    void lineStart_TrailingNewline_CountsEmptyLastLine() {
+        // Arrange
+        Rope rope = Rope.of("first\nsecond\n");
+
+        // Act & Assert
+        assertEquals(3, rope.lineCount());
+        assertEquals(0, rope.lineStart(0));
+        assertEquals(6, rope.lineStart(1));
+        assertEquals(13, rope.lineStart(2));
+        assertEquals(13, rope.lineStart(3));
+        assertEquals(1, rope.lineOf(6));
+        assertEquals(2, rope.lineOf(13));
+        assertThrows(IndexOutOfBoundsException.class, () -> rope.lineStart(4));
+    }
+
+    @Test
+    void lineIndex_AfterRandomEdits_MatchesScan() {
+        // Arrange
+        Random random = new Random(11);
+        Rope rope = Rope.of("line\n".repeat(2_000));
+        StringBuilder expected = new StringBuilder(rope);
+
+        // Act
+        for (int i = 0; i < 2_000; i++) {
+            int start = random.nextInt(expected.length());
+            int end = Math.min(expected.length(), start + random.nextInt(20));
+            String text = random.nextBoolean() ? "new\nlines\n" : "text";
+            rope = rope.replace(start, end, text);
+            expected.replace(start, end, text);
+        }
+
+        // Assert
+        String content = expected.toString();
+        int line = 0;
+        for (int offset = 0; offset <= content.length(); offset++) {
+            assertEquals(line, rope.lineOf(offset));
+            if (offset == 0 || content.charAt(offset - 1) == '\n') {
+                assertEquals(offset, rope.lineStart(line));
+            }
+            if (offset < content.length() && content.charAt(offset) == '\n') {
+                line++;
+            }
+        }
+        assertEquals(line + 1, rope.lineCount());
+    }
+}
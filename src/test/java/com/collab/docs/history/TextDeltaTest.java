@@ -0,0 +1,64 @@
+package com.collab.docs.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextDeltaTest {
+
+    @Test
+    void apply_LineChangedInMiddle_RebuildsTargetWithSmallDelta() {
+        // Arrange
+        String source = "intro\n".repeat(500) + "old line\n" + "outro\n".repeat(500);
+        String target = "intro\n".repeat(500) + "new line\n" + "outro\n".repeat(500);
+
+        // Act
+        byte[] delta = TextDelta.encode(source, target);
+
+        // Assert
+        assertEquals(target, TextDelta.apply(source, delta));
+        assertTrue(delta.length < 64);
+    }
+
+    @Test
+    void apply_RandomLineEdits_RoundTrip() {
+        // Arrange
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lines.add("line " + random.nextInt(50) + "\n");
+        }
+        String source = String.join("", lines);
+        for (int round = 0; round < 50; round++) {
+            List<String> edited = new ArrayList<>(lines);
+            for (int edit = 0; edit < 10; edit++) {
+                int at = random.nextInt(edited.size());
+                int kind = random.nextInt(3);
+                if (kind == 0) {
+                    edited.remove(at);
+                } else if (kind == 1) {
+                    edited.add(at, "added " + random.nextInt(1000) + "\n");
+                } else {
+                    edited.set(at, "changed ✓ " + random.nextInt(1000) + "\n");
+                }
+            }
+            String target = String.join("", edited) + (round % 2 == 0 ? "no newline" : "");
+
+            // Act & Assert
+            assertEquals(target, TextDelta.apply(source, TextDelta.encode(source, target)));
+        }
+    }
+
+    @Test
+    void apply_DifferentSource_Throws() {
+        // Arrange
+        byte[] delta = TextDelta.encode("a\nb\n", "a\nc\n");
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> TextDelta.apply("longer source\n", delta));
+    }
+}
@@ -0,0 +1,178 @@
+package com.collab.docs.history;
+
+import com.collab.docs.model.ContentBlob;
+import com.collab.docs.model.DocumentVersion;
+import com.collab.docs.repository.ContentBlobRepository;
+import com.collab.docs.repository.DocumentVersionRepository;
+import com.collab.docs.service.ContentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityNotFoundException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VersionHistoryServiceTest {
+    private static final long DOCUMENT_ID = 1L;
+
+    private final TreeMap<Long, DocumentVersion> versions = new TreeMap<>();
+    private final Map<String, ContentBlob> blobs = new HashMap<>();
+    private final AtomicInteger deltasRead = new AtomicInteger();
+    private ContentStore contentStore;
+    private VersionHistoryService history;
+
+    @BeforeEach
+    void setUp() {
+        // Map-backed stand-ins for the repository methods used, for a single document
+        ContentBlobRepository blobRepository = (ContentBlobRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContentBlobRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "existsById":
+                            return blobs.containsKey(args[0]);
+                        case "save":
+                            ContentBlob blob = (ContentBlob) args[0];
+                            blobs.put(blob.getHash(), blob);
+                            return blob;
+                        case "findStoredBodyByHash":
+                            ContentBlob stored = blobs.get(args[0]);
+                            return Optional.ofNullable(stored).map(b -> new ContentBlobRepository.StoredBody() {
+                                @Override
+                                public String getBody() {
+                                    return b.getBody();
+                                }
+
+                                @Override
+                                public byte[] getData() {
+                                    return b.getData();
+                                }
+                            });
+                        case "deleteIfUnreferenced":
+                            return 0;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        DocumentVersionRepository versionRepository = (DocumentVersionRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DocumentVersionRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findTopByDocumentIdOrderByVersionDesc":
+                            return Optional.ofNullable(versions.lastEntry()).map(Map.Entry::getValue);
+                        case "save":
+                            DocumentVersion version = (DocumentVersion) args[0];
+                            versions.put(version.getVersion(), version);
+                            return version;
+                        case "findCheckpointFrom":
+                            return versions.tailMap((Long) args[1]).values().stream()
+                                    .filter(v -> v.getContentId() != null)
+                                    .findFirst();
+                        case "findRange":
+                            List<DocumentVersion> range = new ArrayList<>(versions.subMap((Long) args[1], true, (Long) args[2], true).values());
+                            range.sort(Comparator.comparing(DocumentVersion::getVersion).reversed());
+                            deltasRead.addAndGet(range.size());
+                            return range;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        contentStore = new ContentStore(blobRepository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(contentStore, "compressionLevel", 1);
+        ReflectionTestUtils.setField(contentStore, "compressionMinSize", 512);
+        ReflectionTestUtils.invokeMethod(contentStore, "initMetrics");
+        history = new VersionHistoryService(versionRepository, contentStore, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(history, "checkpointInterval", 10);
+        history.initMetrics();
+    }
+
+    @Test
+    void getVersion_AnyVersion_ReturnsContentRecordedForIt() {
+        // Arrange
+        List<String> contents = recordVersions(35);
+
+        // Act & Assert
+        for (int version = 1; version <= contents.size(); version++) {
+            assertEquals(contents.get(version - 1), history.getVersion(DOCUMENT_ID, version).getContent());
+        }
+    }
+
+    @Test
+    void getVersion_LongHistory_AppliesAtMostIntervalMinusOneDeltas() {
+        // Arrange
+        recordVersions(95);
+
+        // Act
+        history.getVersion(DOCUMENT_ID, 81);
+
+        // Assert
+        assertEquals(9, deltasRead.get());
+        assertNull(versions.get(81L).getContentId());
+        assertNotNull(versions.get(90L).getContentId());
+    }
+
+    @Test
+    void record_UnchangedBody_AddsNoVersion() {
+        // Arrange
+        String contentId = contentStore.put("same");
+        history.record(DOCUMENT_ID, 1, "alice", contentId, "same");
+
+        // Act
+        history.record(DOCUMENT_ID, 2, "alice", contentId, "same");
+
+        // Assert
+        assertEquals(1, versions.size());
+    }
+
+    @Test
+    void diff_TwoVersions_ReportsChangedLines() {
+        // Arrange
+        recordVersions(3);
+
+        // Act
+        VersionDiff diff = history.diff(DOCUMENT_ID, 1, 3);
+
+        // Assert
+        assertEquals(2, diff.getHunks().size());
+        VersionDiff.Hunk first = diff.getHunks().get(0);
+        assertEquals(10, first.getFromLine());
+        assertEquals(List.of("line 10 of the original text\n"), first.getRemoved());
+        assertEquals(List.of("line 10 edited in version 2\n"), first.getAdded());
+        assertEquals(List.of("line 15 edited in version 3\n"), diff.getHunks().get(1).getAdded());
+    }
+
+    @Test
+    void getVersion_Missing_Throws() {
+        // Arrange
+        recordVersions(2);
+
+        // Act & Assert
+        assertThrows(EntityNotFoundException.class, () -> history.getVersion(DOCUMENT_ID, 3));
+    }
+
+    /** Records versions that each rewrite one line of a 40-line document; returns their contents. */
+    private List<String> recordVersions(int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            lines.add("line " + i + " of the original text\n");
+        }
+        List<String> contents = new ArrayList<>();
+        for (int version = 1; version <= count; version++) {
+            if (version > 1) {
+                lines.set((version * 5) % 40, "line " + (version * 5) % 40 + " edited in version " + version + "\n");
+            }
+            String content = String.join("", lines);
+            history.record(DOCUMENT_ID, version, "alice", contentStore.put(content), content);
+            contents.add(content);
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,156 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.websocket.DocumentEditMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EditJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private EditJournal journal;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void readAll_AfterReopen_ReturnsRecordsAcrossSegments() throws Exception {
+        // Arrange
+        journal = openJournal();
+        for (long revision = 1; revision <= 300; revision++) {
+            journal.awaitDurable(journal.append(1L, List.of(insert(revision))));
+        }
+        journal.close();
+
+        // Act
+        journal = openJournal();
+        List<JournalRecord> records = journal.readAll();
+
+        // Assert
+        assertTrue(journal.getSegmentCount() > 1);
+        assertEquals(300, records.size());
+        assertEquals(1L, records.get(0).getRevision());
+        assertEquals(300L, records.get(299).getRevision());
+    }
+
+    @Test
+    void compact_SegmentsCoveredBySnapshot_AreDeleted() throws Exception {
+        // Arrange
+        journal = openJournal();
+        for (long revision = 1; revision <= 300; revision++) {
+            journal.append(1L, List.of(insert(revision)));
+        }
+        int segments = journal.getSegmentCount();
+
+        // Act
+        journal.markSnapshot(1L, 100L);
+        int removedUpToSnapshot = journal.compact(null);
+        journal.markSnapshot(1L, 300L);
+        int removedRest = journal.compact(null);
+
+        // Assert
+        assertEquals(100, removedUpToSnapshot);
+        assertEquals(segments - 101, removedRest);
+        assertEquals(300, segments);
+        assertEquals(1, journal.getSegmentCount());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void getDocumentsOverBacklog_ResetBySnapshot() {
+        // Arrange
+        journal = openJournal();
+        journal.append(1L, List.of(insert(1L), insert(2L)));
+        journal.append(2L, List.of(insert(1L)));
+
+        // Act
+        List<Long> before = journal.getDocumentsOverBacklog(2, Long.MAX_VALUE);
+        journal.markSnapshot(1L, 2L);
+        List<Long> after = journal.getDocumentsOverBacklog(2, Long.MAX_VALUE);
+
+        // Assert
+        assertEquals(List.of(1L), before);
+        assertTrue(after.isEmpty());
+    }
+
+    @Test
+    void markSnapshot_OlderRevision_KeepsLaterOperationsInBacklog() {
+        // Arrange
+        journal = openJournal();
+        journal.append(1L, List.of(insert(1L), insert(2L)));
+        journal.append(1L, List.of(insert(3L), insert(4L)));
+
+        // Act
+        journal.markSnapshot(1L, 2L);
+        List<Long> afterPartial = journal.getDocumentsOverBacklog(2, Long.MAX_VALUE);
+        journal.markSnapshot(1L, 3L);
+        List<Long> afterMore = journal.getDocumentsOverBacklog(2, Long.MAX_VALUE);
+
+        // Assert
+        assertEquals(List.of(1L), afterPartial);
+        assertTrue(afterMore.isEmpty());
+        assertEquals(List.of(1L), journal.getDocumentsOverBacklog(1, Long.MAX_VALUE));
+    }
+
+    @Test
+    void append_RollFails_AppendsNothingAndRetriesLater() throws Exception {
+        // Arrange: a directory where the next segment file belongs makes opening it fail
+        journal = openJournal();
+        journal.append(1L, List.of(insert(1L)));
+        Path blocker = Files.createDirectory(directory.resolve(String.format("%016d.journal", 1)));
+
+        // Act
+        assertThrows(UncheckedIOException.class, () -> journal.append(1L, List.of(insert(2L), insert(3L))));
+        Files.delete(blocker);
+        journal.append(1L, List.of(insert(2L), insert(3L)));
+
+        // Assert
+        List<JournalRecord> records = journal.readAll();
+        assertEquals(List.of(1L, 2L, 3L), records.stream().map(JournalRecord::getRevision).collect(Collectors.toList()));
+        assertEquals(2, journal.getSegmentCount());
+    }
+
+    private EditJournal openJournal() {
+        EditJournal opened = new EditJournal();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "directory", directory.toString());
+        // Room for a single record, so that every append rolls to a new segment
+        ReflectionTestUtils.setField(opened, "segmentSize", DataSize.ofBytes(64));
+        ReflectionTestUtils.setField(opened, "syncMode", "group");
+        try {
+            opened.open();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        return opened;
+    }
+
+    private static DocumentEditMessage insert(long revision) {
+        return DocumentEditMessage.builder()
+                .operation("INSERT")
+                .startPosition(0)
+                .content("x")
+                .revision(revision)
+                .username("alice")
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.service.DocumentService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class JournalCompactorTest {
+
+    @Test
+    void compact_SomeDocumentsNotWritten_CountsOnlyWrittenSnapshots() {
+        // Arrange
+        EditJournal journal = mock(EditJournal.class);
+        DocumentService documentService = mock(DocumentService.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        when(journal.isEnabled()).thenReturn(true);
+        when(journal.getDocumentsOverBacklog(anyInt(), anyLong())).thenReturn(List.of(1L, 2L));
+        when(documentService.snapshotDocuments(List.of(1L, 2L))).thenReturn(1);
+        JournalCompactor compactor = new JournalCompactor(journal, documentService, registry);
+        ReflectionTestUtils.setField(compactor, "archiveDirectory", "");
+        compactor.initMetrics();
+
+        // Act
+        compactor.compact();
+
+        // Assert
+        verify(journal).compact(any());
+        assertEquals(1.0, registry.counter("documents.journal.compaction.snapshots").count());
+    }
+}
@@ -0,0 +1,112 @@
+package com.collab.docs.journal;
+
+import com.collab.docs.websocket.DocumentEditMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void open_ExistingSegment_ReadsRecordsAndContinuesAfterLast() throws Exception {
+        // Arrange
+        Path path = directory.resolve("0000000000000000.journal");
+        try (JournalSegment segment = JournalSegment.open(path, 0, 4096)) {
+            segment.append(7L, 1L, new JournalRecord(7L, insert(1L, 0, "h\u00e9llo")).encode());
+            segment.append(7L, 2L, new JournalRecord(7L, delete(2L, 1, 3)).encode());
+            segment.force();
+        }
+
+        // Act
+        List<JournalRecord> records = new ArrayList<>();
+        int position;
+        Map<Long, Long> documentRevisions;
+        try (JournalSegment reopened = JournalSegment.open(path, 0, 4096)) {
+            reopened.scan(payload -> records.add(JournalRecord.decode(payload)));
+            position = reopened.getPosition();
+            documentRevisions = reopened.getDocumentRevisions();
+        }
+
+        // Assert
+        assertEquals(2, records.size());
+        assertEquals(7L, records.get(0).getDocumentId());
+        assertEquals(insert(1L, 0, "h\u00e9llo"), records.get(0).getOperation());
+        assertEquals(delete(2L, 1, 3), records.get(1).getOperation());
+        assertTrue(position > 0);
+        assertEquals(Map.of(7L, 2L), documentRevisions);
+    }
+
+    @Test
+    void scan_TornRecord_StopsBeforeIt() throws Exception {
+        // Arrange
+        Path path = directory.resolve("0000000000000000.journal");
+        int tornOffset;
+        try (JournalSegment segment = JournalSegment.open(path, 0, 4096)) {
+            segment.append(1L, 1L, new JournalRecord(1L, insert(1L, 0, "a")).encode());
+            tornOffset = segment.getPosition();
+            segment.append(1L, 2L, new JournalRecord(1L, insert(2L, 1, "b")).encode());
+            segment.force();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), tornOffset + JournalSegment.RECORD_HEADER_SIZE + 3);
+        }
+
+        // Act
+        List<JournalRecord> records = new ArrayList<>();
+        try (JournalSegment reopened = JournalSegment.open(path, 0, 4096)) {
+            reopened.scan(payload -> records.add(JournalRecord.decode(payload)));
+
+            // Assert
+            assertEquals(1, records.size());
+            assertEquals(tornOffset, reopened.getPosition());
+        }
+    }
+
+    @Test
+    void append_SegmentFull_ReturnsFalse() throws Exception {
+        // Arrange
+        try (JournalSegment segment = JournalSegment.open(directory.resolve("0000000000000000.journal"), 0, 64)) {
+            byte[] payload = new JournalRecord(1L, insert(1L, 0, "x")).encode();
+
+            // Act
+            boolean first = segment.append(1L, 1L, payload);
+            boolean second = segment.append(1L, 1L, payload);
+
+            // Assert
+            assertTrue(first);
+            assertFalse(second);
+        }
+    }
+
+    private static DocumentEditMessage insert(long revision, int position, String text) {
+        return DocumentEditMessage.builder()
+                .operation("INSERT")
+                .startPosition(position)
+                .content(text)
+                .revision(revision)
+                .username("alice")
+                .build();
+    }
+
+    private static DocumentEditMessage delete(long revision, int start, int end) {
+        return DocumentEditMessage.builder()
+                .operation("DELETE")
+                .startPosition(start)
+                .endPosition(end)
+                .revision(revision)
+                .username("alice")
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.collab.docs.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+    @TempDir
+    Path directory;
+
+    private final SearchIndex index = new SearchIndex();
+
+    @Test
+    void search_TitleMatch_RanksAboveBodyMatch() {
+        // Arrange
+        index.index(1L, 1L, "Meeting notes", "budget review for the quarter");
+        index.index(2L, 1L, "Budget", "numbers for the quarter");
+        index.index(3L, 1L, "Shopping list", "milk and eggs");
+
+        // Act
+        List<SearchHit> hits = index.search("budget", id -> true, 10);
+
+        // Assert
+        assertEquals(2, hits.size());
+        assertEquals(2L, hits.get(0).getDocumentId());
+        assertEquals(1L, hits.get(1).getDocumentId());
+    }
+
+    @Test
+    void search_FilterRejectsDocument_OmitsIt() {
+        // Arrange
+        index.index(1L, 1L, "Budget", "");
+        index.index(2L, 1L, "Budget draft", "");
+
+        // Act
+        List<SearchHit> hits = index.search("budget", id -> id != 1L, 10);
+
+        // Assert
+        assertEquals(1, hits.size());
+        assertEquals(2L, hits.get(0).getDocumentId());
+    }
+
+    @Test
+    void search_FilterWritesIndex_RunsOutsideIndexLock() {
+        // Arrange
+        index.index(1L, 1L, "Budget", "");
+        index.index(2L, 1L, "Budget draft", "");
+        index.index(3L, 1L, "Budget notes", "");
+        List<Long> checked = new ArrayList<>();
+
+        // Act
+        List<SearchHit> hits = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> index.search("budget", id -> {
+            // Re-indexing takes the write lock, which would wait forever under the read lock
+            index.index(4L, 1L, "Unrelated", "");
+            checked.add(id);
+            return true;
+        }, 2));
+
+        // Assert
+        assertEquals(2, hits.size());
+        assertEquals(2, checked.size());
+        assertEquals(1L, hits.get(0).getDocumentId());
+    }
+
+    @Test
+    void index_Reindexed_DropsRemovedTerms() {
+        // Arrange
+        index.index(1L, 1L, "Draft", "alpha beta");
+
+        // Act
+        index.index(1L, 2L, "Draft", "beta gamma");
+
+        // Assert
+        assertTrue(index.search("alpha", id -> true, 10).isEmpty());
+        assertEquals(1, index.search("gamma", id -> true, 10).size());
+        assertEquals(2L, index.getIndexedRevisions().get(1L));
+    }
+
+    @Test
+    void remove_IndexedDocument_NoLongerMatches() {
+        // Arrange
+        index.index(1L, 1L, "Draft", "alpha");
+
+        // Act
+        index.remove(1L);
+
+        // Assert
+        assertTrue(index.search("alpha", id -> true, 10).isEmpty());
+        assertEquals(0, index.getTermCount());
+    }
+
+    @Test
+    void read_WrittenIndex_RestoresDocumentsAndRevisions() throws Exception {
+        // Arrange
+        Path file = directory.resolve("search-index.bin");
+        index.index(5L, 3L, "Roadmap", "launch plan");
+        index.index(2L, 7L, "Launch checklist", "");
+        assertTrue(index.write(file));
+        SearchIndex restored = new SearchIndex();
+
+        // Act
+        restored.read(file);
+
+        // Assert
+        assertFalse(restored.write(file));
+        assertEquals(2, restored.getDocumentCount());
+        assertEquals(3L, restored.getIndexedRevisions().get(5L));
+        assertEquals(2L, restored.search("launch", id -> true, 10).get(0).getDocumentId());
+    }
+}
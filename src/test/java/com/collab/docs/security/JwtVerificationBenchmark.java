@@ -0,0 +1,43 @@
+package com.collab.docs.security;
+
+import com.collab.docs.Benchmarks;
+import com.collab.docs.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+
+/**
+ * Compares resolving the same bearer token with the verified-token cache disabled (full parse and
+ * HS512 check per call, as before) and enabled (digest lookup after the first call), reporting
+ * ns/op. See {@link Benchmarks} for how to run it.
+ */
+public class JwtVerificationBenchmark {
+    private static final String SECRET =
+            "c2VjcmV0LWtleS1mb3ItdGhlLWp3dC1iZW5jaG1hcmstd2l0aC1hdC1sZWFzdC01MTItYml0cy1vZi1rZXktbWF0ZXJpYWw=";
+    private static final int WARMUP_ROUNDS = 50_000;
+    private static final int MEASURED_ROUNDS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        JwtTokenProvider uncached = provider(0);
+        JwtTokenProvider cached = provider(10_000);
+        User user = User.builder().username("alice").roles(Collections.singleton("ROLE_USER")).build();
+        String token = uncached.generateToken(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+        System.out.printf("%-10s %10s%n", "mode", "ns/op");
+        System.out.printf("%-10s %10.0f%n", "uncached",
+                Benchmarks.nanosPerOp(WARMUP_ROUNDS, MEASURED_ROUNDS, () -> uncached.resolveUsername(token)));
+        System.out.printf("%-10s %10.0f%n", "cached",
+                Benchmarks.nanosPerOp(WARMUP_ROUNDS, MEASURED_ROUNDS, () -> cached.resolveUsername(token)));
+    }
+
+    private static JwtTokenProvider provider(int cacheSize) {
+        JwtTokenProvider provider = new JwtTokenProvider(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(provider, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(provider, "jwtExpirationInMs", 3_600_000);
+        ReflectionTestUtils.setField(provider, "cacheSize", cacheSize);
+        provider.init();
+        return provider;
+    }
+}
@@ -0,0 +1,156 @@
+package com.collab.docs.security;
+
+import com.collab.docs.service.DocumentAccessControl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StompAuthenticationInterceptorTest {
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    private final JwtTokenProvider tokenProvider = new JwtTokenProvider(new SimpleMeterRegistry()) {
+        @Override
+        public String resolveUsername(String token) {
+            verifications.incrementAndGet();
+            return "valid-token".equals(token) ? "alice" : null;
+        }
+    };
+
+    private final CustomUserDetailsService userDetailsService = new CustomUserDetailsService(null, new SimpleMeterRegistry()) {
+        @Override
+        public UserPrincipal loadUserByUsername(String username) {
+            return new UserPrincipal(7L, username, "hash", Collections.emptySet(), true, true, true, true);
+        }
+    };
+
+    // User 7 may only open document 1
+    private final DocumentAccessControl accessControl = new DocumentAccessControl(null, new SimpleMeterRegistry()) {
+        @Override
+        public boolean canEdit(long documentId, long userId) {
+            return documentId == 1L && userId == 7L;
+        }
+    };
+
+    private final StompAuthenticationInterceptor interceptor =
+            new StompAuthenticationInterceptor(tokenProvider, userDetailsService, accessControl);
+
+    @Test
+    void preSend_ConnectWithValidToken_BindsPrincipal() {
+        // Arrange
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setNativeHeader("Authorization", "Bearer valid-token");
+
+        // Act
+        Message<?> result = interceptor.preSend(message(accessor), null);
+
+        // Assert
+        Authentication user = (Authentication) StompHeaderAccessor.getUser(result.getHeaders());
+        assertNotNull(user);
+        assertEquals(7L, ((UserPrincipal) user.getPrincipal()).getId());
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    void preSend_ConnectWithoutToken_Throws() {
+        // Arrange
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+
+        // Act & Assert
+        assertThrows(AuthenticationCredentialsNotFoundException.class, () -> interceptor.preSend(message(accessor), null));
+    }
+
+    @Test
+    void preSend_ConnectWithInvalidToken_Throws() {
+        // Arrange
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setNativeHeader("Authorization", "Bearer forged");
+
+        // Act & Assert
+        assertThrows(BadCredentialsException.class, () -> interceptor.preSend(message(accessor), null));
+    }
+
+    @Test
+    void preSend_SendWithoutSessionUser_Throws() {
+        // Arrange
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination("/app/document/1/edit");
+
+        // Act & Assert
+        assertThrows(AuthenticationCredentialsNotFoundException.class, () -> interceptor.preSend(message(accessor), null));
+    }
+
+    @Test
+    void preSend_SendWithSessionUser_DoesNotVerifyAgain() {
+        // Arrange
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setNativeHeader("Authorization", "Bearer valid-token");
+        Message<?> connected = interceptor.preSend(message(connect), null);
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+        send.setDestination("/app/document/1/edit");
+        send.setUser(StompHeaderAccessor.getUser(connected.getHeaders()));
+
+        // Act
+        interceptor.preSend(message(send), null);
+
+        // Assert
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    void preSend_SubscribeToDocumentTopics_RequiresAccess() {
+        // Arrange
+        Message<?> connected = connect();
+
+        // Act & Assert
+        interceptor.preSend(message(subscribe("/topic/document/1/content", connected)), null);
+        interceptor.preSend(message(subscribe("/topic/document/1/cursors.bin", connected)), null);
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(message(subscribe("/topic/document/2/content", connected)), null));
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(message(subscribe("/topic/document/2/collaborators.bin", connected)), null));
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(message(subscribe("/topic/document/abc/content", connected)), null));
+    }
+
+    @Test
+    void preSend_SubscribeToPattern_Throws() {
+        // Arrange
+        Message<?> connected = connect();
+
+        // Act & Assert
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(message(subscribe("/topic/document/*/content", connected)), null));
+        assertThrows(AccessDeniedException.class,
+                () -> interceptor.preSend(message(subscribe("/topic/**", connected)), null));
+    }
+
+    private Message<?> connect() {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setNativeHeader("Authorization", "Bearer valid-token");
+        return interceptor.preSend(message(connect), null);
+    }
+
+    private static StompHeaderAccessor subscribe(String destination, Message<?> connected) {
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setDestination(destination);
+        subscribe.setUser(StompHeaderAccessor.getUser(connected.getHeaders()));
+        return subscribe;
+    }
+
+    private static Message<?> message(StompHeaderAccessor accessor) {
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
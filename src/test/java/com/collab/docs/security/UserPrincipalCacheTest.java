@@ -0,0 +1,98 @@
+package com.collab.docs.security;
+
+import com.collab.docs.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserPrincipalCacheTest {
+
+    @Test
+    void get_WithinTtl_ReturnsPrincipal() {
+        // Arrange
+        UserPrincipalCache cache = new UserPrincipalCache(10, 1_000);
+        cache.put(principal("alice"), cache.generation(), 5_000);
+
+        // Act & Assert
+        assertEquals("alice", cache.get("alice", 5_999).getUsername());
+        assertNull(cache.get("bob", 5_999));
+    }
+
+    @Test
+    void get_AfterTtl_ReturnsNullAndDropsEntry() {
+        // Arrange
+        UserPrincipalCache cache = new UserPrincipalCache(10, 1_000);
+        cache.put(principal("alice"), cache.generation(), 5_000);
+
+        // Act
+        UserPrincipal principal = cache.get("alice", 6_000);
+
+        // Assert
+        assertNull(principal);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evict_CachedUser_RemovesPrincipal() {
+        // Arrange
+        UserPrincipalCache cache = new UserPrincipalCache(10, 1_000);
+        cache.put(principal("alice"), cache.generation(), 5_000);
+
+        // Act
+        cache.evict("alice");
+
+        // Assert
+        assertNull(cache.get("alice", 5_000));
+    }
+
+    @Test
+    void put_EvictedWhileLoading_DoesNotCache() {
+        // Arrange
+        UserPrincipalCache cache = new UserPrincipalCache(10, 1_000);
+        long generation = cache.generation();
+        cache.evict("alice");
+
+        // Act
+        cache.put(principal("alice"), generation, 5_000);
+
+        // Assert
+        assertNull(cache.get("alice", 5_000));
+    }
+
+    @Test
+    void put_Full_StaysWithinCapacity() {
+        // Arrange
+        UserPrincipalCache cache = new UserPrincipalCache(100, 60_000);
+
+        // Act
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(principal("user" + i), cache.generation(), 5_000);
+        }
+
+        // Assert
+        assertTrue(cache.size() <= 100);
+        assertNotNull(cache.get("user999", 5_000));
+    }
+
+    @Test
+    void of_User_CopiesAuthoritiesIntoImmutableSet() {
+        // Arrange
+        User user = User.builder().id(7L).username("alice").password("hash")
+                .roles(Collections.singleton("USER")).build();
+
+        // Act
+        UserPrincipal principal = UserPrincipal.of(user);
+
+        // Assert
+        assertEquals(7L, principal.getId());
+        assertEquals(1, principal.getAuthorities().size());
+        assertThrows(UnsupportedOperationException.class, () -> principal.getAuthorities().clear());
+        assertFalse(principal.toString().contains("hash"));
+    }
+
+    private static UserPrincipal principal(String username) {
+        return new UserPrincipal(1L, username, "hash", Collections.emptySet(), true, true, true, true);
+    }
+}
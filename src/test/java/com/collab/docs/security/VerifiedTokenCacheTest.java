@@ -0,0 +1,80 @@
+package com.collab.docs.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VerifiedTokenCacheTest {
+
+    @Test
+    void get_BeforeExpiry_ReturnsSubject() {
+        // Arrange
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        cache.put("token-a", "alice", 2_000);
+
+        // Act & Assert
+        assertEquals("alice", cache.get("token-a", 1_999));
+        assertNull(cache.get("token-b", 1_999));
+    }
+
+    @Test
+    void get_AtExpiry_ReturnsNullAndDropsEntry() {
+        // Arrange
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        cache.put("token-a", "alice", 2_000);
+
+        // Act
+        String subject = cache.get("token-a", 2_000);
+
+        // Assert
+        assertNull(subject);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_Full_StaysWithinCapacity() {
+        // Arrange
+        VerifiedTokenCache cache = new VerifiedTokenCache(100);
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        // Act
+        for (int i = 0; i < 1_000; i++) {
+            cache.put("token-" + i, "user" + i, expiresAt);
+        }
+
+        // Assert
+        assertTrue(cache.size() <= 100);
+        assertEquals("user999", cache.get("token-999", System.currentTimeMillis()));
+    }
+
+    @Test
+    void put_Full_PurgesExpiredEntriesFirst() {
+        // Arrange
+        VerifiedTokenCache cache = new VerifiedTokenCache(4);
+        long now = System.currentTimeMillis();
+        cache.put("expired-1", "old", now - 1);
+        cache.put("expired-2", "old", now - 1);
+        cache.put("live-1", "alice", now + 60_000);
+        cache.put("live-2", "bob", now + 60_000);
+
+        // Act
+        cache.put("live-3", "carol", now + 60_000);
+
+        // Assert
+        assertEquals(3, cache.size());
+        assertEquals("alice", cache.get("live-1", now));
+        assertEquals("bob", cache.get("live-2", now));
+    }
+
+    @Test
+    void get_Disabled_NeverCaches() {
+        // Arrange
+        VerifiedTokenCache cache = new VerifiedTokenCache(0);
+
+        // Act
+        cache.put("token-a", "alice", Long.MAX_VALUE);
+
+        // Assert
+        assertNull(cache.get("token-a", 0));
+    }
+}
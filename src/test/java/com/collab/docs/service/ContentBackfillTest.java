@@ -0,0 +1,88 @@
+package com.collab.docs.service;
+
+import com.collab.docs.model.ContentBlob;
+import com.collab.docs.repository.ContentBlobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentBackfillTest {
+    private final Map<String, ContentBlob> blobs = new HashMap<>();
+    private JdbcTemplate jdbcTemplate;
+    private ContentBackfill backfill;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:backfill;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        // Map-backed stand-in for the blob table; the store only checks for and saves blobs here
+        ContentBlobRepository repository = (ContentBlobRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContentBlobRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "existsById":
+                            return blobs.containsKey(args[0]);
+                        case "save":
+                            ContentBlob blob = (ContentBlob) args[0];
+                            blobs.put(blob.getHash(), blob);
+                            return blob;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        ContentStore store = new ContentStore(repository, new SimpleMeterRegistry());
+        store.initMetrics();
+        backfill = new ContentBackfill(jdbcTemplate, store, new DataSourceTransactionManager(dataSource));
+        ReflectionTestUtils.setField(backfill, "batchSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void backfill_LegacyContentColumn_StoresBodiesAndSetsContentIds() {
+        // Arrange: a schema created by ddl-auto before bodies moved out of the documents table
+        jdbcTemplate.execute("CREATE TABLE documents (id BIGINT PRIMARY KEY, content TEXT, content_id VARCHAR(64))");
+        jdbcTemplate.update("INSERT INTO documents VALUES (1, 'First', NULL), (2, 'Second', NULL), (3, 'First', NULL)");
+        jdbcTemplate.update("INSERT INTO documents VALUES (4, NULL, NULL), (5, 'Stale', 'kept')");
+
+        // Act
+        backfill.backfill();
+
+        // Assert
+        List<String> contentIds = jdbcTemplate.queryForList("SELECT content_id FROM documents ORDER BY id", String.class);
+        assertEquals(ContentStore.hash("First"), contentIds.get(0));
+        assertEquals(ContentStore.hash("Second"), contentIds.get(1));
+        assertEquals(ContentStore.hash("First"), contentIds.get(2));
+        assertNull(contentIds.get(3));
+        assertEquals("kept", contentIds.get(4));
+        assertEquals(2, blobs.size());
+    }
+
+    @Test
+    void backfill_NoLegacyColumn_DoesNothing() {
+        // Arrange
+        jdbcTemplate.execute("CREATE TABLE documents (id BIGINT PRIMARY KEY, content_id VARCHAR(64))");
+        jdbcTemplate.update("INSERT INTO documents VALUES (1, NULL)");
+
+        // Act
+        backfill.backfill();
+
+        // Assert
+        assertNull(jdbcTemplate.queryForObject("SELECT content_id FROM documents WHERE id = 1", String.class));
+        assertTrue(blobs.isEmpty());
+    }
+}
@@ -0,0 +1,67 @@
+package com.collab.docs.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentCodecTest {
+
+    @Test
+    void encode_BelowMinSize_StoresPlain() {
+        // Act
+        byte[] data = ContentCodec.encode(utf8("Short note"), 6, 512);
+
+        // Assert
+        assertEquals(ContentCodec.PLAIN, data[0]);
+        assertEquals("Short note", ContentCodec.decode(data));
+    }
+
+    @Test
+    void decode_CompressedMultibyteText_RoundTrips() {
+        // Arrange
+        String content = "Überblick — 会议记录 ✓\n".repeat(200);
+
+        // Act
+        byte[] data = ContentCodec.encode(utf8(content), 9, 0);
+
+        // Assert
+        assertEquals(ContentCodec.DEFLATE, data[0]);
+        assertEquals(content, ContentCodec.decode(data));
+    }
+
+    @Test
+    void encoder_TextInSmallPieces_DecodesToSameText() throws Exception {
+        // Arrange
+        byte[] text = utf8("Überblick — 会议记录 ✓\n".repeat(2_000));
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+
+        // Act
+        byte[] data;
+        try (ContentCodec.Encoder encoder = new ContentCodec.Encoder(3, 512)) {
+            for (int offset = 0; offset < text.length; offset += 100) {
+                encoder.write(text, offset, Math.min(100, text.length - offset));
+            }
+            data = encoder.finish();
+        }
+        ContentCodec.decodeTo(data, decoded);
+
+        // Assert
+        assertEquals(ContentCodec.DEFLATE, data[0]);
+        assertEquals(text.length, ContentCodec.textSize(data));
+        assertArrayEquals(text, decoded.toByteArray());
+        assertEquals(new String(text, StandardCharsets.UTF_8), ContentCodec.decode(data));
+    }
+
+    @Test
+    void decode_UnknownFormat_Throws() {
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> ContentCodec.decode(new byte[]{7, 1, 2}));
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
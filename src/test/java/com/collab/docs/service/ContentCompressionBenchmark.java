@@ -0,0 +1,60 @@
+package com.collab.docs.service;
+
+import com.collab.docs.Benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Compares the DEFLATE levels usable for {@code app.documents.content.compression-level} on
+ * generated prose with markup, reporting the compression ratio and the encode and decode
+ * throughput in MB/s of UTF-8 text. See {@link Benchmarks} for how to run it.
+ */
+public class ContentCompressionBenchmark {
+    private static final int[] LEVELS = {0, 1, 3, 6, 9};
+    private static final int[] SIZES = {4 * 1024, 64 * 1024, 1024 * 1024};
+    private static final long MEASURED_BYTES = 256L * 1024 * 1024;
+    private static final String[] WORDS = {
+            "the", "document", "team", "review", "quarterly", "budget", "should", "we", "and", "of",
+            "design", "meeting", "notes", "action", "item", "owner", "deadline", "release", "plan",
+            "customer", "feedback", "is", "to", "for", "with", "a", "in", "update", "draft", "final"
+    };
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-8s %6s %8s %12s %12s%n", "size", "level", "ratio", "encode MB/s", "decode MB/s");
+        for (int size : SIZES) {
+            byte[] text = generate(size).getBytes(StandardCharsets.UTF_8);
+            for (int level : LEVELS) {
+                byte[] data = ContentCodec.encode(text, level, 0);
+                // Encoding is slower, so it gets fewer rounds for a similar running time
+                long decodeRounds = Math.max(1, MEASURED_BYTES / text.length);
+                long encodeRounds = Math.max(1, decodeRounds / 8);
+                double encodeNanos = Benchmarks.nanosPerOp(encodeRounds, encodeRounds, () -> ContentCodec.encode(text, level, 0));
+                double decodeNanos = Benchmarks.nanosPerOp(decodeRounds, decodeRounds, () -> ContentCodec.decode(data));
+                System.out.printf("%-8s %6d %8.2f %12.1f %12.1f%n", size / 1024 + "K", level,
+                        (double) text.length / data.length, Benchmarks.megabytesPerSecond(text.length, encodeNanos),
+                        Benchmarks.megabytesPerSecond(text.length, decodeNanos));
+            }
+        }
+    }
+
+    /** Paragraphs of random words with headings, list items and emphasis, like typical documents. */
+    private static String generate(int size) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(size + 256);
+        while (text.length() < size) {
+            text.append("## ").append(WORDS[random.nextInt(WORDS.length)]).append(' ')
+                    .append(WORDS[random.nextInt(WORDS.length)]).append("\n\n");
+            for (int sentence = 0; sentence < 5; sentence++) {
+                int words = 6 + random.nextInt(12);
+                for (int i = 0; i < words; i++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    text.append(random.nextInt(20) == 0 ? "**" + word + "**" : word).append(i + 1 < words ? " " : ". ");
+                }
+            }
+            text.append("\n\n- ").append(WORDS[random.nextInt(WORDS.length)]).append(" (@")
+                    .append(WORDS[random.nextInt(WORDS.length)]).append(")\n\n");
+        }
+        return text.substring(0, size);
+    }
+}
@@ -0,0 +1,161 @@
+package com.collab.docs.service;
+
+import com.collab.docs.model.ContentBlob;
+import com.collab.docs.repository.ContentBlobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.persistence.EntityNotFoundException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentStoreTest {
+    private final Map<String, ContentBlob> blobs = new HashMap<>();
+    private ContentStore store;
+
+    @BeforeEach
+    void setUp() {
+        // Map-backed stand-in for the few repository methods the store uses
+        ContentBlobRepository repository = (ContentBlobRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ContentBlobRepository.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "existsById":
+                            return blobs.containsKey(args[0]);
+                        case "save":
+                            ContentBlob blob = (ContentBlob) args[0];
+                            blobs.put(blob.getHash(), blob);
+                            return blob;
+                        case "findStoredBodyByHash":
+                            return Optional.ofNullable(blobs.get(args[0])).map(ContentStoreTest::storedBody);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        store = new ContentStore(repository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "compressionLevel", 6);
+        ReflectionTestUtils.setField(store, "compressionMinSize", 512);
+        store.initMetrics();
+    }
+
+    @Test
+    void hash_KnownInput_ReturnsSha256Hex() {
+        // Act & Assert
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", ContentStore.hash("abc"));
+    }
+
+    @Test
+    void put_SameContentTwice_StoresOneBlob() {
+        // Act
+        String first = store.put("Project goals:");
+        String second = store.put("Project goals:");
+
+        // Assert
+        assertEquals(first, second);
+        assertEquals(1, blobs.size());
+        assertEquals("Project goals:", store.get(first));
+    }
+
+    @Test
+    void put_Null_ReturnsNullWithoutStoring() {
+        // Act & Assert
+        assertNull(store.put(null));
+        assertNull(store.get(null));
+        assertTrue(blobs.isEmpty());
+    }
+
+    @Test
+    void put_LargeBody_StoresCompressedAndReadsBack() {
+        // Arrange
+        String content = "The quarterly report covers revenue, costs and hiring. ".repeat(100);
+
+        // Act
+        String hash = store.put(content);
+
+        // Assert
+        byte[] data = blobs.get(hash).getData();
+        assertEquals(ContentCodec.DEFLATE, data[0]);
+        assertTrue(data.length < content.length() / 4);
+        assertEquals(content, store.get(hash));
+    }
+
+    @Test
+    void get_BlobStoredBeforeEncoding_ReturnsBody() {
+        // Arrange
+        blobs.put("legacy", ContentBlob.builder().hash("legacy").body("Old text").length(8).build());
+
+        // Act & Assert
+        assertEquals("Old text", store.get("legacy"));
+    }
+
+    @Test
+    void getText_CacheFull_EvictsOlderBodies() {
+        // Arrange
+        ReflectionTestUtils.setField(store, "textCacheChars", 100L);
+        String first = store.put("a".repeat(60));
+        String second = store.put("b".repeat(60));
+        store.getText(first);
+
+        // Act
+        store.getText(second);
+        blobs.remove(first);
+        blobs.remove(second);
+
+        // Assert
+        assertEquals("b".repeat(60), store.getText(second).toString());
+        assertThrows(EntityNotFoundException.class, () -> store.getText(first));
+    }
+
+    @Test
+    void read_Stream_StoresUnderSameHashAsString() throws Exception {
+        // Arrange
+        String content = "Zeile ✓ mit Umlauten äöü\n".repeat(1_000);
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+
+        // Act
+        ContentBlob blob = store.read(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), 1 << 20);
+        String hash = store.putEncoded(blob);
+        store.writeTo(hash, exported);
+
+        // Assert
+        assertEquals(ContentStore.hash(content), hash);
+        assertEquals(content.length(), blob.getLength());
+        assertEquals(content, store.get(hash));
+        assertEquals(content, exported.toString(StandardCharsets.UTF_8));
+        assertEquals(hash, store.put(content));
+        assertEquals(1, blobs.size());
+    }
+
+    @Test
+    void read_InvalidOrTooLarge_Throws() {
+        // Arrange
+        byte[] truncated = {'o', 'k', (byte) 0xE2, (byte) 0x9C};
+        byte[] large = new byte[2_000];
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> store.read(new ByteArrayInputStream(truncated), 100));
+        assertThrows(IllegalArgumentException.class, () -> store.read(new ByteArrayInputStream(large), 1_000));
+    }
+
+    private static ContentBlobRepository.StoredBody storedBody(ContentBlob blob) {
+        return new ContentBlobRepository.StoredBody() {
+            @Override
+            public String getBody() {
+                return blob.getBody();
+            }
+
+            @Override
+            public byte[] getData() {
+                return blob.getData();
+            }
+        };
+    }
+}
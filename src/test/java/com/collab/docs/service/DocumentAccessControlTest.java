@@ -0,0 +1,94 @@
+package com.collab.docs.service;
+
+import com.collab.docs.repository.DocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentAccessControlTest {
+    private static final long DOCUMENT = 10L;
+    private static final long OWNER = 1L;
+
+    private final List<Long> collaborators = new ArrayList<>(List.of(2L));
+    private final AtomicInteger queries = new AtomicInteger();
+    private DocumentAccessControl accessControl;
+
+    @BeforeEach
+    void setUp() {
+        // Only the two id queries are used
+        DocumentRepository repository = (DocumentRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DocumentRepository.class}, (proxy, method, args) -> {
+                    queries.incrementAndGet();
+                    boolean exists = args[0].equals(DOCUMENT);
+                    switch (method.getName()) {
+                        case "findOwnerIdById":
+                            return exists ? Optional.of(OWNER) : Optional.empty();
+                        case "findCollaboratorIdsById":
+                            return exists ? new ArrayList<>(collaborators) : List.of();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        accessControl = new DocumentAccessControl(repository, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(accessControl, "maxSize", 100);
+        accessControl.initMetrics();
+    }
+
+    @Test
+    void canEdit_RepeatedChecks_LoadOnce() {
+        // Act
+        boolean owner = accessControl.canEdit(DOCUMENT, OWNER);
+        boolean collaborator = accessControl.canEdit(DOCUMENT, 2L);
+        boolean stranger = accessControl.canEdit(DOCUMENT, 3L);
+
+        // Assert
+        assertTrue(owner);
+        assertTrue(collaborator);
+        assertFalse(stranger);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void canEdit_UnknownDocument_ReturnsFalse() {
+        // Act & Assert
+        assertFalse(accessControl.canEdit(99L, OWNER));
+    }
+
+    @Test
+    void collaboratorChanges_CachedEntry_AppliedWithoutReload() {
+        // Arrange
+        accessControl.canEdit(DOCUMENT, OWNER);
+
+        // Act
+        accessControl.collaboratorAdded(DOCUMENT, 3L);
+        accessControl.collaboratorRemoved(DOCUMENT, 2L);
+
+        // Assert
+        assertTrue(accessControl.canEdit(DOCUMENT, 3L));
+        assertFalse(accessControl.canEdit(DOCUMENT, 2L));
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void invalidate_CachedEntry_ReloadsOnNextCheck() {
+        // Arrange
+        accessControl.canEdit(DOCUMENT, OWNER);
+        collaborators.add(4L);
+
+        // Act
+        accessControl.invalidate(DOCUMENT);
+
+        // Assert
+        assertTrue(accessControl.canEdit(DOCUMENT, 4L));
+        assertEquals(4, queries.get());
+    }
+}
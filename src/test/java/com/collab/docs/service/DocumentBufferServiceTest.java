@@ -0,0 +1,65 @@
+package com.collab.docs.service;
+
+import com.collab.docs.editing.OtDocumentBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentBufferServiceTest {
+    private static final long DOCUMENT = 10L;
+
+    private DocumentBufferService bufferService;
+
+    @BeforeEach
+    void setUp() {
+        bufferService = new DocumentBufferService(null, null);
+        bufferService.restore(DOCUMENT, new OtDocumentBuffer(DOCUMENT, "text", 7L, 100));
+    }
+
+    @Test
+    void getIdleDocumentIds_RecentlyUsed_SkipsBuffer() {
+        // Arrange
+        List<Long> beforeUse = bufferService.getIdleDocumentIds(60_000);
+
+        // Act
+        bufferService.getBuffer(DOCUMENT);
+        List<Long> afterUse = bufferService.getIdleDocumentIds(60_000);
+
+        // Assert
+        assertEquals(List.of(DOCUMENT), beforeUse);
+        assertTrue(afterUse.isEmpty());
+    }
+
+    @Test
+    void isIdle_OpenSession_NotIdleUntilEverySessionLeft() {
+        // Arrange
+        bufferService.sessionOpened(DOCUMENT);
+        bufferService.sessionOpened(DOCUMENT);
+
+        // Act
+        bufferService.sessionClosed(DOCUMENT);
+        boolean oneOpen = bufferService.isIdle(DOCUMENT, 0);
+        bufferService.sessionClosed(DOCUMENT);
+        boolean noneOpen = bufferService.isIdle(DOCUMENT, 0);
+
+        // Assert
+        assertFalse(oneOpen);
+        assertTrue(noneOpen);
+    }
+
+    @Test
+    void evict_OpenSession_ForgetsSessions() {
+        // Arrange
+        bufferService.sessionOpened(DOCUMENT);
+
+        // Act
+        bufferService.evict(DOCUMENT);
+        bufferService.restore(DOCUMENT, new OtDocumentBuffer(DOCUMENT, "text", 7L, 100));
+
+        // Assert
+        assertTrue(bufferService.isIdle(DOCUMENT, 0));
+    }
+}
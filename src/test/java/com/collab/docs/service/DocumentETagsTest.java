@@ -0,0 +1,123 @@
+package com.collab.docs.service;
+
+import com.collab.docs.editing.DocumentBuffer;
+import com.collab.docs.editing.OtDocumentBuffer;
+import com.collab.docs.repository.DocumentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentETagsTest {
+    private static final long DOCUMENT = 10L;
+
+    private final AtomicLong version = new AtomicLong(3);
+    private final AtomicInteger queries = new AtomicInteger();
+    private final Map<Long, DocumentBuffer> buffers = new HashMap<>();
+    private DocumentETags etags;
+
+    @BeforeEach
+    void setUp() {
+        // Only the stamp query is used; the database revision stays at 7
+        DocumentRepository repository = (DocumentRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{DocumentRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findStampById")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    queries.incrementAndGet();
+                    if (!args[0].equals(DOCUMENT)) {
+                        return Optional.empty();
+                    }
+                    long current = version.get();
+                    return Optional.of(new DocumentRepository.DocumentStamp() {
+                        @Override
+                        public Long getVersion() {
+                            return current;
+                        }
+
+                        @Override
+                        public Long getRevision() {
+                            return 7L;
+                        }
+                    });
+                });
+        DocumentBufferService bufferService = new DocumentBufferService(repository, null) {
+            @Override
+            public DocumentBuffer getActiveBuffer(Long documentId) {
+                return buffers.get(documentId);
+            }
+        };
+        etags = new DocumentETags(repository, bufferService, new SimpleMeterRegistry());
+        etags.initMetrics();
+    }
+
+    @Test
+    void revisionOf_StrongTag_ReturnsRevision() {
+        // Act & Assert
+        assertEquals(42L, DocumentETags.revisionOf(" \"5.42\" "));
+        assertNull(DocumentETags.revisionOf("W/\"5.42\""));
+        assertNull(DocumentETags.revisionOf("\"5.42\", \"5.43\""));
+        assertNull(DocumentETags.revisionOf("\"abc\""));
+    }
+
+    @Test
+    void matchesAny_ListWeakOrWildcard_ComparesWeakly() {
+        // Act & Assert
+        assertTrue(DocumentETags.matchesAny("\"1.1\", W/\"5.42\"", "\"5.42\""));
+        assertTrue(DocumentETags.matchesAny("*", "\"5.42\""));
+        assertFalse(DocumentETags.matchesAny("\"5.41\"", "\"5.42\""));
+    }
+
+    @Test
+    void current_NoBuffer_ReadsStampEachTime() {
+        // Act
+        String first = etags.current(DOCUMENT);
+        String second = etags.current(DOCUMENT);
+
+        // Assert
+        assertEquals("\"3.7\"", first);
+        assertEquals(first, second);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void current_ActiveBuffer_CachesVersionAndFollowsEdits() {
+        // Arrange
+        DocumentBuffer buffer = new OtDocumentBuffer(DOCUMENT, "text", 7L, 100);
+        buffers.put(DOCUMENT, buffer);
+        etags.current(DOCUMENT);
+
+        // Act
+        buffer.replaceContent("edited text", "alice");
+        String edited = etags.current(DOCUMENT);
+
+        // Assert
+        assertEquals("\"3." + buffer.getRevision() + "\"", edited);
+        assertNotEquals("\"3.7\"", edited);
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    void current_AfterInvalidate_ReloadsVersion() {
+        // Arrange
+        buffers.put(DOCUMENT, new OtDocumentBuffer(DOCUMENT, "text", 7L, 100));
+        etags.current(DOCUMENT);
+
+        // Act
+        version.set(4);
+        etags.invalidate(DOCUMENT);
+        String current = etags.current(DOCUMENT);
+
+        // Assert
+        assertEquals("\"4.7\"", current);
+        assertEquals(2, queries.get());
+    }
+}
@@ -0,0 +1,313 @@
+package com.collab.docs.service;
+
+import com.collab.docs.editing.DocumentBuffer;
+import com.collab.docs.editing.OtDocumentBuffer;
+import com.collab.docs.history.VersionHistoryService;
+import com.collab.docs.journal.EditJournal;
+import com.collab.docs.model.Document;
+import com.collab.docs.model.DocumentSummary;
+import com.collab.docs.model.User;
+import com.collab.docs.repository.DocumentRepository;
+import com.collab.docs.search.SearchIndex;
+import com.collab.docs.websocket.CursorAggregator;
+import com.collab.docs.websocket.EditBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class DocumentServiceTest {
+    private static final long DOCUMENT = 10L;
+    private static final long OTHER = 11L;
+
+    private final DocumentRepository documentRepository = mock(DocumentRepository.class);
+    private final DocumentBufferService bufferService = mock(DocumentBufferService.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final TaskScheduler taskScheduler = mock(TaskScheduler.class);
+    private final EditJournal editJournal = mock(EditJournal.class);
+    private final ContentStore contentStore = mock(ContentStore.class);
+    private final DocumentETags etags = mock(DocumentETags.class);
+    private final CursorAggregator cursorAggregator = mock(CursorAggregator.class);
+    private final List<Document> saved = new ArrayList<>();
+    private DocumentBuffer buffer;
+    private DocumentService service;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new OtDocumentBuffer(DOCUMENT, "text", 7L, 100);
+        buffer.replaceContent("edited text", "alice");
+        when(bufferService.getActiveBuffer(DOCUMENT)).thenReturn(buffer);
+        when(documentRepository.findAllById(anyCollection())).thenAnswer(invocation -> List.of(
+                Document.builder().id(DOCUMENT).contentId("old").revision(7L).build()));
+        when(documentRepository.saveAll(anyCollection())).thenAnswer(invocation -> {
+            invocation.<Iterable<Document>>getArgument(0).forEach(saved::add);
+            return saved;
+        });
+        when(contentStore.put(anyString())).thenReturn("new");
+        service = new DocumentService(documentRepository, bufferService, transactionManager, taskScheduler,
+                new SimpleMeterRegistry(), editJournal, mock(EditBroadcaster.class), mock(DocumentAccessControl.class),
+                contentStore, mock(SearchIndex.class), mock(VersionHistoryService.class), etags, cursorAggregator);
+        ReflectionTestUtils.setField(service, "flushBatchSize", 2);
+        ReflectionTestUtils.setField(service, "bufferIdleTimeoutMillis", 60_000L);
+        service.initWriteBehind();
+    }
+
+    @Test
+    void decodeCursor_EncodedKeyset_RoundTrips() {
+        // Arrange
+        DocumentSummary last = DocumentSummary.builder()
+                .id(42L).lastModified(LocalDateTime.of(2024, 3, 1, 12, 30, 5, 123_456_789)).build();
+
+        // Act
+        DocumentSummary decoded = DocumentService.decodeCursor(DocumentService.encodeCursor(last));
+
+        // Assert
+        assertEquals(42L, decoded.getId());
+        assertEquals(last.getLastModified(), decoded.getLastModified());
+    }
+
+    @Test
+    void decodeCursor_Garbage_ThrowsIllegalArgument() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> DocumentService.decodeCursor("not-a-cursor"));
+    }
+
+    @Test
+    void markDirty_BelowBatchSize_DefersWrite() {
+        // Act
+        service.markDirty(DOCUMENT);
+        service.markDirty(DOCUMENT);
+
+        // Assert
+        assertTrue(dirty().containsKey(DOCUMENT));
+        verify(taskScheduler, never()).schedule(any(Runnable.class), any(Instant.class));
+        verify(documentRepository, never()).saveAll(anyCollection());
+    }
+
+    @Test
+    void markDirty_BatchSizeReached_SchedulesEarlyFlush() {
+        // Act
+        service.markDirty(DOCUMENT);
+        service.markDirty(OTHER);
+
+        // Assert
+        verify(taskScheduler).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    void flushDirtyDocuments_DirtyDocument_WritesBufferState() {
+        // Arrange
+        service.markDirty(DOCUMENT);
+
+        // Act
+        service.flushDirtyDocuments();
+
+        // Assert
+        assertTrue(dirty().isEmpty());
+        assertEquals(1, saved.size());
+        assertEquals(buffer.getRevision(), saved.get(0).getRevision());
+        assertEquals("new", saved.get(0).getContentId());
+        verify(editJournal).markSnapshot(DOCUMENT, buffer.getRevision());
+        verify(contentStore).release("old");
+    }
+
+    @Test
+    void flushDirtyDocuments_EditDuringFlush_StaysDirty() {
+        // Arrange
+        service.markDirty(DOCUMENT);
+        when(documentRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            // An edit lands after the flush has taken the buffer state
+            service.markDirty(DOCUMENT);
+            return List.of(Document.builder().id(DOCUMENT).contentId("old").revision(7L).build());
+        });
+
+        // Act
+        service.flushDirtyDocuments();
+
+        // Assert
+        assertEquals(1, saved.size());
+        assertTrue(dirty().containsKey(DOCUMENT));
+    }
+
+    @Test
+    void flushDirtyDocuments_TransactionFails_StaysDirty() {
+        // Arrange
+        service.markDirty(DOCUMENT);
+        when(transactionManager.getTransaction(any())).thenThrow(new CannotCreateTransactionException("down"));
+
+        // Act
+        service.flushDirtyDocuments();
+
+        // Assert
+        assertTrue(dirty().containsKey(DOCUMENT));
+        verify(editJournal, never()).markSnapshot(anyLong(), anyLong());
+    }
+
+    @Test
+    void releaseDocuments_Dirty_EvictsAndWritesBack() {
+        // Arrange
+        service.markDirty(DOCUMENT);
+
+        // Act
+        service.releaseDocuments(List.of(DOCUMENT));
+
+        // Assert
+        verify(bufferService).evict(DOCUMENT);
+        verify(bufferService, never()).restore(DOCUMENT, buffer);
+        assertEquals(1, saved.size());
+        assertTrue(dirty().isEmpty());
+    }
+
+    @Test
+    void releaseDocuments_FlushFails_RestoresBuffer() {
+        // Arrange
+        service.markDirty(DOCUMENT);
+        when(transactionManager.getTransaction(any())).thenThrow(new CannotCreateTransactionException("down"));
+
+        // Act
+        service.releaseDocuments(List.of(DOCUMENT));
+
+        // Assert
+        verify(bufferService).restore(DOCUMENT, buffer);
+        assertTrue(dirty().containsKey(DOCUMENT));
+    }
+
+    @Test
+    void flushOnShutdown_DirtyDocuments_WritesBack() {
+        // Arrange
+        service.markDirty(DOCUMENT);
+
+        // Act
+        service.flushOnShutdown();
+
+        // Assert
+        assertEquals(1, saved.size());
+        assertTrue(dirty().isEmpty());
+    }
+
+    @Test
+    void getDocumentMetadata_ActiveBuffer_LeavesEntityRevision() {
+        // Arrange
+        Document stored = Document.builder().id(DOCUMENT).contentId("old").revision(7L).build();
+        when(documentRepository.findById(DOCUMENT)).thenReturn(Optional.of(stored));
+
+        // Act
+        Document metadata = service.getDocumentMetadata(DOCUMENT);
+        Document document = service.getDocument(DOCUMENT);
+
+        // Assert
+        assertEquals(buffer.getRevision(), metadata.getRevision());
+        assertEquals("edited text", document.getContent());
+        assertEquals(7L, stored.getRevision());
+        assertNull(stored.getContent());
+    }
+
+    @Test
+    void addCollaborator_AfterMetadataRead_KeepsStoredRevision() {
+        // Arrange
+        Document stored = Document.builder().id(DOCUMENT).contentId("old").revision(7L)
+                .collaborators(new HashSet<>()).build();
+        when(documentRepository.findById(DOCUMENT)).thenReturn(Optional.of(stored));
+        service.markDirty(DOCUMENT);
+        service.getDocumentMetadata(DOCUMENT);
+
+        // Act
+        service.addCollaborator(DOCUMENT, User.builder().id(2L).username("bob").build());
+        service.flushDirtyDocuments();
+
+        // Assert
+        verify(documentRepository).save(argThat(document -> document.getRevision() == 7L));
+        assertEquals(buffer.getRevision(), saved.get(0).getRevision());
+        assertEquals("new", saved.get(0).getContentId());
+    }
+
+    @Test
+    void evictIdleDocuments_IdleAndWrittenBack_EvictsWithCachedState() {
+        // Arrange
+        idle(buffer.getRevision());
+
+        // Act
+        service.evictIdleDocuments();
+
+        // Assert
+        verify(bufferService).evict(DOCUMENT);
+        verify(etags).invalidate(DOCUMENT);
+        verify(cursorAggregator).forget(DOCUMENT);
+    }
+
+    @Test
+    void evictIdleDocuments_DatabaseBehindBuffer_KeepsBuffer() {
+        // Arrange
+        idle(7L);
+
+        // Act
+        service.evictIdleDocuments();
+
+        // Assert
+        verify(bufferService, never()).evict(DOCUMENT);
+    }
+
+    @Test
+    void evictIdleDocuments_Dirty_KeepsBuffer() {
+        // Arrange
+        idle(buffer.getRevision());
+        service.markDirty(DOCUMENT);
+
+        // Act
+        service.evictIdleDocuments();
+
+        // Assert
+        verify(bufferService, never()).evict(DOCUMENT);
+    }
+
+    @Test
+    void joinDocument_SessionOpen_CountedBeforeBufferIsTaken() {
+        // Arrange
+        when(documentRepository.findById(DOCUMENT)).thenReturn(Optional.of(
+                Document.builder().id(DOCUMENT).contentId("old").revision(7L).build()));
+        when(bufferService.getBuffer(DOCUMENT)).thenReturn(buffer);
+
+        // Act
+        service.joinDocument(DOCUMENT);
+        service.leaveDocument(DOCUMENT, null);
+
+        // Assert
+        InOrder order = inOrder(bufferService);
+        order.verify(bufferService).sessionOpened(DOCUMENT);
+        order.verify(bufferService).getBuffer(DOCUMENT);
+        order.verify(bufferService).sessionClosed(DOCUMENT);
+    }
+
+    private void idle(long storedRevision) {
+        DocumentRepository.DocumentStamp stamp = mock(DocumentRepository.DocumentStamp.class);
+        when(stamp.getRevision()).thenReturn(storedRevision);
+        when(documentRepository.findStampById(DOCUMENT)).thenReturn(Optional.of(stamp));
+        when(bufferService.getIdleDocumentIds(anyLong())).thenReturn(List.of(DOCUMENT));
+        when(bufferService.isIdle(eq(DOCUMENT), anyLong())).thenReturn(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Long> dirty() {
+        return (Map<Long, Long>) ReflectionTestUtils.getField(service, "dirtyDocuments");
+    }
+}
@@ -0,0 +1,65 @@
+package com.collab.docs.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    void of_Values_ContainsExactlyThose() {
+        // Arrange
+        List<Long> ids = LongStream.rangeClosed(1, 1_000).boxed().collect(Collectors.toList());
+
+        // Act
+        LongHashSet set = LongHashSet.of(ids);
+
+        // Assert
+        assertEquals(1_000, set.size());
+        for (long id = 1; id <= 1_000; id++) {
+            assertTrue(set.contains(id));
+        }
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(1_001));
+        assertFalse(set.contains(-1));
+    }
+
+    @Test
+    void with_NewValue_ReturnsCopyAndLeavesOriginal() {
+        // Arrange
+        LongHashSet set = LongHashSet.of(Arrays.asList(3L, 5L));
+
+        // Act
+        LongHashSet grown = set.with(7L);
+
+        // Assert
+        assertTrue(grown.contains(7L));
+        assertEquals(3, grown.size());
+        assertFalse(set.contains(7L));
+        assertSame(grown, grown.with(7L));
+    }
+
+    @Test
+    void without_Value_RemovesOnlyThatValue() {
+        // Arrange
+        LongHashSet set = LongHashSet.of(Arrays.asList(3L, 5L, 7L));
+
+        // Act
+        LongHashSet shrunk = set.without(5L);
+
+        // Assert
+        assertArrayEquals(new long[]{3L, 7L}, Arrays.stream(shrunk.toArray()).sorted().toArray());
+        assertSame(LongHashSet.EMPTY, shrunk.without(3L).without(7L));
+    }
+
+    @Test
+    void with_NonPositiveValue_Throws() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> LongHashSet.EMPTY.with(0L));
+    }
+}
@@ -0,0 +1,72 @@
+package com.collab.docs.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMessageCodecTest {
+
+    @Test
+    void decode_EncodedEdit_RoundTripsAllFields() {
+        // Arrange
+        DocumentEditMessage edit = DocumentEditMessage.builder()
+                .operation("INSERT")
+                .content("h\u00e9llo")
+                .startPosition(12)
+                .endPosition(12)
+                .revision(4_000_000_000L)
+                .username("alice")
+                .siteId(-7)
+                .elementId(Long.MAX_VALUE)
+                .referenceId(0L)
+                .length(5)
+                .build();
+
+        // Act
+        Object decoded = BinaryMessageCodec.decode(BinaryMessageCodec.encode(edit));
+
+        // Assert
+        assertEquals(edit, decoded);
+    }
+
+    @Test
+    void decode_EncodedList_KeepsNullFieldsAndUnknownOperations() {
+        // Arrange
+        List<Object> frame = List.of(
+                CursorPosition.builder().documentId(1L).username("bob").line(3).build(),
+                DocumentEditMessage.builder().operation("MOVE").build(),
+                CollaboratorStatus.builder().username("carol").status("JOINED").build());
+
+        // Act
+        Object decoded = BinaryMessageCodec.decode(BinaryMessageCodec.encode(frame));
+
+        // Assert
+        assertEquals(frame, decoded);
+    }
+
+    @Test
+    void encode_TypicalEdit_IsSmallerThanFieldNames() {
+        // Arrange
+        DocumentEditMessage edit = DocumentEditMessage.builder()
+                .operation("INSERT").content("a").startPosition(120).revision(512L).username("alice").build();
+
+        // Act
+        byte[] bytes = BinaryMessageCodec.encode(edit);
+
+        // Assert
+        assertTrue(bytes.length < 16, "encoded to " + bytes.length + " bytes");
+    }
+
+    @Test
+    void decode_TruncatedInput_Rejected() {
+        // Arrange
+        byte[] bytes = BinaryMessageCodec.encode(DocumentEditMessage.builder().content("hello").build());
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 2);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> BinaryMessageCodec.decode(truncated));
+    }
+}
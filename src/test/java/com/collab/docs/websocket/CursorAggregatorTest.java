@@ -0,0 +1,122 @@
+package com.collab.docs.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CursorAggregatorTest {
+
+    private FramePublisher framePublisher;
+    private CursorAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        framePublisher = mock(FramePublisher.class);
+        aggregator = new CursorAggregator(framePublisher, new SimpleMeterRegistry());
+        aggregator.initMetrics();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_SeveralUpdates_SendsLatestPositionPerUserInOneFrame() {
+        // Arrange
+        aggregator.submit(1L, cursor("alice", 1, 1));
+        aggregator.submit(1L, cursor("alice", 1, 2));
+        aggregator.submit(1L, cursor("bob", 3, 4));
+
+        // Act
+        aggregator.flush();
+
+        // Assert
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(framePublisher).publish(eq("/topic/document/1/cursors"), frame.capture());
+        List<CursorPosition> positions = (List<CursorPosition>) frame.getValue();
+        assertEquals(2, positions.size());
+        assertTrue(positions.contains(cursor("alice", 1, 2)));
+        assertTrue(positions.contains(cursor("bob", 3, 4)));
+    }
+
+    @Test
+    void flush_UnchangedPosition_IsNotSentAgain() {
+        // Arrange
+        aggregator.submit(1L, cursor("alice", 1, 1));
+        aggregator.flush();
+        aggregator.submit(1L, cursor("alice", 1, 1));
+
+        // Act
+        aggregator.flush();
+        aggregator.flush();
+
+        // Assert
+        verify(framePublisher, times(1)).publish(anyString(), any());
+    }
+
+    @Test
+    void flush_AllSent_DropsDocumentFromPending() {
+        // Arrange
+        aggregator.submit(1L, cursor("alice", 1, 1));
+
+        // Act
+        aggregator.flush();
+
+        // Assert
+        assertTrue(documents("pending").isEmpty());
+        assertEquals(1, documents("broadcast").size());
+    }
+
+    @Test
+    void remove_LastUser_DropsDocument() {
+        // Arrange
+        aggregator.submit(1L, cursor("alice", 1, 1));
+        aggregator.flush();
+        aggregator.submit(1L, cursor("alice", 2, 1));
+
+        // Act
+        aggregator.remove(1L, "alice");
+
+        // Assert
+        assertTrue(documents("pending").isEmpty());
+        assertTrue(documents("broadcast").isEmpty());
+    }
+
+    @Test
+    void forget_Document_DropsAllItsCursors() {
+        // Arrange
+        aggregator.submit(1L, cursor("alice", 1, 1));
+        aggregator.flush();
+        aggregator.submit(1L, cursor("bob", 2, 1));
+
+        // Act
+        aggregator.forget(1L);
+        aggregator.flush();
+
+        // Assert
+        assertTrue(documents("pending").isEmpty());
+        assertTrue(documents("broadcast").isEmpty());
+        verify(framePublisher, times(1)).publish(anyString(), any());
+    }
+
+    private Map<?, ?> documents(String field) {
+        return (Map<?, ?>) ReflectionTestUtils.getField(aggregator, field);
+    }
+
+    private static CursorPosition cursor(String username, int line, int column) {
+        return CursorPosition.builder()
+                .documentId(1L)
+                .username(username)
+                .line(line)
+                .column(column)
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package com.collab.docs.websocket;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentLaneExecutorTest {
+
+    private final List<Message<?>> rejected = Collections.synchronizedList(new ArrayList<>());
+    private DocumentLaneExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new DocumentLaneExecutor(4, 1000, false, new SimpleMeterRegistry(), rejected::add);
+        executor.setCorePoolSize(4);
+        executor.initialize();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void execute_MessagesForOneDocument_RunInOrderOnOneLane() throws Exception {
+        // Arrange
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(100);
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            int sequence = i;
+            executor.execute(task("/app/document/7/edit", () -> {
+                order.add(sequence);
+                threads.add(Thread.currentThread().getName());
+                done.countDown();
+            }));
+        }
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, order.get(i));
+        }
+        assertEquals(1, threads.size());
+        assertTrue(threads.iterator().next().startsWith("document-lane-"));
+    }
+
+    @Test
+    void execute_OtherDestination_RunsOnSharedPool() throws Exception {
+        // Arrange
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Act
+        executor.execute(task("/topic/document/7/content", () -> {
+            threads.add(Thread.currentThread().getName());
+            done.countDown();
+        }));
+
+        // Assert
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(threads.get(0).startsWith("document-lane-"));
+    }
+
+    @Test
+    void execute_LaneFull_DropsMessageAndReportsIt() throws Exception {
+        // Arrange
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DocumentLaneExecutor bounded = new DocumentLaneExecutor(1, 1, false, registry, rejected::add);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        bounded.execute(task("/app/document/7/edit", () -> {
+            running.countDown();
+            awaitQuietly(release);
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        bounded.execute(task("/app/document/7/edit", () -> { }));
+        MessageHandlingRunnable overflow = task("/app/document/7/cursor", () -> fail("dropped message ran"));
+
+        // Act
+        bounded.execute(overflow);
+        release.countDown();
+        bounded.shutdown();
+
+        // Assert
+        assertEquals(List.of(overflow.getMessage()), rejected);
+        assertEquals(1.0, registry.counter("documents.lanes.rejected").count());
+    }
+
+    @Test
+    void laneFor_SequentialDocumentIds_UseEveryLane() {
+        // Arrange
+        Set<Object> lanes = ConcurrentHashMap.newKeySet();
+
+        // Act
+        for (long documentId = 1; documentId <= 32; documentId++) {
+            lanes.add(executor.laneFor(documentId));
+        }
+
+        // Assert
+        assertEquals(executor.getLaneCount(), lanes.size());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MessageHandlingRunnable task(String destination, Runnable body) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setDestination(destination);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+        return new MessageHandlingRunnable() {
+            @Override
+            public Message<?> getMessage() {
+                return message;
+            }
+
+            @Override
+            public MessageHandler getMessageHandler() {
+                return msg -> { };
+            }
+
+            @Override
+            public void run() {
+                body.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package com.collab.docs.websocket;
+
+import com.collab.docs.journal.EditJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class EditBroadcasterTest {
+
+    private FramePublisher framePublisher;
+    private EditJournal editJournal;
+    private EditBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        framePublisher = mock(FramePublisher.class);
+        editJournal = mock(EditJournal.class);
+        broadcaster = new EditBroadcaster(framePublisher, editJournal, new SimpleMeterRegistry());
+        broadcaster.initMetrics();
+    }
+
+    @Test
+    void flush_SeveralEditsInOneTick_SendsOneFrameInRevisionOrder() {
+        // Arrange
+        when(editJournal.getDurableSequence()).thenReturn(Long.MAX_VALUE);
+        broadcaster.publish(1L, List.of(operation(1L)), 1);
+        broadcaster.publish(1L, List.of(operation(2L), operation(3L)), 3);
+
+        // Act
+        broadcaster.flush();
+
+        // Assert
+        verify(framePublisher).publish("/topic/document/1/content", List.of(operation(1L), operation(2L), operation(3L)));
+    }
+
+    @Test
+    void flush_JournalNotYetDurable_HoldsBackOperations() {
+        // Arrange
+        when(editJournal.getDurableSequence()).thenReturn(1L, 2L);
+        broadcaster.publish(1L, List.of(operation(1L)), 1);
+        broadcaster.publish(1L, List.of(operation(2L)), 2);
+
+        // Act
+        broadcaster.flush();
+        broadcaster.flush();
+        broadcaster.flush();
+
+        // Assert
+        verify(framePublisher).publish("/topic/document/1/content", List.of(operation(1L)));
+        verify(framePublisher).publish("/topic/document/1/content", List.of(operation(2L)));
+        verify(framePublisher, times(2)).publish(anyString(), any());
+    }
+
+    @Test
+    void flush_QueueDrained_RemovesIt() {
+        // Arrange
+        when(editJournal.getDurableSequence()).thenReturn(1L);
+        broadcaster.publish(1L, List.of(operation(1L)), 1);
+        broadcaster.publish(2L, List.of(operation(1L)), 2);
+
+        // Act
+        broadcaster.flush();
+
+        // Assert
+        Map<?, ?> pending = (Map<?, ?>) ReflectionTestUtils.getField(broadcaster, "pending");
+        assertEquals(Set.of(2L), pending.keySet());
+    }
+
+    private static DocumentEditMessage operation(long revision) {
+        return DocumentEditMessage.builder()
+                .operation("INSERT")
+                .startPosition(0)
+                .content("x")
+                .revision(revision)
+                .build();
+    }
+}
@@ -0,0 +1,53 @@
+package com.collab.docs.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FramePublisherTest {
+
+    private SimpMessageSendingOperations messagingTemplate;
+    private FramePublisher publisher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        messagingTemplate = mock(SimpMessageSendingOperations.class);
+        publisher = new FramePublisher(messagingTemplate, new ObjectMapper(), mock(ObjectProvider.class));
+    }
+
+    @Test
+    void publish_BinaryTopicsDisabled_SendsJsonOnly() {
+        // Act
+        publisher.publish("/topic/document/1/cursors", List.of());
+
+        // Assert
+        verify(messagingTemplate).send(eq("/topic/document/1/cursors"), any(Message.class));
+        verify(messagingTemplate, times(1)).send(anyString(), any(Message.class));
+    }
+
+    @Test
+    void publish_PayloadWithoutBinaryEncoding_StillSendsJson() {
+        // Arrange
+        ReflectionTestUtils.setField(publisher, "binaryTopics", true);
+
+        // Act
+        publisher.publish("/topic/document/1/status", Map.of("status", "ok"));
+
+        // Assert
+        verify(messagingTemplate).send(eq("/topic/document/1/status"), any(Message.class));
+        verify(messagingTemplate, never()).send(eq("/topic/document/1/status.bin"), any(Message.class));
+    }
+}
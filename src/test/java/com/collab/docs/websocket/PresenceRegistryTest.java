@@ -0,0 +1,79 @@
+package com.collab.docs.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresenceRegistryTest {
+
+    private final PresenceRegistry registry = new PresenceRegistry();
+
+    @Test
+    void join_FirstSessionOfUser_ReportsNewCollaborator() {
+        // Act
+        boolean first = registry.join(1L, "s1", status("alice"));
+        boolean second = registry.join(1L, "s2", status("alice"));
+
+        // Assert
+        assertTrue(first);
+        assertFalse(second);
+        assertEquals(1, registry.getCollaborators(1L).size());
+    }
+
+    @Test
+    void leave_LastSessionOfUser_ReturnsStatus() {
+        // Arrange
+        registry.join(1L, "s1", status("alice"));
+        registry.join(1L, "s2", status("alice"));
+        registry.join(1L, "s3", status("bob"));
+
+        // Act
+        CollaboratorStatus afterFirstTab = registry.leave(1L, "s1");
+        CollaboratorStatus afterSecondTab = registry.leave(1L, "s2");
+
+        // Assert
+        assertNull(afterFirstTab);
+        assertEquals("alice", afterSecondTab.getUsername());
+        assertEquals(List.of("bob"), usernames(registry.getCollaborators(1L)));
+    }
+
+    @Test
+    void leave_DocumentNotJoined_ReturnsNull() {
+        // Arrange
+        registry.join(1L, "s1", status("alice"));
+
+        // Act & Assert
+        assertNull(registry.leave(2L, "s1"));
+        assertNull(registry.leave(1L, "unknown"));
+        assertEquals(1, registry.getCollaborators(1L).size());
+    }
+
+    @Test
+    void removeSession_JoinedSeveralDocuments_LeavesAllOfThem() {
+        // Arrange
+        registry.join(1L, "s1", status("alice"));
+        registry.join(2L, "s1", status("alice"));
+        registry.join(2L, "s2", status("alice"));
+
+        // Act
+        Map<Long, CollaboratorStatus> left = registry.removeSession("s1");
+
+        // Assert
+        assertEquals(List.of(1L), List.copyOf(left.keySet()));
+        assertTrue(registry.getCollaborators(1L).isEmpty());
+        assertEquals(List.of("alice"), usernames(registry.getCollaborators(2L)));
+        assertTrue(registry.removeSession("s1").isEmpty());
+    }
+
+    private static CollaboratorStatus status(String username) {
+        return CollaboratorStatus.builder().username(username).status("JOINED").documentId(1L).build();
+    }
+
+    private static List<String> usernames(List<CollaboratorStatus> statuses) {
+        return statuses.stream().map(CollaboratorStatus::getUsername).sorted().collect(Collectors.toList());
+    }
+}
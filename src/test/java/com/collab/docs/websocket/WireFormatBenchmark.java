@@ -0,0 +1,47 @@
+package com.collab.docs.websocket;
+
+import com.collab.docs.Benchmarks;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares {@link BinaryMessageCodec} with Jackson JSON on typical payloads, reporting bytes/op and
+ * ns/op for an encode + decode round trip. See {@link Benchmarks} for how to run it.
+ */
+public class WireFormatBenchmark {
+    private static final int WARMUP_ROUNDS = 200_000;
+    private static final int MEASURED_ROUNDS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper json = new ObjectMapper();
+
+        DocumentEditMessage edit = DocumentEditMessage.builder()
+                .operation("INSERT").content("e").startPosition(1834).endPosition(1834)
+                .revision(20417L).username("alice").build();
+        CursorPosition cursor = CursorPosition.builder()
+                .documentId(42L).username("alice").line(57).column(12).build();
+        List<CursorPosition> cursorFrame = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            cursorFrame.add(CursorPosition.builder().documentId(42L).username("user" + i).line(i * 3).column(i).build());
+        }
+
+        System.out.printf("%-14s %8s %8s %10s %10s%n", "payload", "json B", "binary B", "json ns", "binary ns");
+        run("edit", edit, DocumentEditMessage.class, json);
+        run("cursor", cursor, CursorPosition.class, json);
+        run("cursor frame", cursorFrame, List.class, json);
+    }
+
+    private static void run(String name, Object payload, Class<?> type, ObjectMapper json) throws Exception {
+        int jsonBytes = json.writeValueAsBytes(payload).length;
+        int binaryBytes = BinaryMessageCodec.encode(payload).length;
+
+        double jsonNanos = Benchmarks.nanosPerOp(WARMUP_ROUNDS, MEASURED_ROUNDS,
+                () -> json.readValue(json.writeValueAsBytes(payload), type));
+        double binaryNanos = Benchmarks.nanosPerOp(WARMUP_ROUNDS, MEASURED_ROUNDS,
+                () -> BinaryMessageCodec.decode(BinaryMessageCodec.encode(payload)));
+
+        System.out.printf("%-14s %8d %8d %10.0f %10.0f%n", name, jsonBytes, binaryBytes, jsonNanos, binaryNanos);
+    }
+}